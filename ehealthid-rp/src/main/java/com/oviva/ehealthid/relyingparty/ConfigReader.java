@@ -3,10 +3,16 @@ package com.oviva.ehealthid.relyingparty;
 import com.oviva.ehealthid.relyingparty.cfg.ConfigProvider;
 import com.oviva.ehealthid.relyingparty.cfg.RelyingPartyConfig;
 import com.oviva.ehealthid.relyingparty.fed.FederationConfig;
+import com.oviva.ehealthid.relyingparty.util.OutboundHttpClients.Target;
 import com.oviva.ehealthid.relyingparty.util.Strings;
 import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 public class ConfigReader {
@@ -17,6 +23,9 @@ public class ConfigReader {
   public static final String CONFIG_HOST = "host";
   public static final String CONFIG_PORT = "port";
   public static final String CONFIG_MANAGEMENT_PORT = "management_port";
+  public static final String CONFIG_EXECUTION_MODE = "execution_mode";
+  public static final String CONFIG_IO_THREADS = "io_threads";
+  public static final String CONFIG_WORKER_THREADS = "worker_threads";
   public static final String CONFIG_REDIRECT_URIS = "redirect_uris";
 
   public static final String CONFIG_IDP_DISCOVERY_URI = "idp_discovery_uri";
@@ -28,10 +37,36 @@ public class ConfigReader {
 
   public static final String CONFIG_SESSION_STORE_TTL = "session_store_ttl";
   public static final String CONFIG_SESSION_STORE_MAX_ENTRIES = "session_store_max_entries";
+  public static final String CONFIG_SESSION_MODE = "session_mode";
+  public static final String CONFIG_SESSION_COOKIE_SECRET = "session_cookie_secret";
 
   public static final String CONFIG_CODE_STORE_TTL = "code_store_ttl";
   public static final String CONFIG_CODE_STORE_MAX_ENTRIES = "code_store_max_entries";
 
+  public static final String CONFIG_STORE_BACKEND = "store_backend";
+  public static final String CONFIG_STORE_URI = "store_uri";
+  public static final String CONFIG_STORE_TIMEOUT = "store_timeout";
+  public static final String CONFIG_STORE_HIGH_WATER_MARK = "store_high_water_mark";
+  public static final String CONFIG_STORE_RETRY_AFTER = "store_retry_after";
+
+  public static final String CONFIG_FEDERATION_CACHE_MAX_BYTES = "federation_cache_max_bytes";
+  public static final String CONFIG_FEDERATION_SNAPSHOT_PATH = "federation_snapshot_path";
+  public static final String CONFIG_FEDERATION_PREWARM_PARALLELISM =
+      "federation_prewarm_parallelism";
+
+  public static final String CONFIG_TLS_SESSION_CACHE_SIZE = "tls_session_cache_size";
+  public static final String CONFIG_TLS_SESSION_TIMEOUT = "tls_session_timeout";
+
+  public static final String CONFIG_OPENID_KEEP_WARM_HOSTS = "openid_keep_warm_hosts";
+  public static final String CONFIG_OPENID_KEEP_WARM_INTERVAL = "openid_keep_warm_interval";
+
+  // per outbound target, e.g. 'http_federation_version'
+  public static final String CONFIG_HTTP_VERSION = "http_%s_version";
+  public static final String CONFIG_HTTP_CONNECT_TIMEOUT = "http_%s_connect_timeout";
+  public static final String CONFIG_HTTP_REQUEST_TIMEOUT = "http_%s_request_timeout";
+  public static final String CONFIG_HTTP_THREADS = "http_%s_threads";
+  public static final String CONFIG_HTTP_MAX_BODY_BYTES = "http_%s_max_body_bytes";
+
   private final ConfigProvider configProvider;
 
   public ConfigReader(ConfigProvider configProvider) {
@@ -101,13 +136,103 @@ public class ConfigReader {
         idpDiscoveryUri,
         appUri,
         sessionStoreConfig(),
-        codeStoreConfig());
+        codeStoreConfig(),
+        storeConfig(),
+        federationCacheConfig(),
+        serverConfig(),
+        httpClientConfigs(),
+        tlsConfig(),
+        keepWarmConfig(),
+        admissionConfig());
+  }
+
+  private AdmissionConfig admissionConfig() {
+    var highWaterMark =
+        configProvider.get(CONFIG_STORE_HIGH_WATER_MARK).map(this::parseHighWaterMark).orElse(0.9);
+    var retryAfter = getDurationOrDefault(CONFIG_STORE_RETRY_AFTER, Duration.ofSeconds(30));
+    return new AdmissionConfig(highWaterMark, retryAfter);
+  }
+
+  private double parseHighWaterMark(String value) {
+    var highWaterMark = Double.parseDouble(value);
+    if (!(highWaterMark > 0 && highWaterMark <= 1)) {
+      throw new IllegalArgumentException(
+          "invalid '%s': '%s'".formatted(CONFIG_STORE_HIGH_WATER_MARK, value));
+    }
+    return highWaterMark;
+  }
+
+  private KeepWarmConfig keepWarmConfig() {
+    var maxHosts = getIntOrDefault(CONFIG_OPENID_KEEP_WARM_HOSTS, 0);
+    var interval = getDurationOrDefault(CONFIG_OPENID_KEEP_WARM_INTERVAL, Duration.ofSeconds(20));
+    return new KeepWarmConfig(maxHosts, interval);
+  }
+
+  private TlsConfig tlsConfig() {
+    var sessionCacheSize = getIntOrDefault(CONFIG_TLS_SESSION_CACHE_SIZE, 1000);
+    var sessionTimeout = getDurationOrDefault(CONFIG_TLS_SESSION_TIMEOUT, Duration.ofHours(1));
+    return new TlsConfig(sessionCacheSize, sessionTimeout);
+  }
+
+  private Map<Target, HttpClientConfig> httpClientConfigs() {
+    var configs = new EnumMap<Target, HttpClientConfig>(Target.class);
+    for (var target : Target.values()) {
+      configs.put(target, httpClientConfig(target.clientName()));
+    }
+    return configs;
+  }
+
+  private HttpClientConfig httpClientConfig(String target) {
+    var versionKey = CONFIG_HTTP_VERSION.formatted(target);
+    var version =
+        configProvider
+            .get(versionKey)
+            .map(v -> parseHttpVersion(versionKey, v))
+            .orElse(Version.HTTP_2);
+    var connectTimeout =
+        getDurationOrDefault(CONFIG_HTTP_CONNECT_TIMEOUT.formatted(target), Duration.ofSeconds(10));
+    var requestTimeout =
+        getDurationOrDefault(CONFIG_HTTP_REQUEST_TIMEOUT.formatted(target), Duration.ofSeconds(30));
+    var threads = getIntOrDefault(CONFIG_HTTP_THREADS.formatted(target), 0);
+    var maxBodyBytes = getLongOrDefault(CONFIG_HTTP_MAX_BODY_BYTES.formatted(target), 1024L * 1024);
+    return new HttpClientConfig(version, connectTimeout, requestTimeout, threads, maxBodyBytes);
+  }
+
+  private Version parseHttpVersion(String config, String value) {
+    try {
+      return Version.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("invalid '%s': '%s'".formatted(config, value), e);
+    }
+  }
+
+  private ServerConfig serverConfig() {
+    var executionMode =
+        configProvider
+            .get(CONFIG_EXECUTION_MODE)
+            .map(ExecutionMode::parse)
+            .orElse(ExecutionMode.WORKER);
+
+    // before JEP 491 virtual threads pin their carrier while RESTEasy and Undertow hold a monitor
+    if (executionMode == ExecutionMode.VIRTUAL && Runtime.version().feature() < 24) {
+      throw new IllegalArgumentException(
+          "'%s' of 'virtual' requires Java 24 or newer".formatted(CONFIG_EXECUTION_MODE));
+    }
+
+    // same defaults as Undertow
+    var ioThreads =
+        getIntOrDefault(CONFIG_IO_THREADS, Math.max(Runtime.getRuntime().availableProcessors(), 2));
+    var workerThreads = getIntOrDefault(CONFIG_WORKER_THREADS, ioThreads * 8);
+    return new ServerConfig(executionMode, ioThreads, workerThreads);
   }
 
   private SessionStoreConfig sessionStoreConfig() {
     var ttl = getDurationOrDefault(CONFIG_SESSION_STORE_TTL, Duration.ofMinutes(20));
     var maxEntries = getIntOrDefault(CONFIG_SESSION_STORE_MAX_ENTRIES, 1000);
-    return new SessionStoreConfig(ttl, maxEntries);
+    var mode =
+        configProvider.get(CONFIG_SESSION_MODE).map(SessionMode::parse).orElse(SessionMode.SERVER);
+    var cookieSecret = configProvider.get(CONFIG_SESSION_COOKIE_SECRET).orElse(null);
+    return new SessionStoreConfig(ttl, maxEntries, mode, cookieSecret);
   }
 
   private CodeStoreConfig codeStoreConfig() {
@@ -116,6 +241,29 @@ public class ConfigReader {
     return new CodeStoreConfig(ttl, maxEntries);
   }
 
+  private StoreConfig storeConfig() {
+    var backend =
+        configProvider
+            .get(CONFIG_STORE_BACKEND)
+            .map(StoreBackend::parse)
+            .orElse(StoreBackend.MEMORY);
+    var uri = configProvider.get(CONFIG_STORE_URI).map(URI::create).orElse(null);
+    if (backend == StoreBackend.REDIS && uri == null) {
+      throw new IllegalArgumentException(
+          "no '%s' configured for store backend '%s'".formatted(CONFIG_STORE_URI, backend));
+    }
+    var timeout = getDurationOrDefault(CONFIG_STORE_TIMEOUT, Duration.ofSeconds(2));
+    return new StoreConfig(backend, uri, timeout);
+  }
+
+  private FederationCacheConfig federationCacheConfig() {
+    var maxBytes = getLongOrDefault(CONFIG_FEDERATION_CACHE_MAX_BYTES, 4L * 1024 * 1024);
+    var snapshotPath =
+        configProvider.get(CONFIG_FEDERATION_SNAPSHOT_PATH).map(Path::of).orElse(null);
+    var prewarmParallelism = getIntOrDefault(CONFIG_FEDERATION_PREWARM_PARALLELISM, 0);
+    return new FederationCacheConfig(maxBytes, snapshotPath, prewarmParallelism);
+  }
+
   private List<URI> loadAllowedRedirectUrls() {
     return configProvider.get(CONFIG_REDIRECT_URIS).stream()
         .flatMap(Strings::mustParseCommaList)
@@ -131,6 +279,10 @@ public class ConfigReader {
     return configProvider.get(config).map(Integer::parseInt).orElse(defaultValue);
   }
 
+  private long getLongOrDefault(String config, long defaultValue) {
+    return configProvider.get(config).map(Long::parseLong).orElse(defaultValue);
+  }
+
   private List<String> getScopes() {
 
     return configProvider
@@ -158,9 +310,134 @@ public class ConfigReader {
       URI idpDiscoveryUri,
       URI appUri,
       SessionStoreConfig sessionStore,
-      CodeStoreConfig codeStoreConfig) {}
+      CodeStoreConfig codeStoreConfig,
+      StoreConfig store,
+      FederationCacheConfig federationCache,
+      ServerConfig server,
+      Map<Target, HttpClientConfig> httpClients,
+      TlsConfig tls,
+      KeepWarmConfig keepWarm,
+      AdmissionConfig admission) {}
 
-  public record SessionStoreConfig(Duration ttl, int maxEntries) {}
+  /**
+   * @param ttl how long a login may take
+   * @param maxEntries the maximum number of sessions kept in memory
+   * @param mode where the state of a login is kept
+   * @param cookieSecret the secret the keys sealing {@link SessionMode#COOKIE} sessions are derived
+   *     from, {@code null} for a random one per instance
+   */
+  public record SessionStoreConfig(
+      Duration ttl, int maxEntries, SessionMode mode, String cookieSecret) {}
 
   public record CodeStoreConfig(Duration ttl, int maxEntries) {}
+
+  /**
+   * @param backend where to keep sessions and codes
+   * @param uri where to reach a networked backend, e.g. {@code redis://redis.example.com:6379}
+   * @param timeout the timeout to connect to a networked backend and for each of its commands
+   */
+  public record StoreConfig(StoreBackend backend, URI uri, Duration timeout) {}
+
+  /**
+   * @param maxBytes the maximum size of each federation cache, weighed by the size of the cached
+   *     JWS
+   * @param snapshotPath where to persist the federation caches across restarts, {@code null} if
+   *     disabled
+   * @param prewarmParallelism how many IdPs to establish trust in concurrently on boot, {@code 0}
+   *     if disabled
+   */
+  public record FederationCacheConfig(long maxBytes, Path snapshotPath, int prewarmParallelism) {}
+
+  /**
+   * @param executionMode where resource methods run
+   * @param ioThreads the number of threads handling non-blocking IO
+   * @param workerThreads the number of worker threads, in {@link ExecutionMode#WORKER} mode this
+   *     caps the number of requests in flight
+   */
+  public record ServerConfig(ExecutionMode executionMode, int ioThreads, int workerThreads) {}
+
+  /**
+   * @param version the preferred HTTP version, falls back to HTTP/1.1 if the server does not
+   *     support HTTP/2
+   * @param connectTimeout the timeout to establish a connection
+   * @param requestTimeout the timeout for a response, unless a request has its own
+   * @param threads the size of the executor handling responses, {@code 0} for a virtual thread per
+   *     task
+   * @param maxBodyBytes the maximum size of response bodies, larger ones fail the request
+   */
+  public record HttpClientConfig(
+      Version version,
+      Duration connectTimeout,
+      Duration requestTimeout,
+      int threads,
+      long maxBodyBytes) {}
+
+  /**
+   * @param sessionCacheSize the maximum number of TLS sessions kept for resumption with mTLS
+   * @param sessionTimeout how long a TLS session can be resumed
+   */
+  public record TlsConfig(int sessionCacheSize, Duration sessionTimeout) {}
+
+  /**
+   * @param maxHosts how many of the most-used OpenID endpoints of IdPs to keep connections open to,
+   *     {@code 0} if disabled
+   * @param interval how often to send a request to keep the connections open, must be shorter than
+   *     the idle timeout of the connections
+   */
+  public record KeepWarmConfig(int maxHosts, Duration interval) {}
+
+  /**
+   * @param highWaterMark the fraction of the capacity of the in-memory session or code store beyond
+   *     which new logins are rejected
+   * @param retryAfter when rejected clients should try again, sent as {@code Retry-After}
+   */
+  public record AdmissionConfig(double highWaterMark, Duration retryAfter) {}
+
+  public enum SessionMode {
+    /** in the store backend, the session cookie only holds its ID */
+    SERVER,
+    /** in the session cookie itself, encrypted and authenticated, no state on the server */
+    COOKIE;
+
+    static SessionMode parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+            "invalid '%s': '%s'".formatted(CONFIG_SESSION_MODE, value), e);
+      }
+    }
+  }
+
+  public enum StoreBackend {
+    /** in process memory, a login must stay on the instance it started on */
+    MEMORY,
+    /** a Redis compatible server shared by all instances */
+    REDIS;
+
+    static StoreBackend parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+            "invalid '%s': '%s'".formatted(CONFIG_STORE_BACKEND, value), e);
+      }
+    }
+  }
+
+  public enum ExecutionMode {
+    /** resource methods run on the worker thread pool */
+    WORKER,
+    /** each request is dispatched onto its own virtual thread, requires Java 24 or newer */
+    VIRTUAL;
+
+    static ExecutionMode parse(String value) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+            "invalid '%s': '%s'".formatted(CONFIG_EXECUTION_MODE, value), e);
+      }
+    }
+  }
 }
@@ -1,55 +1,97 @@
 package com.oviva.ehealthid.relyingparty;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.jwk.*;
 import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
 import com.oviva.ehealthid.auth.AuthenticationFlow;
+import com.oviva.ehealthid.fedclient.FederationMasterClient;
 import com.oviva.ehealthid.fedclient.FederationMasterClientImpl;
 import com.oviva.ehealthid.fedclient.api.CachedFederationApiClient;
+import com.oviva.ehealthid.fedclient.api.EntityStatementJWS;
+import com.oviva.ehealthid.fedclient.api.ExtendedJWKSetJWS;
 import com.oviva.ehealthid.fedclient.api.FederationApiClientImpl;
-import com.oviva.ehealthid.fedclient.api.InMemoryCacheImpl;
+import com.oviva.ehealthid.fedclient.api.FederationSnapshot;
+import com.oviva.ehealthid.fedclient.api.IdpListJWS;
 import com.oviva.ehealthid.fedclient.api.JavaHttpClient;
 import com.oviva.ehealthid.fedclient.api.OpenIdClient;
+import com.oviva.ehealthid.fedclient.api.OperationListener;
+import com.oviva.ehealthid.fedclient.api.RefreshAheadCache;
+import com.oviva.ehealthid.fedclient.api.RefreshAheadCache.RefreshPolicy;
+import com.oviva.ehealthid.fedclient.api.TemporalValid;
 import com.oviva.ehealthid.relyingparty.ConfigReader.CodeStoreConfig;
+import com.oviva.ehealthid.relyingparty.ConfigReader.FederationCacheConfig;
+import com.oviva.ehealthid.relyingparty.ConfigReader.KeepWarmConfig;
+import com.oviva.ehealthid.relyingparty.ConfigReader.SessionMode;
 import com.oviva.ehealthid.relyingparty.ConfigReader.SessionStoreConfig;
+import com.oviva.ehealthid.relyingparty.ConfigReader.StoreBackend;
+import com.oviva.ehealthid.relyingparty.ConfigReader.TlsConfig;
 import com.oviva.ehealthid.relyingparty.cfg.ConfigProvider;
 import com.oviva.ehealthid.relyingparty.cfg.EnvConfigProvider;
+import com.oviva.ehealthid.relyingparty.fed.TrustPrewarmer;
 import com.oviva.ehealthid.relyingparty.providers.BasicKeystoreProvider;
 import com.oviva.ehealthid.relyingparty.svc.AfterCreatedExpiry;
 import com.oviva.ehealthid.relyingparty.svc.AuthService;
 import com.oviva.ehealthid.relyingparty.svc.CaffeineCodeRepo;
+import com.oviva.ehealthid.relyingparty.svc.CaffeineFederationCache;
+import com.oviva.ehealthid.relyingparty.svc.CaffeineFederationCache.TemporalValidExpiry;
 import com.oviva.ehealthid.relyingparty.svc.CaffeineSessionRepo;
 import com.oviva.ehealthid.relyingparty.svc.ClientAuthenticator;
 import com.oviva.ehealthid.relyingparty.svc.CodeRepo;
+import com.oviva.ehealthid.relyingparty.svc.CookieSessionRepo;
+import com.oviva.ehealthid.relyingparty.svc.KeyValueCodeRepo;
+import com.oviva.ehealthid.relyingparty.svc.KeyValueSessionRepo;
+import com.oviva.ehealthid.relyingparty.svc.NegativeFederationCache;
 import com.oviva.ehealthid.relyingparty.svc.SessionRepo;
 import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
 import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
 import com.oviva.ehealthid.relyingparty.svc.TokenIssuerImpl;
 import com.oviva.ehealthid.relyingparty.testenv.GematikHeaderDecoratorHttpClient;
+import com.oviva.ehealthid.relyingparty.util.CircuitBreakerHttpClient;
+import com.oviva.ehealthid.relyingparty.util.ConnectionKeepWarm;
 import com.oviva.ehealthid.relyingparty.util.DiscoveryJwkSetSource;
 import com.oviva.ehealthid.relyingparty.util.LoggingHttpClient;
+import com.oviva.ehealthid.relyingparty.util.OperationMetrics;
+import com.oviva.ehealthid.relyingparty.util.OutboundHttpClients;
+import com.oviva.ehealthid.relyingparty.util.OutboundHttpClients.Target;
+import com.oviva.ehealthid.relyingparty.util.RedisKeyValueStore;
+import com.oviva.ehealthid.relyingparty.util.ResilientFederationApiClient;
+import com.oviva.ehealthid.relyingparty.util.ResilientFederationApiClient.Operation;
+import com.oviva.ehealthid.relyingparty.util.StoreAdmission;
+import com.oviva.ehealthid.relyingparty.util.TlsHandshakeMetrics;
+import com.oviva.ehealthid.relyingparty.util.TransferMetrics;
 import com.oviva.ehealthid.relyingparty.ws.App;
+import com.oviva.ehealthid.relyingparty.ws.ApplicationServer;
 import com.oviva.ehealthid.relyingparty.ws.HealthEndpoint;
 import com.oviva.ehealthid.relyingparty.ws.MetricsEndpoint;
+import com.oviva.ehealthid.relyingparty.ws.ReadinessEndpoint;
 import com.oviva.ehealthid.util.TlsContext;
 import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import io.micrometer.prometheusmetrics.PrometheusConfig;
 import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
 import io.undertow.Handlers;
 import io.undertow.Undertow;
-import jakarta.ws.rs.SeBootstrap;
-import jakarta.ws.rs.SeBootstrap.Configuration;
 import jakarta.ws.rs.core.UriBuilder;
 import java.net.InetSocketAddress;
 import java.net.URI;
-import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
@@ -71,8 +113,16 @@ public class Main implements AutoCloseable {
   private static final String CONFIG_PREFIX = "EHEALTHID_RP";
   private final ConfigProvider configProvider;
 
-  private SeBootstrap.Instance server;
+  private ApplicationServer server;
   private Undertow managementServer;
+  private ScheduledExecutorService scheduler;
+  private ScheduledExecutorService federationTimer;
+  private ExecutorService federationLoader;
+  private Runnable federationSnapshotWriter;
+  private OutboundHttpClients httpClients;
+  private RedisKeyValueStore keyValueStore;
+  private FederationMasterClient federationMasterClient;
+  private final AtomicBoolean ready = new AtomicBoolean(true);
 
   private CountDownLatch shutdown = new CountDownLatch(1);
 
@@ -100,11 +150,11 @@ public class Main implements AutoCloseable {
   }
 
   public URI baseUri() {
-    return server.configuration().baseUri();
+    return server.baseUri();
   }
 
   public URI managementBaseUri() {
-    var baseUri = server.configuration().baseUri();
+    var baseUri = server.baseUri();
     var address = (InetSocketAddress) managementServer.getListenerInfo().get(0).getAddress();
 
     return UriBuilder.fromUri(baseUri).port(address.getPort()).build();
@@ -126,13 +176,23 @@ public class Main implements AutoCloseable {
     var keyStores = BasicKeystoreProvider.load(configProvider);
 
     var meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
-    var codeRepo = buildCodeRepo(config.codeStoreConfig(), meterRegistry);
+    httpClients = new OutboundHttpClients(config.httpClients(), meterRegistry);
+
+    if (config.store().backend() == StoreBackend.REDIS) {
+      keyValueStore = new RedisKeyValueStore(config.store().uri(), config.store().timeout());
+    }
+
+    var admission =
+        new StoreAdmission(
+            config.admission().highWaterMark(), config.admission().retryAfter(), meterRegistry);
+
+    var codeRepo = buildCodeRepo(config.codeStoreConfig(), admission, meterRegistry);
     var tokenIssuer =
         new TokenIssuerImpl(
             config.baseUri(),
             keyStores.openIdProviderJwksKeystore().keys().get(0)::toECKey,
             codeRepo);
-    var sessionRepo = buildSessionRepo(config.sessionStore(), meterRegistry);
+    var sessionRepo = buildSessionRepo(config.sessionStore(), admission, meterRegistry);
 
     // the relying party signing key is for mTLS
     var mTlsClientCertificate =
@@ -151,14 +211,16 @@ public class Main implements AutoCloseable {
             config.baseUri(),
             config.federation().federationMaster(),
             relyingPartyJwks,
-            mTlsClientCertificate);
-
-    var discoveryHttpClient =
-        HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+            mTlsClientCertificate,
+            config.federationCache(),
+            config.tls(),
+            config.keepWarm(),
+            meterRegistry);
 
     var jwkSource =
         JWKSourceBuilder.create(
-                new DiscoveryJwkSetSource<>(discoveryHttpClient, config.idpDiscoveryUri()))
+                new DiscoveryJwkSetSource<>(
+                    httpClients.forTarget(Target.DISCOVERY), config.idpDiscoveryUri()))
             .refreshAheadCache(true)
             .build();
 
@@ -171,17 +233,29 @@ public class Main implements AutoCloseable {
             config.federation(),
             sessionRepo,
             tokenIssuer,
-            authFlow);
+            authFlow,
+            admission);
 
     server =
-        SeBootstrap.start(
-                new App(config, keyStores, tokenIssuer, clientAuthenticator, authService),
-                Configuration.builder().host(config.host()).port(config.port()).build())
-            .toCompletableFuture()
-            .get();
+        ApplicationServer.start(
+            new App(config, keyStores, tokenIssuer, clientAuthenticator, authService),
+            config.host(),
+            config.port(),
+            config.server());
 
-    var localUri = server.configuration().baseUri();
-    logger.atInfo().log("Magic at {} ({})", config.baseUri(), localUri);
+    var localUri = server.baseUri();
+    logger.atInfo().log(
+        "Magic at {} ({}), executing requests on {} threads",
+        config.baseUri(),
+        localUri,
+        config.server().executionMode());
+
+    // not ready before trust in all IdPs is established, their first users won't pay for it
+    var prewarmParallelism = config.federationCache().prewarmParallelism();
+    if (prewarmParallelism > 0) {
+      ready.set(false);
+      Thread.ofVirtual().name("federation-prewarm").start(() -> prewarmTrust(prewarmParallelism));
+    }
 
     bootManagementServer(config, meterRegistry);
     logger.atInfo().log("Management Server can be found at port {}", config.managementPort());
@@ -195,11 +269,24 @@ public class Main implements AutoCloseable {
             .setHandler(
                 Handlers.path()
                     .addExactPath(HealthEndpoint.PATH, new HealthEndpoint())
+                    .addExactPath(ReadinessEndpoint.PATH, new ReadinessEndpoint(ready::get))
                     .addExactPath(MetricsEndpoint.PATH, new MetricsEndpoint(meterRegistry)))
             .build();
     managementServer.start();
   }
 
+  private void prewarmTrust(int parallelism) {
+    try {
+      new TrustPrewarmer(federationMasterClient, parallelism).run();
+    } catch (InterruptedException e) {
+      // shutting down
+      Thread.currentThread().interrupt();
+    } finally {
+      // IdPs which failed to prewarm establish trust on their first login
+      ready.set(true);
+    }
+  }
+
   private com.oviva.ehealthid.fedclient.api.HttpClient instrumentHttpClient(
       com.oviva.ehealthid.fedclient.api.HttpClient client) {
     if (logger.isDebugEnabled()) {
@@ -220,67 +307,351 @@ public class Main implements AutoCloseable {
   }
 
   private AuthenticationFlow buildAuthFlow(
-      URI selfIssuer, URI fedmaster, JWKSet encJwks, ECKey mTlsClientCert) {
+      URI selfIssuer,
+      URI fedmaster,
+      JWKSet encJwks,
+      ECKey mTlsClientCert,
+      FederationCacheConfig cacheConfig,
+      TlsConfig tlsConfig,
+      KeepWarmConfig keepWarmConfig,
+      PrometheusMeterRegistry meterRegistry) {
 
-    var timeout = Duration.ofSeconds(10);
+    // setup as needed
+    var clock = Clock.systemUTC();
+    var ttl = Duration.ofMinutes(5);
 
-    var httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    var httpClient = httpClients.forTarget(Target.FEDERATION);
 
-    var client = instrumentHttpClient(new JavaHttpClient(httpClient));
+    var client =
+        withCircuitBreaker(
+            Target.FEDERATION.clientName(),
+            instrumentHttpClient(
+                new JavaHttpClient(
+                    httpClient,
+                    httpClients.maxBodyBytes(Target.FEDERATION),
+                    new TransferMetrics(Target.FEDERATION.clientName(), meterRegistry))),
+            clock,
+            meterRegistry);
 
     var fedHttpClient = decorateWithGematikAuthorization(fedmaster, client);
 
-    // setup as needed
-    var clock = Clock.systemUTC();
-    var ttl = Duration.ofMinutes(5);
-
+    // refresh federation artifacts in the background, well before they expire
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              var t = new Thread(r, "federation-refresh");
+              t.setDaemon(true);
+              return t;
+            });
+    var refreshPolicy = new RefreshPolicy(0.75, 0.1, Duration.ofSeconds(10), Duration.ofMinutes(5));
+
+    // retries, hedges and timeouts get their own timer, fetches waiting on the refresh scheduler
+    // could otherwise never complete
+    federationTimer =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              var t = new Thread(r, "federation-timer");
+              t.setDaemon(true);
+              return t;
+            });
+
+    // cache misses are loaded off the calling thread, concurrent misses of a key share one load
+    federationLoader =
+        Executors.newCachedThreadPool(
+            r -> {
+              var t = new Thread(r, "federation-loader");
+              t.setDaemon(true);
+              return t;
+            });
+
+    // failed loads are remembered above the retries, a burst of logins for a broken IdP waits them
+    // out only once
     var federationApiClient =
         new CachedFederationApiClient(
-            new FederationApiClientImpl(fedHttpClient),
-            new InMemoryCacheImpl<>(clock, ttl),
-            new InMemoryCacheImpl<>(clock, ttl),
-            new InMemoryCacheImpl<>(clock, ttl),
-            new InMemoryCacheImpl<>(clock, ttl));
+            buildResilientFederationApiClient(fedHttpClient, clock, ttl, meterRegistry),
+            rememberFailures(
+                "entityStatementCache",
+                refreshAhead(
+                    buildFederationCache(
+                        "entityStatementCache",
+                        EntityStatementJWS::jws,
+                        cacheConfig,
+                        clock,
+                        ttl,
+                        meterRegistry),
+                    clock,
+                    refreshPolicy),
+                clock,
+                meterRegistry),
+            rememberFailures(
+                "federationStatementCache",
+                refreshAhead(
+                    buildFederationCache(
+                        "federationStatementCache",
+                        EntityStatementJWS::jws,
+                        cacheConfig,
+                        clock,
+                        ttl,
+                        meterRegistry),
+                    clock,
+                    refreshPolicy),
+                clock,
+                meterRegistry),
+            rememberFailures(
+                "signedJwksCache",
+                refreshAhead(
+                    buildFederationCache(
+                        "signedJwksCache",
+                        ExtendedJWKSetJWS::jws,
+                        cacheConfig,
+                        clock,
+                        ttl,
+                        meterRegistry),
+                    clock,
+                    refreshPolicy),
+                clock,
+                meterRegistry),
+            rememberFailures(
+                "idpListCache",
+                refreshAhead(
+                    buildFederationCache(
+                        "idpListCache", IdpListJWS::jws, cacheConfig, clock, ttl, meterRegistry),
+                    clock,
+                    refreshPolicy),
+                clock,
+                meterRegistry));
+
+    if (cacheConfig.snapshotPath() != null) {
+      restoreFederationSnapshot(federationApiClient, cacheConfig.snapshotPath(), clock);
+    }
 
-    var fedmasterClient = new FederationMasterClientImpl(fedmaster, federationApiClient, clock);
+    // independent statements of a trust chain are fetched concurrently, without blocking threads
+    federationMasterClient =
+        new FederationMasterClientImpl(fedmaster, federationApiClient, federationApiClient, clock);
 
-    var openIdClient = buildOpenIdClient(mTlsClientCert, timeout, fedmaster);
+    var openIdClient =
+        buildOpenIdClient(
+            mTlsClientCert, tlsConfig, keepWarmConfig, fedmaster, clock, meterRegistry);
 
     return new AuthenticationFlow(
-        selfIssuer, fedmasterClient, openIdClient, encJwks::getKeyByKeyId);
+        selfIssuer, federationMasterClient, openIdClient, encJwks::getKeyByKeyId);
   }
 
-  private OpenIdClient buildOpenIdClient(ECKey mTlsClientKey, Duration timeout, URI fedmaster) {
+  private ResilientFederationApiClient buildResilientFederationApiClient(
+      com.oviva.ehealthid.fedclient.api.HttpClient client,
+      Clock clock,
+      Duration minTimeToLive,
+      PrometheusMeterRegistry meterRegistry) {
+
+    // a single slow or failed fetch must not stall a login for the whole request timeout, the
+    // idp list and entity configurations are on the critical path of every login
+    var critical =
+        new ResilientFederationApiClient.Policy(
+            Duration.ofSeconds(5), 2, Duration.ofMillis(100), 0.95, Duration.ofMillis(200));
+    var other =
+        new ResilientFederationApiClient.Policy(
+            Duration.ofSeconds(10), 2, Duration.ofMillis(200), 0, Duration.ZERO);
+
+    var policies = new EnumMap<Operation, ResilientFederationApiClient.Policy>(Operation.class);
+    policies.put(Operation.IDP_LIST, critical);
+    policies.put(Operation.ENTITY_CONFIGURATION, critical);
+    policies.put(Operation.FEDERATION_STATEMENT, critical);
+    policies.put(Operation.SIGNED_JWKS, other);
+
+    // artifacts the caches no longer keep are not worth revalidating
+    var federationApiClient =
+        new FederationApiClientImpl(
+            client,
+            clock,
+            new OperationMetrics(Target.FEDERATION.clientName(), meterRegistry),
+            minTimeToLive);
+
+    return new ResilientFederationApiClient(
+        federationApiClient, policies, federationTimer, meterRegistry);
+  }
 
-    // the OpenID client needs a self-signed client certificate for mTLS
-    var context = TlsContext.fromClientCertificate(mTlsClientKey);
+  private <T extends TemporalValid> com.oviva.ehealthid.fedclient.api.Cache<T> rememberFailures(
+      String name,
+      com.oviva.ehealthid.fedclient.api.Cache<T> cache,
+      Clock clock,
+      PrometheusMeterRegistry meterRegistry) {
+    return new NegativeFederationCache<>(cache, name, Duration.ofSeconds(5), clock, meterRegistry);
+  }
 
-    var authenticatedHttpClient =
-        HttpClient.newBuilder().sslContext(context).connectTimeout(timeout).build();
+  private <T extends TemporalValid> com.oviva.ehealthid.fedclient.api.Cache<T> refreshAhead(
+      com.oviva.ehealthid.fedclient.api.Cache<T> cache, Clock clock, RefreshPolicy policy) {
+    return new RefreshAheadCache<>(cache, scheduler, clock, policy);
+  }
+
+  private void restoreFederationSnapshot(
+      CachedFederationApiClient client, Path snapshotPath, Clock clock) {
+
+    if (Files.exists(snapshotPath)) {
+      try {
+        var restored = client.restore(FederationSnapshot.read(snapshotPath), clock.instant());
+        logger.atInfo().log("restored {} federation artifacts from '{}'", restored, snapshotPath);
+      } catch (RuntimeException e) {
+        // a broken snapshot must not prevent booting, we merely start with cold caches
+        logger
+            .atWarn()
+            .setCause(e)
+            .log("failed to restore federation snapshot from '{}'", snapshotPath);
+      }
+    }
+
+    federationSnapshotWriter =
+        () -> {
+          try {
+            client.snapshot(clock.instant()).write(snapshotPath);
+          } catch (RuntimeException e) {
+            logger
+                .atWarn()
+                .setCause(e)
+                .log("failed to write federation snapshot to '{}'", snapshotPath);
+          }
+        };
+
+    // pods are not always shut down gracefully, persist regularly
+    scheduler.scheduleWithFixedDelay(federationSnapshotWriter, 5, 5, TimeUnit.MINUTES);
+  }
+
+  private <T extends TemporalValid> CaffeineFederationCache<T> buildFederationCache(
+      String name,
+      Function<T, JWSObject> jwsOf,
+      FederationCacheConfig config,
+      Clock clock,
+      Duration minTimeToLive,
+      PrometheusMeterRegistry meterRegistry) {
+
+    // entries are weighed by their serialized size, a handful of large JWKS or entity statements
+    // must not crowd out the memory budget
+    AsyncCache<String, T> store =
+        Caffeine.newBuilder()
+            .executor(federationLoader)
+            .expireAfter(new TemporalValidExpiry<T>(clock, minTimeToLive))
+            .maximumWeight(config.maxBytes())
+            .weigher((String key, T value) -> key.length() + weightOf(jwsOf.apply(value)))
+            .recordStats()
+            .buildAsync();
+
+    CaffeineCacheMetrics<String, T, Cache<String, T>> metrics =
+        new CaffeineCacheMetrics<>(store.synchronous(), name, null);
+    metrics.bindTo(meterRegistry);
+
+    return new CaffeineFederationCache<>(store);
+  }
+
+  private int weightOf(JWSObject jws) {
+    if (jws == null || jws.getParsedString() == null) {
+      return 0;
+    }
+    return jws.getParsedString().length();
+  }
+
+  private OpenIdClient buildOpenIdClient(
+      ECKey mTlsClientKey,
+      TlsConfig tlsConfig,
+      KeepWarmConfig keepWarmConfig,
+      URI fedmaster,
+      Clock clock,
+      PrometheusMeterRegistry meterRegistry) {
+
+    // the OpenID client needs a self-signed client certificate for mTLS, full handshakes with
+    // client authentication are costly, repeated PAR and token calls to an IdP resume the session
+    var context =
+        TlsContext.create()
+            .clientCertificate(mTlsClientKey)
+            .sessionCacheSize(tlsConfig.sessionCacheSize())
+            .sessionTimeout(tlsConfig.sessionTimeout())
+            .handshakeListener(new TlsHandshakeMetrics(Target.OPENID.clientName(), meterRegistry))
+            .build();
+
+    var authenticatedHttpClient = httpClients.forTarget(Target.OPENID, context);
 
     var authenticatedClient =
         decorateWithGematikAuthorization(
-            fedmaster, instrumentHttpClient(new JavaHttpClient(authenticatedHttpClient)));
-    return new OpenIdClient(authenticatedClient);
+            fedmaster,
+            withCircuitBreaker(
+                Target.OPENID.clientName(),
+                instrumentHttpClient(
+                    new JavaHttpClient(
+                        authenticatedHttpClient, httpClients.maxBodyBytes(Target.OPENID))),
+                clock,
+                meterRegistry));
+
+    OperationListener listener = new OperationMetrics(Target.OPENID.clientName(), meterRegistry);
+    if (keepWarmConfig.maxHosts() > 0) {
+      // the token exchange follows the PAR of a login minutes later, the connection is long gone
+      var keepWarm =
+          new ConnectionKeepWarm(
+              authenticatedHttpClient,
+              Target.OPENID.clientName(),
+              keepWarmConfig.maxHosts(),
+              keepWarmConfig.interval(),
+              meterRegistry);
+      var interval = keepWarmConfig.interval().toMillis();
+      scheduler.scheduleWithFixedDelay(keepWarm::warmUp, interval, interval, TimeUnit.MILLISECONDS);
+      listener = listener.andThen(keepWarm);
+    }
+
+    return new OpenIdClient(authenticatedClient, listener);
+  }
+
+  private com.oviva.ehealthid.fedclient.api.HttpClient withCircuitBreaker(
+      String name,
+      com.oviva.ehealthid.fedclient.api.HttpClient client,
+      Clock clock,
+      PrometheusMeterRegistry meterRegistry) {
+
+    // fail fast on IdPs which are down rather than waiting out the connect timeout every time
+    var policy = new CircuitBreakerHttpClient.Policy(5, Duration.ofSeconds(30));
+    return new CircuitBreakerHttpClient(client, name, policy, clock, meterRegistry);
   }
 
   private SessionRepo buildSessionRepo(
-      SessionStoreConfig config, PrometheusMeterRegistry meterRegistry) {
+      SessionStoreConfig config, StoreAdmission admission, PrometheusMeterRegistry meterRegistry) {
+    if (config.mode() == SessionMode.COOKIE) {
+      return new CookieSessionRepo(sessionCookieSecret(config), config.ttl());
+    }
+
+    if (keyValueStore != null) {
+      return new KeyValueSessionRepo(keyValueStore, config.ttl());
+    }
+
     Cache<String, Session> store = buildCache(config.ttl(), config.maxEntries());
 
     CaffeineCacheMetrics<String, Session, Cache<String, Session>> metrics =
         new CaffeineCacheMetrics<>(store, "sessionCache", null);
     metrics.bindTo(meterRegistry);
+    admission.watch("sessions", store::estimatedSize, config.maxEntries());
 
     return new CaffeineSessionRepo(store, config.ttl());
   }
 
-  private CodeRepo buildCodeRepo(CodeStoreConfig config, PrometheusMeterRegistry meterRegistry) {
+  private byte[] sessionCookieSecret(SessionStoreConfig config) {
+    if (config.cookieSecret() != null) {
+      return config.cookieSecret().getBytes(StandardCharsets.UTF_8);
+    }
+
+    logger.warn(
+        "no session cookie secret configured, logins must finish on the instance they started on");
+    var secret = new byte[CookieSessionRepo.MIN_SECRET_BYTES];
+    new SecureRandom().nextBytes(secret);
+    return secret;
+  }
+
+  private CodeRepo buildCodeRepo(
+      CodeStoreConfig config, StoreAdmission admission, PrometheusMeterRegistry meterRegistry) {
+    if (keyValueStore != null) {
+      return new KeyValueCodeRepo(keyValueStore, config.ttl());
+    }
+
     Cache<String, Code> store = buildCache(config.ttl(), config.maxEntries());
 
     CaffeineCacheMetrics<String, Code, Cache<String, Code>> metrics =
         new CaffeineCacheMetrics<>(store, "codeCache", null);
     metrics.bindTo(meterRegistry);
+    admission.watch("codes", store::estimatedSize, config.maxEntries());
 
     return new CaffeineCodeRepo(store);
   }
@@ -295,7 +666,25 @@ public class Main implements AutoCloseable {
 
   @Override
   public void close() throws Exception {
-    server.stop().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    if (federationSnapshotWriter != null) {
+      federationSnapshotWriter.run();
+    }
+    if (federationLoader != null) {
+      federationLoader.shutdownNow();
+    }
+    if (federationTimer != null) {
+      federationTimer.shutdownNow();
+    }
+    if (httpClients != null) {
+      httpClients.close();
+    }
+    server.close();
+    if (keyValueStore != null) {
+      keyValueStore.close();
+    }
     shutdown.countDown();
   }
 }
@@ -0,0 +1,75 @@
+package com.oviva.ehealthid.relyingparty.fed;
+
+import com.oviva.ehealthid.fedclient.FederationMasterClient;
+import com.oviva.ehealthid.fedclient.IdpEntry;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Establishes trust in all IdPs of the federation upfront, so the first user of each IdP does not
+ * pay for fetching and verifying its trust chain.
+ */
+public class TrustPrewarmer {
+
+  private static final Logger logger = LoggerFactory.getLogger(TrustPrewarmer.class);
+
+  private final FederationMasterClient federationMasterClient;
+  private final int parallelism;
+
+  /**
+   * @param parallelism the maximum number of IdPs to establish trust in concurrently
+   */
+  public TrustPrewarmer(FederationMasterClient federationMasterClient, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.federationMasterClient = federationMasterClient;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Best effort, an IdP which can not be trusted right now is skipped and its trust is established
+   * on first use as usual.
+   *
+   * @return the number of IdPs trust was established in
+   */
+  public int run() throws InterruptedException {
+
+    List<IdpEntry> idps;
+    try {
+      idps = federationMasterClient.listAvailableIdps();
+    } catch (RuntimeException e) {
+      logger.atWarn().setCause(e).log("failed to fetch IdP list, skipping pre-warming");
+      return 0;
+    }
+
+    var permits = new Semaphore(parallelism);
+    var trusted = new AtomicInteger();
+
+    // closing the executor waits for all submitted tasks
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var idp : idps) {
+        permits.acquire();
+        executor.execute(
+            () -> {
+              try {
+                federationMasterClient.establishIdpTrust(URI.create(idp.iss()));
+                trusted.incrementAndGet();
+              } catch (RuntimeException e) {
+                logger.atWarn().setCause(e).log("failed to establish trust in '{}'", idp.iss());
+              } finally {
+                permits.release();
+              }
+            });
+      }
+    }
+
+    logger.atInfo().log("established trust in {} of {} IdPs", trusted.get(), idps.size());
+    return trusted.get();
+  }
+}
@@ -8,6 +8,7 @@ import com.oviva.ehealthid.relyingparty.svc.LocalizedException.Message;
 import com.oviva.ehealthid.relyingparty.svc.OpenIdErrors.ErrorCode;
 import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
 import com.oviva.ehealthid.relyingparty.util.IdGenerator;
+import com.oviva.ehealthid.relyingparty.util.StoreAdmission;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import jakarta.ws.rs.core.UriBuilder;
@@ -31,19 +32,23 @@ public class AuthService {
 
   private final FederationConfig federationConfig;
 
+  private final StoreAdmission admission;
+
   public AuthService(
       URI baseUri,
       RelyingPartyConfig relyingPartyConfig,
       FederationConfig federationConfig,
       SessionRepo sessionRepo,
       TokenIssuer tokenIssuer,
-      AuthenticationFlow authenticationFlow) {
+      AuthenticationFlow authenticationFlow,
+      StoreAdmission admission) {
     this.baseUri = baseUri;
     this.relyingPartyConfig = relyingPartyConfig;
     this.federationConfig = federationConfig;
     this.sessionRepo = sessionRepo;
     this.tokenIssuer = tokenIssuer;
     this.authenticationFlow = authenticationFlow;
+    this.admission = admission;
   }
 
   private static String calculateS256CodeChallenge(String codeVerifier) {
@@ -70,44 +75,34 @@ public class AuthService {
   @NonNull
   public AuthorizationResponse auth(@NonNull AuthorizationRequest request) {
 
+    // every login needs a session and later a code, turn it away before any work is done for it
+    admission.admit();
+
     validateAuthorizationRequest(request);
 
     var verifier = generatePkceCodeVerifier();
 
-    var codeChallenge = calculateS256CodeChallenge(verifier);
-
-    var relyingPartyCallback = baseUri.resolve("/auth/callback");
-
-    var step1 =
-        authenticationFlow.start(
-            new AuthenticationFlow.Session(
-                request.state(),
-                request.nonce(),
-                relyingPartyCallback,
-                codeChallenge,
-                federationConfig.scopes()));
+    var step1 = authenticationFlow.start(flowSession(request.state(), request.nonce(), verifier));
 
     var identityProviders = step1.fetchIdpOptions();
 
-    var sessionId = IdGenerator.generateID();
     var session =
         Session.create()
-            .id(sessionId)
+            .id(IdGenerator.generateID())
             .state(request.state())
             .nonce(request.nonce())
             .redirectUri(request.redirectUri())
             .clientId(request.clientId())
             .codeVerifier(verifier)
-            .selectSectoralIdpStep(step1)
             .build();
 
-    sessionRepo.save(session);
+    var sessionId = sessionRepo.save(session);
 
     return new AuthorizationResponse(identityProviders, sessionId);
   }
 
   @NonNull
-  public URI selectedIdentityProvider(@NonNull SelectedIdpRequest request) {
+  public SelectedIdpResponse selectedIdentityProvider(@NonNull SelectedIdpRequest request) {
 
     var selectedIdp = request.selectedIdentityProvider();
     if (selectedIdp == null || selectedIdp.isBlank()) {
@@ -116,15 +111,17 @@ public class AuthService {
 
     var session = mustFindSession(request.sessionId());
 
-    var step2 = session.selectSectoralIdpStep().redirectToSectoralIdp(selectedIdp);
+    var step1 = authenticationFlow.start(flowSession(session));
+    var step2 = step1.redirectToSectoralIdp(selectedIdp);
 
     var federatedLogin = step2.idpRedirectUri();
 
-    var newSession = session.toBuilder().trustedSectoralIdpStep(step2).build();
+    var newSession =
+        session.toBuilder().selectedIdp(selectedIdp).idpRedirectUri(federatedLogin).build();
 
-    sessionRepo.save(newSession);
+    var sessionId = sessionRepo.save(newSession);
 
-    return federatedLogin;
+    return new SelectedIdpResponse(federatedLogin, sessionId);
   }
 
   @NonNull
@@ -134,10 +131,14 @@ public class AuthService {
 
     var session = mustFindSession(request.sessionId());
 
-    var idToken =
-        session
-            .trustedSectoralIdpStep()
-            .exchangeSectoralIdpCode(request.code(), session.codeVerifier());
+    if (session.selectedIdp() == null || session.idpRedirectUri() == null) {
+      throw new ValidationException(new Message("error.invalidSession"));
+    }
+
+    var step2 =
+        authenticationFlow.resume(
+            flowSession(session), session.selectedIdp(), session.idpRedirectUri());
+    var idToken = step2.exchangeSectoralIdpCode(request.code(), session.codeVerifier());
 
     session = removeSession(request.sessionId());
     if (session == null) {
@@ -152,6 +153,20 @@ public class AuthService {
         .build();
   }
 
+  private AuthenticationFlow.Session flowSession(String state, String nonce, String verifier) {
+    return new AuthenticationFlow.Session(
+        state,
+        nonce,
+        baseUri.resolve("/auth/callback"),
+        calculateS256CodeChallenge(verifier),
+        federationConfig.scopes());
+  }
+
+  // the steps are rebuilt from the session for every request rather than kept in it
+  private AuthenticationFlow.Session flowSession(Session session) {
+    return flowSession(session.state(), session.nonce(), session.codeVerifier());
+  }
+
   private void validateCallbackRequest(CallbackRequest request) {
     if (request.code() == null
         || request.code().isBlank()
@@ -230,6 +245,8 @@ public class AuthService {
 
   public record SelectedIdpRequest(String sessionId, String selectedIdentityProvider) {}
 
+  public record SelectedIdpResponse(URI idpRedirectUri, String sessionId) {}
+
   public record CallbackRequest(String sessionId, String code) {}
 
   public record AuthorizationRequest(
@@ -0,0 +1,114 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.oviva.ehealthid.fedclient.api.Cache;
+import com.oviva.ehealthid.fedclient.api.TemporalValid;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Federation cache backed by a Caffeine {@link AsyncCache}, bounds and eviction are up to how the
+ * store is built. Concurrent loads of the same key are coalesced into a single in-flight load.
+ *
+ * <p>Use {@link TemporalValidExpiry} to expire entries before they are no longer valid.
+ */
+public class CaffeineFederationCache<T extends TemporalValid> implements Cache<T> {
+
+  private final AsyncCache<String, T> store;
+
+  public CaffeineFederationCache(AsyncCache<String, T> store) {
+    this.store = store;
+  }
+
+  @Override
+  public T computeIfAbsent(String key, Function<String, T> supplier) {
+    return join(
+        store.get(
+            key,
+            (k, executor) -> CompletableFuture.supplyAsync(() -> supplier.apply(k), executor)));
+  }
+
+  @Override
+  public CompletableFuture<T> computeIfAbsentAsync(
+      String key, Function<String, CompletableFuture<T>> loader) {
+    return store.get(key, (k, executor) -> loader.apply(k));
+  }
+
+  @Override
+  public T refresh(String key, Function<String, T> supplier) {
+
+    // the current entry, if any, is served until the fresh one is in
+    var fresh = supplier.apply(key);
+    if (fresh == null) {
+      store.synchronous().invalidate(key);
+    } else {
+      store.put(key, CompletableFuture.completedFuture(fresh));
+    }
+    return fresh;
+  }
+
+  @Override
+  public void put(String key, T value) {
+    store.put(key, CompletableFuture.completedFuture(value));
+  }
+
+  @Override
+  public Map<String, T> entries() {
+    // loads still in flight are skipped
+    return Map.copyOf(store.synchronous().asMap());
+  }
+
+  private T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw e;
+    }
+  }
+
+  /** Expires entries once they are no longer valid for at least the given time to live. */
+  public record TemporalValidExpiry<T extends TemporalValid>(Clock clock, Duration minTimeToLive)
+      implements Expiry<String, T> {
+
+    @Override
+    public long expireAfterCreate(String key, T value, long currentTime) {
+      return untilExpiry(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, T value, long currentTime, long currentDuration) {
+      return untilExpiry(value);
+    }
+
+    @Override
+    public long expireAfterRead(String key, T value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+    private long untilExpiry(T value) {
+      var exp = value.expiresAt();
+      if (exp == null) {
+        return Long.MAX_VALUE;
+      }
+
+      var remaining = Duration.between(clock.instant(), exp.minus(minTimeToLive));
+      if (remaining.isNegative()) {
+        return 0;
+      }
+
+      try {
+        return remaining.toNanos();
+      } catch (ArithmeticException e) {
+        return Long.MAX_VALUE;
+      }
+    }
+  }
+}
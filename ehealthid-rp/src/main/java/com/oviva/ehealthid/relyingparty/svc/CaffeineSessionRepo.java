@@ -16,13 +16,15 @@ public class CaffeineSessionRepo implements SessionRepo {
     this.timeToLive = timeToLive;
   }
 
+  @NonNull
   @Override
-  public void save(@NonNull Session session) {
+  public String save(@NonNull Session session) {
     if (session.id() == null) {
       throw new IllegalArgumentException("session has no ID");
     }
 
     store.put(session.id(), session);
+    return session.id();
   }
 
   @Nullable
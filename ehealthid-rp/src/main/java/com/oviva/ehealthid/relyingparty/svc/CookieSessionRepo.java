@@ -0,0 +1,161 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps no sessions at all, the session ID handed to the browser is the session itself: encoded
+ * with {@link StoreCodec} and sealed with AES-GCM, i.e. encrypted, authenticated and bound to the
+ * time it was sealed. Memory use does not grow with the number of logins in progress and any
+ * instance sharing the secret can continue a login.
+ *
+ * <p>The key rotates every time-to-live, each is derived from the secret and the number of the
+ * period it is used in. A sealed session is accepted in the period it was sealed in and the next
+ * one, which covers its whole lifetime.
+ *
+ * <p>Sealed sessions cannot be revoked, {@link #remove(String)} merely opens it. Replaying a
+ * callback still fails, the sectoral IdP redeems its code only once.
+ */
+public class CookieSessionRepo implements SessionRepo {
+
+  public static final int MIN_SECRET_BYTES = 32;
+
+  private static final Logger logger = LoggerFactory.getLogger(CookieSessionRepo.class);
+
+  private static final byte VERSION = 1;
+  private static final int HEADER_BYTES = 1 + Long.BYTES;
+  private static final int NONCE_BYTES = 12;
+  private static final int TAG_BITS = 128;
+
+  private final SecureRandom random = new SecureRandom();
+  private final SecretKeySpec secret;
+  private final Duration timeToLive;
+  private final Clock clock;
+
+  /**
+   * @param secret the secret the keys are derived from, shared by all instances
+   * @param timeToLive how long a session lives, also how often the key rotates
+   */
+  public CookieSessionRepo(@NonNull byte[] secret, @NonNull Duration timeToLive) {
+    this(secret, timeToLive, Clock.systemUTC());
+  }
+
+  CookieSessionRepo(@NonNull byte[] secret, @NonNull Duration timeToLive, @NonNull Clock clock) {
+    if (secret.length < MIN_SECRET_BYTES) {
+      throw new IllegalArgumentException(
+          "session cookie secret must have at least %d bytes".formatted(MIN_SECRET_BYTES));
+    }
+    this.secret = new SecretKeySpec(secret, "HmacSHA256");
+    this.timeToLive = timeToLive;
+    this.clock = clock;
+  }
+
+  @NonNull
+  @Override
+  public String save(@NonNull Session session) {
+    var plaintext = StoreCodec.encodeSession(session);
+    var period = period();
+
+    var nonce = new byte[NONCE_BYTES];
+    random.nextBytes(nonce);
+
+    try {
+      var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.ENCRYPT_MODE, key(period), new GCMParameterSpec(TAG_BITS, nonce));
+
+      var sealed =
+          ByteBuffer.allocate(HEADER_BYTES + NONCE_BYTES + cipher.getOutputSize(plaintext.length));
+      sealed.put(VERSION).putLong(period);
+      cipher.updateAAD(sealed.array(), 0, HEADER_BYTES);
+      sealed.put(nonce);
+      cipher.doFinal(ByteBuffer.wrap(plaintext), sealed);
+
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed.array());
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("failed to seal session", e);
+    }
+  }
+
+  @Nullable
+  @Override
+  public Session load(@NonNull String sessionId) {
+    var session = open(sessionId);
+    if (session == null || session.createdAt().plus(timeToLive).isBefore(clock.instant())) {
+      return null;
+    }
+    return session;
+  }
+
+  @Nullable
+  @Override
+  public Session remove(@NonNull String sessionId) {
+    return load(sessionId);
+  }
+
+  @Nullable
+  private Session open(String sessionId) {
+    byte[] sealed;
+    try {
+      sealed = Base64.getUrlDecoder().decode(sessionId);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (sealed.length < HEADER_BYTES + NONCE_BYTES || sealed[0] != VERSION) {
+      return null;
+    }
+
+    // sealed in this period or the previous one, older ones expired anyway
+    var period = ByteBuffer.wrap(sealed, 1, Long.BYTES).getLong();
+    var current = period();
+    if (period != current && period != current - 1) {
+      return null;
+    }
+
+    try {
+      var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(
+          Cipher.DECRYPT_MODE,
+          key(period),
+          new GCMParameterSpec(TAG_BITS, sealed, HEADER_BYTES, NONCE_BYTES));
+      cipher.updateAAD(sealed, 0, HEADER_BYTES);
+      var plaintext =
+          cipher.doFinal(
+              sealed, HEADER_BYTES + NONCE_BYTES, sealed.length - HEADER_BYTES - NONCE_BYTES);
+      return StoreCodec.decodeSession(plaintext);
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      logger.atDebug().setCause(e).log("rejected sealed session");
+      return null;
+    }
+  }
+
+  private long period() {
+    return clock.instant().toEpochMilli() / timeToLive.toMillis();
+  }
+
+  private SecretKey key(long period) throws GeneralSecurityException {
+    var mac = Mac.getInstance("HmacSHA256");
+    mac.init(secret);
+    mac.update("ehealthid-rp session key".getBytes(StandardCharsets.US_ASCII));
+    var derived = mac.doFinal(ByteBuffer.allocate(Long.BYTES).putLong(period).array());
+    try {
+      return new SecretKeySpec(derived, "AES");
+    } finally {
+      Arrays.fill(derived, (byte) 0);
+    }
+  }
+}
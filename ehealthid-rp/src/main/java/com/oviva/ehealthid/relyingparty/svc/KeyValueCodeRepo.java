@@ -0,0 +1,36 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Keeps codes in a {@link KeyValueStore} shared by all instances. Removal is atomic across all of
+ * them, a code is redeemed exactly once.
+ */
+public class KeyValueCodeRepo implements CodeRepo {
+
+  private static final String KEY_PREFIX = "ehealthid:code:";
+
+  private final KeyValueStore store;
+  private final Duration timeToLive;
+
+  public KeyValueCodeRepo(KeyValueStore store, Duration timeToLive) {
+    this.store = store;
+    this.timeToLive = timeToLive;
+  }
+
+  @Override
+  public void save(Code code) {
+    store.set(key(code.code()), StoreCodec.encodeCode(code), timeToLive);
+  }
+
+  @Override
+  public Optional<Code> remove(String code) {
+    return Optional.ofNullable(store.remove(key(code))).map(StoreCodec::decodeCode);
+  }
+
+  private static String key(String code) {
+    return KEY_PREFIX + code;
+  }
+}
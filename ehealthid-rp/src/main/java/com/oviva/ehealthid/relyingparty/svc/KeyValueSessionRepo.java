@@ -0,0 +1,68 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps sessions in a {@link KeyValueStore} shared by all instances, a login can continue on any of
+ * them.
+ */
+public class KeyValueSessionRepo implements SessionRepo {
+
+  private static final String KEY_PREFIX = "ehealthid:session:";
+
+  private final KeyValueStore store;
+  private final Duration timeToLive;
+
+  public KeyValueSessionRepo(KeyValueStore store, Duration timeToLive) {
+    this.store = store;
+    this.timeToLive = timeToLive;
+  }
+
+  @NonNull
+  @Override
+  public String save(@NonNull Session session) {
+    if (session.id() == null) {
+      throw new IllegalArgumentException("session has no ID");
+    }
+
+    var ttl = Duration.between(Instant.now(), session.createdAt().plus(timeToLive));
+    if (ttl.isNegative() || ttl.isZero()) {
+      return session.id();
+    }
+
+    store.set(key(session.id()), StoreCodec.encodeSession(session), ttl);
+    return session.id();
+  }
+
+  @Nullable
+  @Override
+  public Session load(@NonNull String sessionId) {
+    return decode(store.get(key(sessionId)));
+  }
+
+  @Nullable
+  @Override
+  public Session remove(@NonNull String sessionId) {
+    return decode(store.remove(key(sessionId)));
+  }
+
+  private static String key(String sessionId) {
+    return KEY_PREFIX + sessionId;
+  }
+
+  @Nullable
+  private Session decode(@Nullable byte[] value) {
+    if (value == null) {
+      return null;
+    }
+
+    var session = StoreCodec.decodeSession(value);
+    if (session.createdAt().plus(timeToLive).isBefore(Instant.now())) {
+      return null;
+    }
+    return session;
+  }
+}
@@ -0,0 +1,30 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.time.Duration;
+
+/**
+ * A key-value store shared by all instances of the relying party, e.g. to continue a login on
+ * another instance than the one it started on. Failing to reach the store throws an {@link
+ * java.io.UncheckedIOException}.
+ */
+public interface KeyValueStore {
+
+  /** stores the value, replacing any previous one, and expires it after the given time */
+  void set(@NonNull String key, @NonNull byte[] value, @NonNull Duration ttl);
+
+  /**
+   * @return the value, {@code null} if there is none or it expired
+   */
+  @Nullable
+  byte[] get(@NonNull String key);
+
+  /**
+   * Removes the value atomically, of several concurrent callers at most one gets it.
+   *
+   * @return the removed value, {@code null} if there was none or it expired
+   */
+  @Nullable
+  byte[] remove(@NonNull String key);
+}
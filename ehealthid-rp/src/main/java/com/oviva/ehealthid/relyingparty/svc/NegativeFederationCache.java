@@ -0,0 +1,137 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import com.oviva.ehealthid.fedclient.FederationException;
+import com.oviva.ehealthid.fedclient.FederationException.Reason;
+import com.oviva.ehealthid.fedclient.api.Cache;
+import com.oviva.ehealthid.fedclient.api.TemporalValid;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Remembers failed loads of a federation cache for a short time, looking up the same key meanwhile
+ * fails right away instead of fetching it once more.
+ *
+ * <p>This sits above the client retrying failed fetches, so a burst of logins for a broken IdP
+ * waits out the retries once rather than once per login, while the retries themselves are never
+ * failed by an earlier failure. Refreshes ahead of expiry load on their own and are not affected.
+ */
+public class NegativeFederationCache<T extends TemporalValid> implements Cache<T> {
+
+  // plenty for the IdPs of a federation, more failures are simply not remembered
+  private static final int MAX_FAILURES = 1000;
+
+  private final Cache<T> delegate;
+  private final Duration ttl;
+  private final Clock clock;
+  private final Counter rejected;
+
+  private final Map<String, Instant> failures = new ConcurrentHashMap<>();
+
+  /**
+   * @param ttl how long a failed load is remembered
+   */
+  public NegativeFederationCache(
+      Cache<T> delegate, String name, Duration ttl, Clock clock, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.ttl = ttl;
+    this.clock = clock;
+    this.rejected =
+        Counter.builder("ehealthid.federation.cache.negative.hits")
+            .description("lookups failed right away since the same load failed recently")
+            .tag("cache", name)
+            .register(meterRegistry);
+  }
+
+  @Override
+  public T computeIfAbsent(String key, Function<String, T> supplier) {
+    var failedUntil = recentFailure(key);
+    if (failedUntil != null) {
+      throw recentlyFailed(key, failedUntil);
+    }
+
+    try {
+      var value = delegate.computeIfAbsent(key, supplier);
+      failures.remove(key);
+      return value;
+    } catch (RuntimeException e) {
+      remember(key);
+      throw e;
+    }
+  }
+
+  @Override
+  public CompletableFuture<T> computeIfAbsentAsync(
+      String key, Function<String, CompletableFuture<T>> loader) {
+    var failedUntil = recentFailure(key);
+    if (failedUntil != null) {
+      return CompletableFuture.failedFuture(recentlyFailed(key, failedUntil));
+    }
+
+    return delegate
+        .computeIfAbsentAsync(key, loader)
+        .whenComplete(
+            (value, e) -> {
+              if (e != null) {
+                remember(key);
+              } else {
+                failures.remove(key);
+              }
+            });
+  }
+
+  @Override
+  public T refresh(String key, Function<String, T> supplier) {
+    var value = delegate.refresh(key, supplier);
+    failures.remove(key);
+    return value;
+  }
+
+  @Override
+  public void put(String key, T value) {
+    delegate.put(key, value);
+    failures.remove(key);
+  }
+
+  @Override
+  public Map<String, T> entries() {
+    return delegate.entries();
+  }
+
+  private Instant recentFailure(String key) {
+    var failedUntil = failures.get(key);
+    if (failedUntil == null) {
+      return null;
+    }
+    if (!clock.instant().isBefore(failedUntil)) {
+      failures.remove(key, failedUntil);
+      return null;
+    }
+    rejected.increment();
+    return failedUntil;
+  }
+
+  private void remember(String key) {
+    var now = clock.instant();
+    if (failures.size() >= MAX_FAILURES) {
+      failures.values().removeIf(until -> !now.isBefore(until));
+      if (failures.size() >= MAX_FAILURES) {
+        return;
+      }
+    }
+    failures.put(key, now.plus(ttl));
+  }
+
+  // a fresh exception each time, one instance must not be thrown in many threads at once
+  private FederationException recentlyFailed(String key, Instant failedUntil) {
+    return new FederationException(
+        "loading '%s' failed recently, not trying again before %s".formatted(key, failedUntil),
+        Reason.UNKNOWN);
+  }
+}
@@ -0,0 +1,26 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import java.time.Duration;
+
+/** The service is at capacity and turns away new logins, they may be retried after a while. */
+public class OverloadedException extends RuntimeException implements LocalizedException {
+
+  private final Duration retryAfter;
+
+  private final transient Message localizedMessage;
+
+  public OverloadedException(Message localizedMessage, Duration retryAfter) {
+    super(localizedMessage.messageKey());
+    this.retryAfter = retryAfter;
+    this.localizedMessage = localizedMessage;
+  }
+
+  public Duration retryAfter() {
+    return retryAfter;
+  }
+
+  @Override
+  public Message localizedMessage() {
+    return localizedMessage;
+  }
+}
@@ -1,7 +1,5 @@
 package com.oviva.ehealthid.relyingparty.svc;
 
-import com.oviva.ehealthid.auth.steps.SelectSectoralIdpStep;
-import com.oviva.ehealthid.auth.steps.TrustedSectoralIdpStep;
 import com.oviva.ehealthid.relyingparty.util.IdGenerator;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.net.URI;
@@ -9,12 +7,27 @@ import java.time.Instant;
 
 public interface SessionRepo {
 
-  void save(@NonNull Session session);
+  /**
+   * @return the ID to load the session with, handed to the browser as its session cookie; saving a
+   *     session again may change it
+   */
+  @NonNull
+  String save(@NonNull Session session);
 
   Session load(@NonNull String sessionId);
 
   Session remove(@NonNull String sessionId);
 
+  /**
+   * The state of a login, just enough to rebuild the steps of the {@link
+   * com.oviva.ehealthid.auth.AuthenticationFlow}. Holds no clients, keys or federation artifacts,
+   * sessions stay small and can be stored outside the heap.
+   *
+   * @param codeVerifier the PKCE code verifier, the code challenge is derived from it
+   * @param selectedIdp the issuer of the sectoral IdP the user chose, {@code null} until chosen
+   * @param idpRedirectUri the authorization URL at the chosen sectoral IdP, {@code null} until
+   *     chosen
+   */
   record Session(
       String id,
       Instant createdAt,
@@ -23,8 +36,8 @@ public interface SessionRepo {
       URI redirectUri,
       String clientId,
       String codeVerifier,
-      SelectSectoralIdpStep selectSectoralIdpStep,
-      TrustedSectoralIdpStep trustedSectoralIdpStep) {
+      String selectedIdp,
+      URI idpRedirectUri) {
 
     public static Builder create() {
       return new Builder();
@@ -39,8 +52,8 @@ public interface SessionRepo {
           .redirectUri(redirectUri)
           .clientId(clientId)
           .codeVerifier(codeVerifier)
-          .selectSectoralIdpStep(selectSectoralIdpStep)
-          .trustedSectoralIdpStep(trustedSectoralIdpStep);
+          .selectedIdp(selectedIdp)
+          .idpRedirectUri(idpRedirectUri);
     }
 
     public static final class Builder {
@@ -52,8 +65,8 @@ public interface SessionRepo {
       private URI redirectUri;
       private String clientId;
       private String codeVerifier;
-      private SelectSectoralIdpStep selectSectoralIdpStep;
-      private TrustedSectoralIdpStep trustedSectoralIdpStep;
+      private String selectedIdp;
+      private URI idpRedirectUri;
 
       private Builder() {}
 
@@ -92,13 +105,13 @@ public interface SessionRepo {
         return this;
       }
 
-      public Builder selectSectoralIdpStep(SelectSectoralIdpStep selectSectoralIdpStep) {
-        this.selectSectoralIdpStep = selectSectoralIdpStep;
+      public Builder selectedIdp(String selectedIdp) {
+        this.selectedIdp = selectedIdp;
         return this;
       }
 
-      public Builder trustedSectoralIdpStep(TrustedSectoralIdpStep trustedSectoralIdpStep) {
-        this.trustedSectoralIdpStep = trustedSectoralIdpStep;
+      public Builder idpRedirectUri(URI idpRedirectUri) {
+        this.idpRedirectUri = idpRedirectUri;
         return this;
       }
 
@@ -119,8 +132,8 @@ public interface SessionRepo {
             redirectUri,
             clientId,
             codeVerifier,
-            selectSectoralIdpStep,
-            trustedSectoralIdpStep);
+            selectedIdp,
+            idpRedirectUri);
       }
     }
   }
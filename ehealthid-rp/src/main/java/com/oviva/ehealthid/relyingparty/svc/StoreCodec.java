@@ -0,0 +1,253 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import com.nimbusds.jose.JWSObject;
+import com.oviva.ehealthid.auth.IdTokenJWS;
+import com.oviva.ehealthid.auth.IdTokenJWS.IdToken;
+import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
+import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
+import com.oviva.ehealthid.util.JsonCodec;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * A compact binary format for sessions and codes kept in a {@link KeyValueStore}.
+ *
+ * <p>A value starts with its type, the format version and the number of fields, followed by the
+ * fields in a fixed order. Each field is a byte string prefixed with its length plus one, a {@code
+ * 0} stands for {@code null}. Fields are only ever appended: decoding skips the fields it does not
+ * know yet and reads the ones missing from older values as {@code null}. An incompatible change
+ * bumps the version, values of any other version are rejected.
+ */
+final class StoreCodec {
+
+  private static final byte TYPE_SESSION = 'S';
+  private static final byte TYPE_CODE = 'C';
+  private static final byte VERSION = 1;
+
+  private static final int SESSION_FIELDS = 9;
+  private static final int CODE_FIELDS = 7;
+
+  // seconds and nanoseconds, instants round-trip exactly
+  private static final int INSTANT_BYTES = 12;
+
+  private StoreCodec() {}
+
+  @NonNull
+  static byte[] encodeSession(@NonNull Session session) {
+    return new Writer(TYPE_SESSION, SESSION_FIELDS)
+        .string(session.id())
+        .instant(session.createdAt())
+        .string(session.state())
+        .string(session.nonce())
+        .uri(session.redirectUri())
+        .string(session.clientId())
+        .string(session.codeVerifier())
+        .string(session.selectedIdp())
+        .uri(session.idpRedirectUri())
+        .toByteArray();
+  }
+
+  @NonNull
+  static Session decodeSession(@NonNull byte[] value) {
+    var r = new Reader(value, TYPE_SESSION);
+    return new Session(
+        r.string(),
+        r.instant(),
+        r.string(),
+        r.string(),
+        r.uri(),
+        r.string(),
+        r.string(),
+        r.string(),
+        r.uri());
+  }
+
+  @NonNull
+  static byte[] encodeCode(@NonNull Code code) {
+    var idToken = code.federatedIdToken();
+    return new Writer(TYPE_CODE, CODE_FIELDS)
+        .string(code.code())
+        .instant(code.issuedAt())
+        .instant(code.expiresAt())
+        .uri(code.redirectUri())
+        .string(code.nonce())
+        .string(code.clientId())
+        .string(idToken != null ? idToken.jws().serialize() : null)
+        .toByteArray();
+  }
+
+  @NonNull
+  static Code decodeCode(@NonNull byte[] value) {
+    var r = new Reader(value, TYPE_CODE);
+    return new Code(
+        r.string(), r.instant(), r.instant(), r.uri(), r.string(), r.string(), idToken(r.string()));
+  }
+
+  private static IdTokenJWS idToken(String serialized) {
+    if (serialized == null) {
+      return null;
+    }
+    try {
+      // verified before the code was issued, the store is trusted just like process memory
+      var jws = JWSObject.parse(serialized);
+      var body = JsonCodec.readValue(jws.getPayload().toBytes(), IdToken.class);
+      return new IdTokenJWS(jws, body);
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("stored ID token is malformed", e);
+    }
+  }
+
+  private static final class Writer {
+
+    private byte[] buf = new byte[256];
+    private int pos;
+
+    Writer(byte type, int fields) {
+      buf[pos++] = type;
+      buf[pos++] = VERSION;
+      varInt(fields);
+    }
+
+    Writer string(String s) {
+      if (s == null) {
+        varInt(0);
+        return this;
+      }
+      var bytes = s.getBytes(StandardCharsets.UTF_8);
+      varInt(bytes.length + 1);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buf, pos, bytes.length);
+      pos += bytes.length;
+      return this;
+    }
+
+    Writer uri(URI uri) {
+      return string(uri != null ? uri.toString() : null);
+    }
+
+    Writer instant(Instant instant) {
+      if (instant == null) {
+        varInt(0);
+        return this;
+      }
+      varInt(INSTANT_BYTES + 1);
+      ensureCapacity(INSTANT_BYTES);
+      var seconds = instant.getEpochSecond();
+      for (var shift = 56; shift >= 0; shift -= 8) {
+        buf[pos++] = (byte) (seconds >>> shift);
+      }
+      var nanos = instant.getNano();
+      for (var shift = 24; shift >= 0; shift -= 8) {
+        buf[pos++] = (byte) (nanos >>> shift);
+      }
+      return this;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buf, pos);
+    }
+
+    // unsigned LEB128, lengths below 128 take a single byte
+    private void varInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[pos++] = (byte) value;
+    }
+
+    private void ensureCapacity(int n) {
+      if (pos + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+      }
+    }
+  }
+
+  private static final class Reader {
+
+    private final byte[] buf;
+    private int pos;
+    private int fields;
+
+    Reader(byte[] buf, byte type) {
+      this.buf = buf;
+      if (buf.length < 2 || buf[0] != type) {
+        throw new IllegalArgumentException("not a stored '%c'".formatted((char) type));
+      }
+      if (buf[1] != VERSION) {
+        throw new IllegalArgumentException("unsupported version %d".formatted(buf[1]));
+      }
+      pos = 2;
+      fields = varInt();
+    }
+
+    String string() {
+      var length = field();
+      if (length < 0) {
+        return null;
+      }
+      var s = new String(buf, pos, length, StandardCharsets.UTF_8);
+      pos += length;
+      return s;
+    }
+
+    URI uri() {
+      var s = string();
+      return s != null ? URI.create(s) : null;
+    }
+
+    Instant instant() {
+      var length = field();
+      if (length < 0) {
+        return null;
+      }
+      if (length != INSTANT_BYTES) {
+        throw new IllegalArgumentException("malformed instant");
+      }
+      var seconds = 0L;
+      for (var i = 0; i < 8; i++) {
+        seconds = (seconds << 8) | (buf[pos++] & 0xFF);
+      }
+      var nanos = 0;
+      for (var i = 0; i < 4; i++) {
+        nanos = (nanos << 8) | (buf[pos++] & 0xFF);
+      }
+      return Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    /**
+     * @return the length of the next field, {@code -1} if it is null or missing
+     */
+    private int field() {
+      if (fields == 0) {
+        return -1;
+      }
+      fields--;
+      var length = varInt() - 1;
+      if (length > buf.length - pos) {
+        throw new IllegalArgumentException("truncated value");
+      }
+      return length;
+    }
+
+    private int varInt() {
+      var value = 0;
+      for (var shift = 0; shift < 32; shift += 7) {
+        if (pos >= buf.length) {
+          throw new IllegalArgumentException("truncated value");
+        }
+        var b = buf[pos++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("malformed length");
+    }
+  }
+}
@@ -2,6 +2,7 @@ package com.oviva.ehealthid.relyingparty.testenv;
 
 import com.oviva.ehealthid.fedclient.api.HttpClient;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,20 +29,29 @@ public class GematikHeaderDecoratorHttpClient implements HttpClient {
 
   @Override
   public Response call(Request req) {
+    return delegate.call(decorate(req));
+  }
+
+  @Override
+  public CompletableFuture<Response> callAsync(Request req) {
+    return delegate.callAsync(decorate(req));
+  }
+
+  private Request decorate(Request req) {
 
     if (HOST_GEMATIK_IDP.matcher(req.uri().getHost()).matches()) {
       if (Environment.gematikAuthHeader() == null || Environment.gematikAuthHeader().isBlank()) {
         logger.warn(
             "missing 'GEMATIK_AUTH_HEADER' environment value against '{}'", req.uri().getHost());
-        return delegate.call(req);
+        return req;
       }
 
       var headers = new ArrayList<>(req.headers());
       headers.add(new Header("X-Authorization", Environment.gematikAuthHeader()));
 
-      req = new Request(req.uri(), req.method(), headers, req.body());
+      return new Request(req.uri(), req.method(), headers, req.body());
     }
 
-    return delegate.call(req);
+    return req;
   }
 }
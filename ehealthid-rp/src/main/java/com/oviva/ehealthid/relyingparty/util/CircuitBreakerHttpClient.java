@@ -0,0 +1,281 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.fedclient.api.HttpClient;
+import com.oviva.ehealthid.fedclient.api.HttpException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fails fast on hosts which are down instead of waiting out timeouts on every request.
+ *
+ * <p>Each host has its own circuit breaker. After a number of consecutive failures the circuit
+ * opens and requests are rejected right away. Once the circuit was open for a while, a single probe
+ * request at a time is let through, its outcome decides whether the circuit closes again.
+ *
+ * <p>A failure is an exception or a server error, i.e. a 5xx status.
+ *
+ * <p>At most {@link #MAX_HOSTS} circuits are kept, beyond that closed circuits are dropped along
+ * with their meters.
+ */
+public class CircuitBreakerHttpClient implements HttpClient {
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerHttpClient.class);
+
+  static final int MAX_HOSTS = 256;
+
+  private final HttpClient delegate;
+  private final String name;
+  private final Policy policy;
+  private final Clock clock;
+  private final MeterRegistry meterRegistry;
+
+  private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+  public CircuitBreakerHttpClient(
+      HttpClient delegate, String name, Policy policy, Clock clock, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.name = name;
+    this.policy = policy;
+    this.clock = clock;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Response call(Request req) {
+
+    var breaker = acquire(req);
+
+    try {
+      var res = delegate.call(req);
+      onResponse(breaker, res);
+      return res;
+    } catch (RuntimeException e) {
+      breaker.onFailure(clock.instant());
+      throw e;
+    }
+  }
+
+  @Override
+  public CompletableFuture<Response> callAsync(Request req) {
+
+    Breaker breaker;
+    try {
+      breaker = acquire(req);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    CompletableFuture<Response> res;
+    try {
+      res = delegate.callAsync(req);
+    } catch (RuntimeException e) {
+      breaker.onFailure(clock.instant());
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return res.whenComplete(
+        (r, e) -> {
+          if (e != null) {
+            breaker.onFailure(clock.instant());
+          } else {
+            onResponse(breaker, r);
+          }
+        });
+  }
+
+  private Breaker acquire(Request req) {
+    var breaker = breakerFor(hostOf(req.uri()));
+    if (!breaker.tryAcquire(clock.instant())) {
+      breaker.rejected().increment();
+      throw new CircuitOpenException(req.method(), req.uri());
+    }
+    return breaker;
+  }
+
+  private Breaker breakerFor(String host) {
+    var breaker = breakers.get(host);
+    if (breaker != null) {
+      return breaker;
+    }
+
+    // creating and evicting under one lock, an evicted host must not end up with the meters of its
+    // successor removed
+    synchronized (breakers) {
+      breaker = breakers.get(host);
+      if (breaker != null) {
+        return breaker;
+      }
+      if (breakers.size() >= MAX_HOSTS) {
+        evict();
+      }
+      breaker = newBreaker(host);
+      breakers.put(host, breaker);
+      return breaker;
+    }
+  }
+
+  private void evict() {
+
+    // closed circuits hold nothing worth keeping
+    breakers.values().stream()
+        .filter(b -> b.state() == State.CLOSED)
+        .toList()
+        .forEach(this::remove);
+
+    if (breakers.size() < MAX_HOSTS) {
+      return;
+    }
+
+    // every circuit is in trouble, start over rather than grow without bounds
+    logger.atWarn().log("dropping all {} circuits of '{}'", breakers.size(), name);
+    List.copyOf(breakers.values()).forEach(this::remove);
+  }
+
+  private void remove(Breaker breaker) {
+    breakers.remove(breaker.host());
+    meterRegistry.remove(breaker.rejected());
+    meterRegistry.remove(breaker.gauge());
+  }
+
+  private void onResponse(Breaker breaker, Response res) {
+    if (res.status() < 500) {
+      breaker.onSuccess();
+      return;
+    }
+    breaker.onFailure(clock.instant());
+  }
+
+  private String hostOf(URI uri) {
+    if (uri.getPort() < 0) {
+      return uri.getHost();
+    }
+    return uri.getHost() + ":" + uri.getPort();
+  }
+
+  private Breaker newBreaker(String host) {
+    var rejected =
+        Counter.builder("http.client.circuit.rejected")
+            .description("requests rejected by an open circuit")
+            .tag("client", name)
+            .tag("host", host)
+            .register(meterRegistry);
+    var breaker = new Breaker(host, rejected);
+
+    breaker.gauge =
+        Gauge.builder("http.client.circuit.state", breaker, b -> b.state().ordinal())
+            .description("circuit state, 0=closed, 1=half-open, 2=open")
+            .tag("client", name)
+            .tag("host", host)
+            .register(meterRegistry);
+
+    return breaker;
+  }
+
+  /** a request rejected by an open circuit, retrying it right away is futile */
+  public static class CircuitOpenException extends HttpException {
+
+    CircuitOpenException(String method, URI uri) {
+      super(method, uri, "circuit open", null);
+    }
+  }
+
+  public enum State {
+    CLOSED,
+    HALF_OPEN,
+    OPEN
+  }
+
+  /**
+   * @param failureThreshold the number of consecutive failures after which the circuit of a host
+   *     opens
+   * @param openDuration how long a circuit stays open before a probe is let through
+   */
+  public record Policy(int failureThreshold, Duration openDuration) {}
+
+  private class Breaker {
+
+    private final String host;
+    private final Counter rejected;
+    private Gauge gauge;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openUntil;
+    private boolean probing;
+
+    Breaker(String host, Counter rejected) {
+      this.host = host;
+      this.rejected = rejected;
+    }
+
+    synchronized State state() {
+      return state;
+    }
+
+    String host() {
+      return host;
+    }
+
+    Counter rejected() {
+      return rejected;
+    }
+
+    Gauge gauge() {
+      return gauge;
+    }
+
+    synchronized boolean tryAcquire(Instant now) {
+      return switch (state) {
+        case CLOSED -> true;
+        case OPEN -> {
+          if (now.isBefore(openUntil)) {
+            yield false;
+          }
+          state = State.HALF_OPEN;
+          probing = true;
+          yield true;
+        }
+        case HALF_OPEN -> {
+          // only ever one probe at a time
+          if (probing) {
+            yield false;
+          }
+          probing = true;
+          yield true;
+        }
+      };
+    }
+
+    synchronized void onSuccess() {
+      if (state != State.CLOSED) {
+        logger.atInfo().log("circuit of '{}' for host '{}' closed", name, host);
+      }
+      state = State.CLOSED;
+      consecutiveFailures = 0;
+      probing = false;
+    }
+
+    synchronized void onFailure(Instant now) {
+      probing = false;
+      consecutiveFailures++;
+      if (state == State.HALF_OPEN || consecutiveFailures >= policy.failureThreshold()) {
+        if (state != State.OPEN) {
+          logger.atWarn().log("circuit of '{}' for host '{}' opened", name, host);
+        }
+        state = State.OPEN;
+        openUntil = now.plus(policy.openDuration());
+      }
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.fedclient.api.OpenIdClient;
+import com.oviva.ehealthid.fedclient.api.OperationListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the pooled connections to the OpenID endpoints of the most-used sectoral IdPs open, a
+ * login's token exchange minutes after its PAR then does not pay for another TLS handshake with
+ * client authentication.
+ *
+ * <p>Observes the PAR and token requests of the {@link OpenIdClient}, their endpoints are only ever
+ * resolved from trusted entity statements. Each {@link #warmUp()} picks the most-used endpoints of
+ * the recent runs and sends a {@code HEAD} request to each over the given client, which keeps or
+ * re-opens its pooled connection. The answer is irrelevant, usually a {@code 405}. Usage decays
+ * with every run, an endpoint used once stays warm for about {@code 20} runs.
+ *
+ * <p>The connect time saved is estimated from the latency of the first request to an endpoint,
+ * which has to connect, minus the latency of the following ones reusing the connection.
+ */
+public class ConnectionKeepWarm implements OperationListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionKeepWarm.class);
+
+  private static final Set<String> OPERATIONS = Set.of("pushed_authorization_request", "token");
+
+  // far more than there are sectoral IdPs
+  private static final int MAX_ENDPOINTS = 1000;
+
+  private static final double USAGE_DECAY = 0.9;
+  private static final double MIN_USAGE = 0.1;
+
+  private final HttpClient httpClient;
+  private final int maxHosts;
+  private final Duration timeout;
+
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  private final Counter requests;
+  private final Counter failures;
+  private final Counter saved;
+
+  /**
+   * @param httpClient the client whose connections to keep open, i.e. the one authenticating with
+   *     mTLS
+   * @param maxHosts how many endpoints to keep warm
+   * @param timeout the timeout of each keep-warm request
+   */
+  public ConnectionKeepWarm(
+      HttpClient httpClient,
+      String name,
+      int maxHosts,
+      Duration timeout,
+      MeterRegistry meterRegistry) {
+    this.httpClient = httpClient;
+    this.maxHosts = maxHosts;
+    this.timeout = timeout;
+
+    this.requests =
+        Counter.builder("http.client.keepwarm.requests")
+            .description("requests sent to keep connections to hot endpoints open")
+            .tag("client", name)
+            .register(meterRegistry);
+    this.failures =
+        Counter.builder("http.client.keepwarm.failures")
+            .description("keep-warm requests without a response")
+            .tag("client", name)
+            .register(meterRegistry);
+    this.saved =
+        Counter.builder("http.client.keepwarm.saved")
+            .description("estimated connect time saved by requests to warm endpoints")
+            .baseUnit("seconds")
+            .tag("client", name)
+            .register(meterRegistry);
+
+    Gauge.builder("http.client.keepwarm.endpoints", endpoints, ConnectionKeepWarm::countWarm)
+        .description("endpoints with a warm connection")
+        .tag("client", name)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void onOperation(
+      String operation, URI uri, int status, Throwable failure, Duration duration) {
+    if (!OPERATIONS.contains(operation) || uri.getHost() == null) {
+      return;
+    }
+
+    if (endpoints.size() >= MAX_ENDPOINTS) {
+      // popular endpoints are back after a few logins anyway, simply start over
+      endpoints.clear();
+    }
+
+    // connections are pooled per origin, PAR and token endpoints usually share one
+    var endpoint = endpoints.computeIfAbsent(originOf(uri), k -> new Endpoint());
+    var savedNanos = endpoint.used(uri);
+    if (savedNanos > 0) {
+      saved.increment(savedNanos / 1e9);
+    }
+  }
+
+  /** keeps the connections to the most-used endpoints open, to be called regularly */
+  public void warmUp() {
+
+    var hot = new HashSet<Endpoint>();
+    endpoints.values().stream()
+        .filter(e -> e.usage() >= MIN_USAGE)
+        .sorted(Comparator.comparingDouble(Endpoint::usage).reversed())
+        .limit(maxHosts)
+        .forEach(hot::add);
+
+    for (var endpoint : endpoints.values()) {
+      if (hot.contains(endpoint)) {
+        ping(endpoint);
+      } else {
+        endpoint.cooledDown();
+      }
+      endpoint.decay();
+    }
+  }
+
+  private void ping(Endpoint endpoint) {
+    var uri = endpoint.uri();
+    var req =
+        HttpRequest.newBuilder(uri)
+            .method("HEAD", BodyPublishers.noBody())
+            .timeout(timeout)
+            .build();
+
+    requests.increment();
+    var start = System.nanoTime();
+    httpClient
+        .sendAsync(req, BodyHandlers.discarding())
+        .whenComplete(
+            (res, e) -> {
+              if (e != null) {
+                failures.increment();
+                endpoint.cooledDown();
+                logger.atDebug().setCause(e).log("failed to keep '{}' warm", uri);
+                return;
+              }
+              endpoint.pinged(System.nanoTime() - start);
+            });
+  }
+
+  private static double countWarm(Map<String, Endpoint> endpoints) {
+    return endpoints.values().stream().filter(Endpoint::isWarm).count();
+  }
+
+  private static String originOf(URI uri) {
+    return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+  }
+
+  private static class Endpoint {
+
+    private URI uri;
+    private double usage;
+    private boolean warm;
+    private long coldNanos;
+    private long warmNanos;
+
+    /**
+     * @return the estimated connect time saved by a warm connection, {@code 0} if unknown
+     */
+    synchronized long used(URI uri) {
+      this.uri = uri;
+      usage++;
+      if (!warm || warmNanos == 0) {
+        return 0;
+      }
+      return Math.max(0, coldNanos - warmNanos);
+    }
+
+    synchronized URI uri() {
+      return uri;
+    }
+
+    synchronized double usage() {
+      return usage;
+    }
+
+    synchronized boolean isWarm() {
+      return warm;
+    }
+
+    synchronized void decay() {
+      // recent usage weighs more
+      usage *= USAGE_DECAY;
+    }
+
+    synchronized void pinged(long nanos) {
+      if (!warm) {
+        // the first request after cooling down had to connect
+        warm = true;
+        coldNanos = nanos;
+        return;
+      }
+      warmNanos = warmNanos == 0 ? nanos : (warmNanos * 3 + nanos) / 4;
+    }
+
+    synchronized void cooledDown() {
+      warm = false;
+      warmNanos = 0;
+    }
+  }
+}
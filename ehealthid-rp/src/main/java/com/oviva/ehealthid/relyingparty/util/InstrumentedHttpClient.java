@@ -0,0 +1,167 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.PushPromiseHandler;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Records the in-flight requests and the latency per host and status class of a {@link HttpClient},
+ * and applies a default timeout to requests without one.
+ *
+ * <p>The latency distribution is up to {@link OperationMetrics}, which sees the same requests along
+ * with the operation they belong to, only totals are recorded here.
+ */
+public class InstrumentedHttpClient extends HttpClient {
+
+  private final HttpClient delegate;
+  private final String name;
+  private final Duration requestTimeout;
+  private final MeterRegistry meterRegistry;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public InstrumentedHttpClient(
+      HttpClient delegate, String name, Duration requestTimeout, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.name = name;
+    this.requestTimeout = requestTimeout;
+    this.meterRegistry = meterRegistry;
+
+    Gauge.builder("http.client.requests.active", inFlight, AtomicInteger::get)
+        .description("outbound requests in flight")
+        .tag("client", name)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest req, BodyHandler<T> responseBodyHandler)
+      throws IOException, InterruptedException {
+
+    var request = withDefaultTimeout(req);
+
+    inFlight.incrementAndGet();
+    var start = System.nanoTime();
+    try {
+      var res = delegate.send(request, responseBodyHandler);
+      record(request, res, start);
+      return res;
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      record(request, null, start);
+      throw e;
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      HttpRequest req, BodyHandler<T> responseBodyHandler) {
+    return sendAsync(req, responseBodyHandler, null);
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      HttpRequest req,
+      BodyHandler<T> responseBodyHandler,
+      PushPromiseHandler<T> pushPromiseHandler) {
+
+    var request = withDefaultTimeout(req);
+
+    inFlight.incrementAndGet();
+    var start = System.nanoTime();
+    try {
+      return delegate
+          .sendAsync(request, responseBodyHandler, pushPromiseHandler)
+          .whenComplete(
+              (res, e) -> {
+                inFlight.decrementAndGet();
+                record(request, res, start);
+              });
+    } catch (RuntimeException e) {
+      inFlight.decrementAndGet();
+      record(request, null, start);
+      throw e;
+    }
+  }
+
+  private HttpRequest withDefaultTimeout(HttpRequest req) {
+    if (requestTimeout == null || req.timeout().isPresent()) {
+      return req;
+    }
+    return HttpRequest.newBuilder(req, (n, v) -> true).timeout(requestTimeout).build();
+  }
+
+  private void record(HttpRequest req, HttpResponse<?> res, long start) {
+    Timer.builder("http.client.requests")
+        .description("latency of outbound requests, including connecting")
+        .tag("client", name)
+        .tag("host", String.valueOf(req.uri().getHost()))
+        .tag("version", res != null ? res.version().name() : "none")
+        .tag("status", OperationMetrics.statusClass(res != null ? res.statusCode() : 0))
+        .tag("outcome", res != null ? "success" : "error")
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public Optional<CookieHandler> cookieHandler() {
+    return delegate.cookieHandler();
+  }
+
+  @Override
+  public Optional<Duration> connectTimeout() {
+    return delegate.connectTimeout();
+  }
+
+  @Override
+  public Redirect followRedirects() {
+    return delegate.followRedirects();
+  }
+
+  @Override
+  public Optional<ProxySelector> proxy() {
+    return delegate.proxy();
+  }
+
+  @Override
+  public SSLContext sslContext() {
+    return delegate.sslContext();
+  }
+
+  @Override
+  public SSLParameters sslParameters() {
+    return delegate.sslParameters();
+  }
+
+  @Override
+  public Optional<Authenticator> authenticator() {
+    return delegate.authenticator();
+  }
+
+  @Override
+  public Version version() {
+    return delegate.version();
+  }
+
+  @Override
+  public Optional<Executor> executor() {
+    return delegate.executor();
+  }
+}
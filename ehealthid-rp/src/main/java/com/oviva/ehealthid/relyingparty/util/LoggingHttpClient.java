@@ -2,6 +2,7 @@ package com.oviva.ehealthid.relyingparty.util;
 
 import com.oviva.ehealthid.fedclient.api.HttpClient;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,34 @@ public class LoggingHttpClient implements HttpClient {
       return delegate.call(req);
     }
 
+    logRequest(req);
+
+    var res = delegate.call(req);
+
+    logResponse(req, res);
+
+    return res;
+  }
+
+  @Override
+  public CompletableFuture<Response> callAsync(Request req) {
+
+    if (!logger.isDebugEnabled()) {
+      return delegate.callAsync(req);
+    }
+
+    logRequest(req);
+
+    return delegate
+        .callAsync(req)
+        .thenApply(
+            res -> {
+              logResponse(req, res);
+              return res;
+            });
+  }
+
+  private void logRequest(Request req) {
     logger
         .atDebug()
         .addKeyValue("url", () -> req.uri().toString())
@@ -35,9 +64,9 @@ public class LoggingHttpClient implements HttpClient {
         .addKeyValue(
             "body", () -> req.body() != null ? new String(req.body(), StandardCharsets.UTF_8) : "")
         .log("request: %s %s".formatted(req.method(), req.uri()));
+  }
 
-    var res = delegate.call(req);
-
+  private void logResponse(Request req, Response res) {
     logger
         .atDebug()
         .addKeyValue("url", () -> req.uri().toString())
@@ -52,7 +81,5 @@ public class LoggingHttpClient implements HttpClient {
         .addKeyValue(
             "body", () -> res.body() != null ? new String(res.body(), StandardCharsets.UTF_8) : "")
         .log("response: %s %s %d".formatted(req.method(), req.uri(), res.status()));
-
-    return res;
   }
 }
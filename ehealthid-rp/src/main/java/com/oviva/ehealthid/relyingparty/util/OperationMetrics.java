@@ -0,0 +1,57 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.fedclient.api.OperationListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Records the latency and outcome of federation and OpenID operations, by operation, host and
+ * status class.
+ *
+ * <p>IdPs come and go with the federation and each host adds another set of series. Rather than a
+ * full percentile histogram per host only a handful of fixed latency buckets are published.
+ */
+public class OperationMetrics implements OperationListener {
+
+  private static final Duration[] LATENCY_BUCKETS = {
+    Duration.ofMillis(100),
+    Duration.ofMillis(250),
+    Duration.ofMillis(500),
+    Duration.ofSeconds(1),
+    Duration.ofSeconds(2),
+    Duration.ofSeconds(5)
+  };
+
+  private final String name;
+  private final MeterRegistry meterRegistry;
+
+  public OperationMetrics(String name, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void onOperation(
+      String operation, URI uri, int status, Throwable failure, Duration duration) {
+    Timer.builder("ehealthid.client.operations")
+        .description("latency of federation and OpenID operations, including parsing the response")
+        .tag("client", name)
+        .tag("operation", operation)
+        .tag("host", String.valueOf(uri.getHost()))
+        .tag("status", statusClass(status))
+        .tag("outcome", failure == null ? "success" : "error")
+        .serviceLevelObjectives(LATENCY_BUCKETS)
+        .register(meterRegistry)
+        .record(duration);
+  }
+
+  /** e.g. {@code 2xx} or {@code none} without a response, keeps the cardinality of tags low */
+  static String statusClass(int status) {
+    if (status < 100 || status > 599) {
+      return "none";
+    }
+    return (status / 100) + "xx";
+  }
+}
@@ -0,0 +1,127 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.relyingparty.ConfigReader.HttpClientConfig;
+import com.oviva.ehealthid.util.DelegatingSslContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.http.HttpClient;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Builds and shares the outbound {@link HttpClient}s, one per target and TLS context.
+ *
+ * <p>Each target is configured separately, with its own executor, preferred HTTP version and
+ * timeouts. Every client publishes the metrics of {@link InstrumentedHttpClient} as well as the
+ * number of connections it opened. The number of requests minus the number of opened connections
+ * were served by reusing a pooled connection.
+ */
+public class OutboundHttpClients implements AutoCloseable {
+
+  private final Map<Target, HttpClientConfig> config;
+  private final MeterRegistry meterRegistry;
+
+  private final Map<Key, HttpClient> clients = new ConcurrentHashMap<>();
+  private final List<ExecutorService> executors = new ArrayList<>();
+
+  public OutboundHttpClients(Map<Target, HttpClientConfig> config, MeterRegistry meterRegistry) {
+    this.config = config;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /** a client for the given target using the default TLS context */
+  public HttpClient forTarget(Target target) {
+    return forTarget(target, defaultSslContext());
+  }
+
+  /** a client for the given target, e.g. with a client certificate for mTLS */
+  public HttpClient forTarget(Target target, SSLContext sslContext) {
+    return clients.computeIfAbsent(new Key(target, sslContext), this::build);
+  }
+
+  /** the maximum size of response bodies from the given target */
+  public long maxBodyBytes(Target target) {
+    return config.get(target).maxBodyBytes();
+  }
+
+  private HttpClient build(Key key) {
+
+    var name = key.target().clientName();
+    var cfg = config.get(key.target());
+
+    var connectionsOpened =
+        Counter.builder("http.client.connections.opened")
+            .description("connections opened, i.e. TLS handshakes of outbound requests")
+            .tag("client", name)
+            .register(meterRegistry);
+
+    var builder =
+        HttpClient.newBuilder()
+            .version(cfg.version())
+            .connectTimeout(cfg.connectTimeout())
+            .sslContext(countingConnections(key.sslContext(), connectionsOpened));
+
+    if (cfg.threads() > 0) {
+      builder.executor(newExecutor(Executors.newFixedThreadPool(cfg.threads())));
+    } else {
+      // mostly waiting on remote hosts, a virtual thread per task
+      var threads = Thread.ofVirtual().name("http-" + name + "-", 0).factory();
+      builder.executor(newExecutor(Executors.newThreadPerTaskExecutor(threads)));
+    }
+
+    return new InstrumentedHttpClient(builder.build(), name, cfg.requestTimeout(), meterRegistry);
+  }
+
+  private synchronized ExecutorService newExecutor(ExecutorService executor) {
+    executors.add(executor);
+    return executor;
+  }
+
+  private SSLContext defaultSslContext() {
+    try {
+      return SSLContext.getDefault();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("no default TLS context", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    executors.forEach(ExecutorService::shutdownNow);
+  }
+
+  public enum Target {
+    /** the federation master and the entity configurations of sectoral IdPs */
+    FEDERATION,
+    /** the OpenID endpoints of sectoral IdPs, authenticated with mTLS */
+    OPENID,
+    /** the discovery document and JWKS of our own identity provider */
+    DISCOVERY;
+
+    public String clientName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  private record Key(Target target, SSLContext sslContext) {}
+
+  /**
+   * Counts the TLS engines created by the {@link HttpClient}, it creates exactly one for each new
+   * connection.
+   */
+  private static SSLContext countingConnections(SSLContext context, Counter connectionsOpened) {
+    return DelegatingSslContext.withEngineHook(
+        context,
+        engine -> {
+          connectionsOpened.increment();
+          return engine;
+        });
+  }
+}
@@ -0,0 +1,349 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.relyingparty.svc.KeyValueStore;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A {@link KeyValueStore} speaking the Redis serialization protocol over TCP, e.g. to Redis or
+ * Valkey. Atomic removal relies on {@code GETDEL}, i.e. Redis 6.2 or later.
+ *
+ * <p>Configured by a URI like {@code redis://[[user]:password@]host[:port][/database]}, {@code
+ * rediss://} for TLS. Connections are opened on demand and pooled, each serves one command at a
+ * time.
+ *
+ * <p>A command is never repeated once it might have reached the server, e.g. a repeated {@code
+ * GETDEL} would report a value which was in fact removed by the first attempt as missing. Pooled
+ * connections are checked with a {@code PING} instead before they are used.
+ */
+public class RedisKeyValueStore implements KeyValueStore, AutoCloseable {
+
+  private static final int DEFAULT_PORT = 6379;
+
+  // enough for the concurrency of a single instance, further commands wait for a connection
+  static final int MAX_CONNECTIONS = 32;
+  private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private final String host;
+  private final int port;
+  private final boolean tls;
+  private final String user;
+  private final String password;
+  private final int database;
+  private final int timeoutMillis;
+
+  private final BlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+  private final AtomicInteger open = new AtomicInteger();
+  private volatile boolean closed;
+
+  /**
+   * @param uri where to connect to, e.g. {@code redis://:secret@redis.example.com:6379/0}
+   * @param timeout the timeout to connect and for each command
+   */
+  public RedisKeyValueStore(@NonNull URI uri, @NonNull Duration timeout) {
+    if (!"redis".equals(uri.getScheme()) && !"rediss".equals(uri.getScheme())) {
+      throw new IllegalArgumentException("unsupported store URI '%s'".formatted(uri));
+    }
+    if (uri.getHost() == null) {
+      throw new IllegalArgumentException("store URI '%s' has no host".formatted(uri));
+    }
+
+    this.host = uri.getHost();
+    this.port = uri.getPort() > 0 ? uri.getPort() : DEFAULT_PORT;
+    this.tls = "rediss".equals(uri.getScheme());
+    this.timeoutMillis = (int) timeout.toMillis();
+
+    var userInfo = uri.getUserInfo();
+    var separator = userInfo == null ? -1 : userInfo.indexOf(':');
+    if (userInfo == null) {
+      this.user = null;
+      this.password = null;
+    } else if (separator < 0) {
+      this.user = null;
+      this.password = userInfo;
+    } else {
+      this.user = separator == 0 ? null : userInfo.substring(0, separator);
+      this.password = userInfo.substring(separator + 1);
+    }
+
+    var path = uri.getPath();
+    this.database = path == null || path.length() <= 1 ? 0 : Integer.parseInt(path.substring(1));
+  }
+
+  @Override
+  public void set(@NonNull String key, @NonNull byte[] value, @NonNull Duration ttl) {
+    // a zero expiry is rejected by the server rather than expiring the value right away
+    var millis = Math.max(1, ttl.toMillis());
+    execute(bytes("SET"), bytes(key), value, bytes("PX"), bytes(Long.toString(millis)));
+  }
+
+  @Nullable
+  @Override
+  public byte[] get(@NonNull String key) {
+    return (byte[]) execute(bytes("GET"), bytes(key));
+  }
+
+  @Nullable
+  @Override
+  public byte[] remove(@NonNull String key) {
+    return (byte[]) execute(bytes("GETDEL"), bytes(key));
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    Connection connection;
+    while ((connection = idle.pollFirst()) != null) {
+      connection.close();
+    }
+  }
+
+  private Object execute(byte[]... command) {
+    Connection connection;
+    try {
+      connection = acquire();
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to connect to %s:%d".formatted(host, port), e);
+    }
+
+    try {
+      var reply = connection.call(command);
+      release(connection);
+      return reply;
+    } catch (ServerError e) {
+      // the connection is still fine, only the command failed
+      release(connection);
+      throw new UncheckedIOException(e);
+    } catch (IOException e) {
+      // the command might have been executed nonetheless, it must not be repeated
+      connection.close();
+      throw new UncheckedIOException("failed to execute command at %s:%d".formatted(host, port), e);
+    }
+  }
+
+  private Connection acquire() throws IOException {
+    var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (true) {
+      var pooled = idle.pollFirst();
+      if (pooled == null) {
+        if (open.incrementAndGet() <= MAX_CONNECTIONS) {
+          return connect();
+        }
+        open.decrementAndGet();
+        pooled = awaitIdle(deadline);
+        if (pooled == null) {
+          continue;
+        }
+      }
+
+      if (pooled.isAlive()) {
+        return pooled;
+      }
+      // e.g. the server timed out the idle connection, nothing was sent on it yet
+      pooled.close();
+    }
+  }
+
+  private Connection connect() throws IOException {
+    try {
+      return new Connection();
+    } catch (IOException e) {
+      open.decrementAndGet();
+      throw e;
+    }
+  }
+
+  /** waits a little for an idle connection, a closed one makes room for a new one meanwhile */
+  @Nullable
+  private Connection awaitIdle(long deadline) throws IOException {
+    var remaining = deadline - System.nanoTime();
+    if (remaining <= 0) {
+      throw new SocketTimeoutException(
+          "all %d connections to %s:%d busy".formatted(MAX_CONNECTIONS, host, port));
+    }
+    try {
+      return idle.pollFirst(Math.min(remaining, IDLE_POLL_NANOS), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a connection");
+    }
+  }
+
+  private void release(Connection connection) {
+    if (closed) {
+      connection.close();
+      return;
+    }
+    idle.offerFirst(connection);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** an error reply, e.g. {@code -ERR unknown command} */
+  private static class ServerError extends IOException {
+
+    ServerError(String message) {
+      super(message);
+    }
+  }
+
+  private final class Connection implements Closeable {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final AtomicBoolean disposed = new AtomicBoolean();
+
+    Connection() throws IOException {
+      var plain = new Socket();
+      try {
+        plain.connect(new InetSocketAddress(host, port), timeoutMillis);
+        plain.setSoTimeout(timeoutMillis);
+        plain.setTcpNoDelay(true);
+        this.socket = tls ? upgrade(plain) : plain;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+
+        if (password != null) {
+          call(
+              user != null
+                  ? new byte[][] {bytes("AUTH"), bytes(user), bytes(password)}
+                  : new byte[][] {bytes("AUTH"), bytes(password)});
+        }
+        if (database != 0) {
+          call(bytes("SELECT"), bytes(Integer.toString(database)));
+        }
+      } catch (IOException e) {
+        plain.close();
+        throw e;
+      }
+    }
+
+    boolean isAlive() {
+      try {
+        return "PONG".equals(call(bytes("PING")));
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    private Socket upgrade(Socket plain) throws IOException {
+      var factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+      var socket = (SSLSocket) factory.createSocket(plain, host, port, true);
+      var params = socket.getSSLParameters();
+      params.setEndpointIdentificationAlgorithm("HTTPS");
+      socket.setSSLParameters(params);
+      socket.startHandshake();
+      return socket;
+    }
+
+    Object call(byte[]... command) throws IOException {
+      out.write('*');
+      writeLine(Integer.toString(command.length));
+      for (var arg : command) {
+        out.write('$');
+        writeLine(Integer.toString(arg.length));
+        out.write(arg);
+        out.write(CRLF);
+      }
+      out.flush();
+      return read();
+    }
+
+    private void writeLine(String s) throws IOException {
+      out.write(s.getBytes(StandardCharsets.US_ASCII));
+      out.write(CRLF);
+    }
+
+    private Object read() throws IOException {
+      var type = in.read();
+      return switch (type) {
+        case '+' -> readLine();
+        case '-' -> throw new ServerError(readLine());
+        case ':' -> Long.parseLong(readLine());
+        case '$' -> readBulk(Integer.parseInt(readLine()));
+        case '*' -> readArray(Integer.parseInt(readLine()));
+        case -1 -> throw new EOFException("connection closed by server");
+        default -> throw new IOException("unexpected reply type '%c'".formatted((char) type));
+      };
+    }
+
+    private byte[] readBulk(int length) throws IOException {
+      if (length < 0) {
+        return null;
+      }
+      var value = in.readNBytes(length);
+      if (value.length != length || in.read() != '\r' || in.read() != '\n') {
+        throw new EOFException("truncated reply");
+      }
+      return value;
+    }
+
+    private Object readArray(int length) throws IOException {
+      if (length < 0) {
+        return null;
+      }
+      var values = new ArrayList<>(length);
+      for (var i = 0; i < length; i++) {
+        values.add(read());
+      }
+      return values;
+    }
+
+    private String readLine() throws IOException {
+      var line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != '\r') {
+        if (b == -1) {
+          throw new EOFException("truncated reply");
+        }
+        line.write(b);
+      }
+      if (in.read() != '\n') {
+        throw new IOException("malformed reply");
+      }
+      return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() {
+      if (disposed.getAndSet(true)) {
+        return;
+      }
+      open.decrementAndGet();
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // nothing left to do
+      }
+    }
+  }
+}
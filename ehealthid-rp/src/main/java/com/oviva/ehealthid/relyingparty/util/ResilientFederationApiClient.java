@@ -0,0 +1,334 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.fedclient.api.AsyncFederationApiClient;
+import com.oviva.ehealthid.fedclient.api.EntityStatementJWS;
+import com.oviva.ehealthid.fedclient.api.ExtendedJWKSetJWS;
+import com.oviva.ehealthid.fedclient.api.FederationApiClient;
+import com.oviva.ehealthid.fedclient.api.HttpException;
+import com.oviva.ehealthid.fedclient.api.IdpListJWS;
+import com.oviva.ehealthid.relyingparty.util.CircuitBreakerHttpClient.CircuitOpenException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the latency of federation fetches, each operation has its own {@link Policy}.
+ *
+ * <p>Transient failures, i.e. exceptions without a status, server errors and {@code 429}, are
+ * retried with a jittered exponential backoff. Requests rejected by an open circuit are not.
+ * Optionally, a slow fetch is hedged by a second identical one once it takes longer than a
+ * percentile of the recent successful fetches, whichever completes first wins. Both only ever start
+ * within the latency budget of the operation, once the budget is used up the fetch fails.
+ *
+ * <p>All federation fetches are idempotent GETs, this must not be used for anything else.
+ */
+public class ResilientFederationApiClient implements FederationApiClient, AsyncFederationApiClient {
+
+  // the percentile is meaningless with only a handful of samples
+  private static final int MIN_HEDGE_SAMPLES = 20;
+
+  private final AsyncFederationApiClient delegate;
+  private final Map<Operation, Policy> policies;
+  private final ScheduledExecutorService scheduler;
+
+  private final Map<Operation, Meters> meters = new EnumMap<>(Operation.class);
+
+  /**
+   * @param scheduler runs retries, hedges and budget timeouts, must not run anything which waits
+   *     for a fetch or such a fetch can never complete
+   */
+  public ResilientFederationApiClient(
+      AsyncFederationApiClient delegate,
+      Map<Operation, Policy> policies,
+      ScheduledExecutorService scheduler,
+      MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.policies = policies;
+    this.scheduler = scheduler;
+
+    for (var op : Operation.values()) {
+      meters.put(op, newMeters(op, policy(op), meterRegistry));
+    }
+  }
+
+  @NonNull
+  @Override
+  public EntityStatementJWS fetchFederationStatement(
+      URI federationFetchUrl, String issuer, String subject) {
+    return join(fetchFederationStatementAsync(federationFetchUrl, issuer, subject));
+  }
+
+  @NonNull
+  @Override
+  public IdpListJWS fetchIdpList(URI idpListUrl) {
+    return join(fetchIdpListAsync(idpListUrl));
+  }
+
+  @NonNull
+  @Override
+  public EntityStatementJWS fetchEntityConfiguration(URI entityUrl) {
+    return join(fetchEntityConfigurationAsync(entityUrl));
+  }
+
+  @NonNull
+  @Override
+  public ExtendedJWKSetJWS fetchSignedJwks(URI signedJwksUrl) {
+    return join(fetchSignedJwksAsync(signedJwksUrl));
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchFederationStatementAsync(
+      URI federationFetchUrl, String issuer, String subject) {
+    return execute(
+        Operation.FEDERATION_STATEMENT,
+        federationFetchUrl,
+        () -> delegate.fetchFederationStatementAsync(federationFetchUrl, issuer, subject));
+  }
+
+  @Override
+  public CompletableFuture<IdpListJWS> fetchIdpListAsync(URI idpListUrl) {
+    return execute(Operation.IDP_LIST, idpListUrl, () -> delegate.fetchIdpListAsync(idpListUrl));
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchEntityConfigurationAsync(URI entityUrl) {
+    return execute(
+        Operation.ENTITY_CONFIGURATION,
+        entityUrl,
+        () -> delegate.fetchEntityConfigurationAsync(entityUrl));
+  }
+
+  @Override
+  public CompletableFuture<ExtendedJWKSetJWS> fetchSignedJwksAsync(URI signedJwksUrl) {
+    return execute(
+        Operation.SIGNED_JWKS, signedJwksUrl, () -> delegate.fetchSignedJwksAsync(signedJwksUrl));
+  }
+
+  private <T> CompletableFuture<T> execute(
+      Operation op, URI uri, Supplier<CompletableFuture<T>> fetch) {
+    var execution = new Execution<>(policy(op), meters.get(op), uri, fetch);
+    execution.start();
+    return execution.result;
+  }
+
+  private Policy policy(Operation op) {
+    var policy = policies.get(op);
+    if (policy == null) {
+      throw new IllegalArgumentException("no policy for '%s'".formatted(op));
+    }
+    return policy;
+  }
+
+  private <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    if (e instanceof CompletionException && e.getCause() != null) {
+      return e.getCause();
+    }
+    return e;
+  }
+
+  private static boolean isTransient(Throwable e) {
+    var cause = unwrap(e);
+    if (cause instanceof CircuitOpenException) {
+      return false;
+    }
+    if (cause instanceof HttpException h) {
+      return h.status() == 0 || h.status() == 429 || h.status() >= 500;
+    }
+    return false;
+  }
+
+  private Meters newMeters(Operation op, Policy policy, MeterRegistry meterRegistry) {
+    var name = op.name().toLowerCase(Locale.ROOT);
+
+    var latency =
+        Timer.builder("federation.client.latency")
+            .description("latency of successful federation fetches, excluding retries and hedges")
+            .tag("operation", name);
+    if (policy.hedgePercentile() > 0) {
+      latency.publishPercentiles(policy.hedgePercentile());
+    }
+
+    return new Meters(
+        latency.register(meterRegistry),
+        Counter.builder("federation.client.retries")
+            .description("retried federation fetches")
+            .tag("operation", name)
+            .register(meterRegistry),
+        Counter.builder("federation.client.hedges")
+            .description("hedged federation fetches, i.e. a second fetch racing a slow one")
+            .tag("operation", name)
+            .register(meterRegistry),
+        Counter.builder("federation.client.budget.exceeded")
+            .description("federation fetches failed for exceeding their latency budget")
+            .tag("operation", name)
+            .register(meterRegistry));
+  }
+
+  public enum Operation {
+    FEDERATION_STATEMENT,
+    IDP_LIST,
+    ENTITY_CONFIGURATION,
+    SIGNED_JWKS
+  }
+
+  /**
+   * @param budget the maximum latency of a fetch, including all of its retries and hedges
+   * @param maxRetries how often a transiently failed fetch is retried, {@code 0} to disable
+   * @param backoff the base delay before the first retry, doubled for every further retry
+   * @param hedgePercentile the latency percentile of recent fetches after which a slow fetch is
+   *     hedged, e.g. {@code 0.95}, {@code 0} to disable
+   * @param minHedgeDelay the minimum time to wait before hedging, also used until there are enough
+   *     samples for the percentile
+   */
+  public record Policy(
+      Duration budget,
+      int maxRetries,
+      Duration backoff,
+      double hedgePercentile,
+      Duration minHedgeDelay) {}
+
+  private record Meters(Timer latency, Counter retries, Counter hedges, Counter budgetExceeded) {
+
+    long hedgeDelayNanos(Policy policy) {
+      var min = policy.minHedgeDelay().toNanos();
+      if (latency.count() < MIN_HEDGE_SAMPLES) {
+        return min;
+      }
+      for (var p : latency.takeSnapshot().percentileValues()) {
+        if (p.percentile() == policy.hedgePercentile()) {
+          return Math.max(min, (long) p.value(TimeUnit.NANOSECONDS));
+        }
+      }
+      return min;
+    }
+  }
+
+  /** a single logical fetch with all of its attempts */
+  private class Execution<T> {
+
+    private final Policy policy;
+    private final Meters meters;
+    private final URI uri;
+    private final Supplier<CompletableFuture<T>> fetch;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    private long deadline;
+    private int retries;
+    private int inFlight;
+    private boolean hedged;
+
+    Execution(Policy policy, Meters meters, URI uri, Supplier<CompletableFuture<T>> fetch) {
+      this.policy = policy;
+      this.meters = meters;
+      this.uri = uri;
+      this.fetch = fetch;
+    }
+
+    void start() {
+      deadline = System.nanoTime() + policy.budget().toNanos();
+
+      var timeout =
+          scheduler.schedule(this::budgetExceeded, policy.budget().toNanos(), TimeUnit.NANOSECONDS);
+      result.whenComplete((v, e) -> timeout.cancel(false));
+
+      attempt();
+    }
+
+    private synchronized void attempt() {
+      if (result.isDone()) {
+        return;
+      }
+
+      inFlight++;
+      var started = System.nanoTime();
+
+      CompletableFuture<T> attempt;
+      try {
+        attempt = fetch.get();
+      } catch (RuntimeException e) {
+        attempt = CompletableFuture.failedFuture(e);
+      }
+      attempt.whenComplete((v, e) -> onComplete(v, e, started));
+
+      if (policy.hedgePercentile() > 0 && !hedged && !attempt.isDone()) {
+        var pending = attempt;
+        scheduler.schedule(
+            () -> hedge(pending), meters.hedgeDelayNanos(policy), TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private synchronized void hedge(CompletableFuture<T> slow) {
+      if (hedged || slow.isDone() || result.isDone() || System.nanoTime() >= deadline) {
+        return;
+      }
+      hedged = true;
+      meters.hedges().increment();
+      attempt();
+    }
+
+    private synchronized void onComplete(T value, Throwable e, long started) {
+      inFlight--;
+      if (e == null) {
+        meters.latency().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        result.complete(value);
+        return;
+      }
+
+      // a hedge might still succeed
+      if (result.isDone() || inFlight > 0) {
+        return;
+      }
+
+      var delay = backoffNanos();
+      if (retries >= policy.maxRetries()
+          || !isTransient(e)
+          || System.nanoTime() + delay >= deadline) {
+        result.completeExceptionally(unwrap(e));
+        return;
+      }
+
+      retries++;
+      meters.retries().increment();
+      scheduler.schedule(this::attempt, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private long backoffNanos() {
+      // jittered, spreads out retries of concurrent fetches failing at the same time
+      var max = policy.backoff().toNanos() << Math.min(retries, 16);
+      return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+    }
+
+    private synchronized void budgetExceeded() {
+      if (result.isDone()) {
+        return;
+      }
+      meters.budgetExceeded().increment();
+      result.completeExceptionally(
+          new HttpException(
+              "GET", uri, "latency budget of %s exceeded".formatted(policy.budget()), null));
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.relyingparty.svc.LocalizedException.Message;
+import com.oviva.ehealthid.relyingparty.svc.OverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns away new logins while a bounded in-memory store is filled beyond its high-water mark. A
+ * full store evicts the entries of logins in progress, which fail much later and for no apparent
+ * reason. Rejecting new logins up front fails them early and clearly, while the logins already in
+ * progress keep their entries.
+ */
+public class StoreAdmission {
+
+  private final double highWaterMark;
+  private final Duration retryAfter;
+  private final MeterRegistry meterRegistry;
+
+  private final List<Store> stores = new CopyOnWriteArrayList<>();
+
+  /**
+   * @param highWaterMark the fraction of a store's capacity beyond which new logins are rejected
+   * @param retryAfter when rejected clients should try again
+   */
+  public StoreAdmission(double highWaterMark, Duration retryAfter, MeterRegistry meterRegistry) {
+    this.highWaterMark = highWaterMark;
+    this.retryAfter = retryAfter;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * @param name the name of the store, e.g. {@code sessions}
+   * @param size the current number of entries
+   * @param capacity the maximum number of entries before the store evicts
+   */
+  public void watch(String name, LongSupplier size, long capacity) {
+
+    Gauge.builder("store.occupancy", () -> (double) size.getAsLong() / capacity)
+        .description("the fraction of the capacity of the store in use")
+        .tag("store", name)
+        .register(meterRegistry);
+
+    var rejections =
+        Counter.builder("store.admission.rejections")
+            .description("new logins rejected while the store was beyond its high-water mark")
+            .tag("store", name)
+            .register(meterRegistry);
+
+    stores.add(new Store(size, (long) Math.ceil(capacity * highWaterMark), rejections));
+  }
+
+  /**
+   * @throws OverloadedException if any of the watched stores is filled beyond its high-water mark
+   */
+  public void admit() {
+    for (var store : stores) {
+      if (store.size().getAsLong() >= store.limit()) {
+        store.rejections().increment();
+        throw new OverloadedException(new Message("error.overloaded"), retryAfter);
+      }
+    }
+  }
+
+  private record Store(LongSupplier size, long limit, Counter rejections) {}
+}
@@ -0,0 +1,29 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.util.TlsContext.HandshakeListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+
+/** Records the count and duration of TLS handshakes, by whether a session was resumed. */
+public class TlsHandshakeMetrics implements HandshakeListener {
+
+  private final String name;
+  private final MeterRegistry meterRegistry;
+
+  public TlsHandshakeMetrics(String name, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void onHandshake(String peerHost, String protocol, boolean resumed, Duration duration) {
+    Timer.builder("tls.handshakes")
+        .description("TLS handshakes, resumed sessions save a full handshake")
+        .tag("client", name)
+        .tag("protocol", String.valueOf(protocol))
+        .tag("resumed", Boolean.toString(resumed))
+        .register(meterRegistry)
+        .record(duration);
+  }
+}
@@ -0,0 +1,39 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import com.oviva.ehealthid.fedclient.api.TransferListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.URI;
+
+/**
+ * Records the size of response bodies as received and once decoded, by content coding. The ratio of
+ * both is what compression saves.
+ */
+public class TransferMetrics implements TransferListener {
+
+  private final String name;
+  private final MeterRegistry meterRegistry;
+
+  public TransferMetrics(String name, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void onBody(URI uri, String encoding, long wireBytes, long decodedBytes) {
+    Counter.builder("http.client.body.wire")
+        .description("size of response bodies as received")
+        .baseUnit("bytes")
+        .tag("client", name)
+        .tag("encoding", encoding)
+        .register(meterRegistry)
+        .increment(wireBytes);
+    Counter.builder("http.client.body.decoded")
+        .description("size of response bodies once decoded")
+        .baseUnit("bytes")
+        .tag("client", name)
+        .tag("encoding", encoding)
+        .register(meterRegistry)
+        .increment(decodedBytes);
+  }
+}
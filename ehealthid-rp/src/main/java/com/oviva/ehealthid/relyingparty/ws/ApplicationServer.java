@@ -0,0 +1,117 @@
+package com.oviva.ehealthid.relyingparty.ws;
+
+import com.oviva.ehealthid.relyingparty.ConfigReader.ExecutionMode;
+import com.oviva.ehealthid.relyingparty.ConfigReader.ServerConfig;
+import io.undertow.Undertow;
+import io.undertow.servlet.Servlets;
+import io.undertow.servlet.api.DeploymentManager;
+import jakarta.servlet.ServletException;
+import jakarta.ws.rs.core.Application;
+import jakarta.ws.rs.core.UriBuilder;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.jboss.resteasy.core.ResteasyDeploymentImpl;
+import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+
+/**
+ * Serves a JAX-RS application with RESTEasy on Undertow, with explicitly sized IO and worker thread
+ * pools.
+ *
+ * <p>By default resource methods run on the worker pool. Requests blocking on remote calls, e.g. to
+ * the fedmaster or a sectoral IdP, hold on to a worker thread meanwhile, so the pool size caps the
+ * number of concurrent logins. With {@link ExecutionMode#VIRTUAL} each request is dispatched onto
+ * its own virtual thread instead. Only from Java 24 on virtual threads no longer pin their carrier
+ * while RESTEasy and Undertow hold a monitor around the resource call.
+ */
+public class ApplicationServer implements AutoCloseable {
+
+  private final String host;
+  private final Undertow undertow;
+  private final DeploymentManager manager;
+  private final ResteasyDeployment deployment;
+  private final ExecutorService executor;
+
+  private ApplicationServer(
+      String host,
+      Undertow undertow,
+      DeploymentManager manager,
+      ResteasyDeployment deployment,
+      ExecutorService executor) {
+    this.host = host;
+    this.undertow = undertow;
+    this.manager = manager;
+    this.deployment = deployment;
+    this.executor = executor;
+  }
+
+  public static ApplicationServer start(
+      Application application, String host, int port, ServerConfig config) {
+
+    var deployment = new ResteasyDeploymentImpl();
+    deployment.setApplication(application);
+    deployment.start();
+
+    var servlet =
+        Servlets.servlet("resteasy", HttpServlet30Dispatcher.class)
+            .setAsyncSupported(true)
+            .setLoadOnStartup(1)
+            .addMapping("/*");
+
+    var deploymentInfo =
+        Servlets.deployment()
+            .setClassLoader(ApplicationServer.class.getClassLoader())
+            .setContextPath("/")
+            .setDeploymentName("ehealthid-rp")
+            .addServletContextAttribute(ResteasyDeployment.class.getName(), deployment)
+            .addServlet(servlet);
+
+    ExecutorService executor = null;
+    if (config.executionMode() == ExecutionMode.VIRTUAL) {
+      var threads = Thread.ofVirtual().name("request-", 0).factory();
+      executor = Executors.newThreadPerTaskExecutor(threads);
+      deploymentInfo.setExecutor(executor);
+    }
+
+    var manager = Servlets.defaultContainer().addDeployment(deploymentInfo);
+    manager.deploy();
+
+    try {
+      var undertow =
+          Undertow.builder()
+              .setIoThreads(config.ioThreads())
+              .setWorkerThreads(config.workerThreads())
+              .addHttpListener(port, host)
+              .setHandler(manager.start())
+              .build();
+      undertow.start();
+
+      return new ApplicationServer(host, undertow, manager, deployment, executor);
+    } catch (ServletException e) {
+      throw new IllegalStateException("failed to start application", e);
+    }
+  }
+
+  public URI baseUri() {
+    var address = (InetSocketAddress) undertow.getListenerInfo().get(0).getAddress();
+    return UriBuilder.newInstance()
+        .scheme("http")
+        .host(host)
+        .port(address.getPort())
+        .path("/")
+        .build();
+  }
+
+  @Override
+  public void close() throws ServletException {
+    undertow.stop();
+    manager.stop();
+    manager.undeploy();
+    deployment.stop();
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -104,13 +104,16 @@ public class AuthEndpoint {
       @FormParam("identityProvider") String identityProvider,
       @HeaderParam("Accept-Language") @DefaultValue("de-DE") String acceptLanguage) {
 
-    var redirect =
+    var res =
         authService.selectedIdentityProvider(new SelectedIdpRequest(sessionId, identityProvider));
 
     var locale = getNegotiatedLocale(acceptLanguage);
-    var page = pages.jumpToApp(redirect, locale);
+    var page = pages.jumpToApp(res.idpRedirectUri(), locale);
 
-    return Response.ok(page, MediaType.TEXT_HTML_TYPE).build();
+    // the session ID changes with the session if the session itself is the cookie
+    return Response.ok(page, MediaType.TEXT_HTML_TYPE)
+        .cookie(createSessionCookie(res.sessionId()))
+        .build();
   }
 
   @GET
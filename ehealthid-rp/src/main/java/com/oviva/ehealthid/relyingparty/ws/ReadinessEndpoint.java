@@ -0,0 +1,48 @@
+package com.oviva.ehealthid.relyingparty.ws;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reports whether the service should receive traffic yet. Unlike {@link HealthEndpoint}, a service
+ * which is not ready is still alive and must not be restarted.
+ */
+public class ReadinessEndpoint implements HttpHandler {
+  public static final String PATH = "/health/ready";
+
+  private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+  private static final String STATUS_UP = "{\"status\":\"UP\"}";
+  private static final String STATUS_STARTING = "{\"status\":\"STARTING\"}";
+
+  private final BooleanSupplier ready;
+
+  /**
+   * @param ready whether the service finished warming up, reports {@code 503} until then so no
+   *     traffic is routed to it yet
+   */
+  public ReadinessEndpoint(BooleanSupplier ready) {
+    this.ready = ready;
+  }
+
+  @Override
+  public void handleRequest(HttpServerExchange httpServerExchange) {
+    if (!httpServerExchange.getRequestMethod().equals(HttpString.tryFromString("GET"))) {
+      httpServerExchange.setStatusCode(HTTP_METHOD_NOT_ALLOWED);
+      httpServerExchange.getResponseSender().send("");
+    } else if (!ready.getAsBoolean()) {
+      httpServerExchange.setStatusCode(HTTP_SERVICE_UNAVAILABLE);
+      httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+      httpServerExchange.getResponseSender().send(STATUS_STARTING);
+    } else {
+      httpServerExchange.setStatusCode(HTTP_OK);
+      httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+      httpServerExchange.getResponseSender().send(STATUS_UP);
+    }
+  }
+}
@@ -6,6 +6,7 @@ import static com.oviva.ehealthid.relyingparty.util.LocaleUtils.getNegotiatedLoc
 import com.oviva.ehealthid.auth.AuthException;
 import com.oviva.ehealthid.fedclient.FederationException;
 import com.oviva.ehealthid.relyingparty.svc.AuthenticationException;
+import com.oviva.ehealthid.relyingparty.svc.OverloadedException;
 import com.oviva.ehealthid.relyingparty.svc.ValidationException;
 import com.oviva.ehealthid.relyingparty.ws.ui.Pages;
 import com.oviva.ehealthid.relyingparty.ws.ui.TemplateRenderer;
@@ -72,6 +73,13 @@ public class ThrowableExceptionMapper implements ExceptionMapper<Throwable> {
       return buildErrorResponse(ve.localizedMessage(), Status.BAD_REQUEST);
     }
 
+    if (exception instanceof OverloadedException oe) {
+      var retryAfterSeconds = Math.max(1, oe.retryAfter().toSeconds());
+      return errorResponse(oe.localizedMessage(), Status.SERVICE_UNAVAILABLE)
+          .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+          .build();
+    }
+
     // the remaining exceptions are unexpected, let's log them
     log(exception);
 
@@ -92,6 +100,10 @@ public class ThrowableExceptionMapper implements ExceptionMapper<Throwable> {
   }
 
   private Response buildErrorResponse(Message message, StatusType status) {
+    return errorResponse(message, status).build();
+  }
+
+  private Response.ResponseBuilder errorResponse(Message message, StatusType status) {
 
     var headerString = headers.getHeaderString("Accept-Language");
     var locale = getNegotiatedLocale(headerString);
@@ -107,8 +119,7 @@ public class ThrowableExceptionMapper implements ExceptionMapper<Throwable> {
     // currently (resteasy 6.2).
     return Response.status(status)
         .entity(body.getBytes(StandardCharsets.UTF_8))
-        .type(MediaType.TEXT_HTML_TYPE)
-        .build();
+        .type(MediaType.TEXT_HTML_TYPE);
   }
 
   private void debugLog(Throwable exception) {
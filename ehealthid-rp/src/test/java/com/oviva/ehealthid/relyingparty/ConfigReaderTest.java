@@ -4,10 +4,24 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.oviva.ehealthid.relyingparty.ConfigReader.ExecutionMode;
+import com.oviva.ehealthid.relyingparty.ConfigReader.HttpClientConfig;
+import com.oviva.ehealthid.relyingparty.ConfigReader.ServerConfig;
+import com.oviva.ehealthid.relyingparty.ConfigReader.SessionMode;
+import com.oviva.ehealthid.relyingparty.ConfigReader.StoreBackend;
+import com.oviva.ehealthid.relyingparty.ConfigReader.StoreConfig;
 import com.oviva.ehealthid.relyingparty.cfg.ConfigProvider;
+import com.oviva.ehealthid.relyingparty.util.OutboundHttpClients.Target;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class ConfigReaderTest {
 
@@ -44,6 +58,231 @@ class ConfigReaderTest {
     assertEquals(baseUri, config.federation().iss().toString());
     assertEquals(baseUri, config.federation().sub().toString());
     assertEquals(List.of("openid", "urn:telematik:versicherter"), config.federation().scopes());
+
+    assertEquals(ExecutionMode.WORKER, config.server().executionMode());
+    assertEquals(config.server().ioThreads() * 8, config.server().workerThreads());
+
+    var federationHttp = config.httpClients().get(Target.FEDERATION);
+    assertEquals(Version.HTTP_2, federationHttp.version());
+    assertEquals(Duration.ofSeconds(10), federationHttp.connectTimeout());
+    assertEquals(0, federationHttp.threads());
+    assertEquals(1024L * 1024, federationHttp.maxBodyBytes());
+
+    assertEquals(1000, config.tls().sessionCacheSize());
+    assertEquals(Duration.ofHours(1), config.tls().sessionTimeout());
+
+    assertEquals(0, config.keepWarm().maxHosts());
+    assertEquals(Duration.ofSeconds(20), config.keepWarm().interval());
+
+    assertEquals(StoreBackend.MEMORY, config.store().backend());
+
+    assertEquals(SessionMode.SERVER, config.sessionStore().mode());
+    assertNull(config.sessionStore().cookieSecret());
+
+    assertEquals(0.9, config.admission().highWaterMark());
+    assertEquals(Duration.ofSeconds(30), config.admission().retryAfter());
+  }
+
+  @Test
+  void read_storeConfig() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_STORE_BACKEND)).thenReturn(Optional.of("redis"));
+    when(provider.get(ConfigReader.CONFIG_STORE_URI))
+        .thenReturn(Optional.of("redis://redis.example.com:6379"));
+
+    // when
+    var config = sut.read();
+
+    // then
+    var uri = URI.create("redis://redis.example.com:6379");
+    assertEquals(new StoreConfig(StoreBackend.REDIS, uri, Duration.ofSeconds(2)), config.store());
+  }
+
+  @Test
+  void read_redisStoreWithoutUri() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_STORE_BACKEND)).thenReturn(Optional.of("redis"));
+
+    // when
+    assertThrows(IllegalArgumentException.class, sut::read);
+  }
+
+  @Test
+  void read_cookieSessionMode() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_SESSION_MODE)).thenReturn(Optional.of("cookie"));
+    when(provider.get(ConfigReader.CONFIG_SESSION_COOKIE_SECRET))
+        .thenReturn(Optional.of("0123456789abcdef0123456789abcdef"));
+
+    // when
+    var config = sut.read();
+
+    // then
+    assertEquals(SessionMode.COOKIE, config.sessionStore().mode());
+    assertEquals("0123456789abcdef0123456789abcdef", config.sessionStore().cookieSecret());
+  }
+
+  @Test
+  void read_badSessionMode() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_SESSION_MODE)).thenReturn(Optional.of("browser"));
+
+    // when
+    assertThrows(IllegalArgumentException.class, sut::read);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"0", "1.5", "-0.1", "ninety"})
+  void read_badHighWaterMark(String highWaterMark) {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_STORE_HIGH_WATER_MARK))
+        .thenReturn(Optional.of(highWaterMark));
+
+    // when
+    assertThrows(IllegalArgumentException.class, sut::read);
+  }
+
+  @Test
+  void read_httpClientConfig() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get("http_openid_version")).thenReturn(Optional.of("http_1_1"));
+    when(provider.get("http_openid_connect_timeout")).thenReturn(Optional.of("PT2S"));
+    when(provider.get("http_openid_request_timeout")).thenReturn(Optional.of("PT5S"));
+    when(provider.get("http_openid_threads")).thenReturn(Optional.of("16"));
+    when(provider.get("http_openid_max_body_bytes")).thenReturn(Optional.of("65536"));
+
+    // when
+    var config = sut.read();
+
+    // then
+    assertEquals(
+        new HttpClientConfig(
+            Version.HTTP_1_1, Duration.ofSeconds(2), Duration.ofSeconds(5), 16, 65536),
+        config.httpClients().get(Target.OPENID));
+    assertEquals(Version.HTTP_2, config.httpClients().get(Target.DISCOVERY).version());
+  }
+
+  @Test
+  void read_badHttpVersion() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get("http_federation_version")).thenReturn(Optional.of("http_3"));
+
+    // when
+    assertThrows(IllegalArgumentException.class, sut::read);
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_24)
+  void read_serverConfig() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_EXECUTION_MODE)).thenReturn(Optional.of("virtual"));
+    when(provider.get(ConfigReader.CONFIG_IO_THREADS)).thenReturn(Optional.of("2"));
+    when(provider.get(ConfigReader.CONFIG_WORKER_THREADS)).thenReturn(Optional.of("4"));
+
+    // when
+    var config = sut.read();
+
+    // then
+    assertEquals(new ServerConfig(ExecutionMode.VIRTUAL, 2, 4), config.server());
+  }
+
+  @Test
+  @EnabledForJreRange(max = JRE.JAVA_23)
+  void read_virtualModeBeforeJava24() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_EXECUTION_MODE)).thenReturn(Optional.of("virtual"));
+
+    // when
+    assertThrows(IllegalArgumentException.class, sut::read);
+  }
+
+  @Test
+  void read_badExecutionMode() {
+    var provider = mock(ConfigProvider.class);
+
+    var sut = new ConfigReader(provider);
+
+    when(provider.get(ConfigReader.CONFIG_BASE_URI))
+        .thenReturn(Optional.of("https://rp.example.com"));
+    when(provider.get(ConfigReader.CONFIG_APP_NAME)).thenReturn(Optional.of("Awesome DiGA"));
+    when(provider.get(ConfigReader.CONFIG_IDP_DISCOVERY_URI))
+        .thenReturn(Optional.of("https://sso.example.com/.well-known/openid-configuration"));
+    when(provider.get(ConfigReader.CONFIG_EXECUTION_MODE)).thenReturn(Optional.of("reactive"));
+
+    // when
+    assertThrows(IllegalArgumentException.class, sut::read);
   }
 
   @Test
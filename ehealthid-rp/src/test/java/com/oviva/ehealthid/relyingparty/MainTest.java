@@ -26,6 +26,7 @@ class MainTest {
   private static final String FEDERATION_CONFIG_PATH = "/.well-known/openid-federation";
   private static final String JWKS_PATH = "/jwks.json";
   private static final String HEALTH_PATH = "/health";
+  private static final String READINESS_PATH = "/health/ready";
   private static final String METRICS_PATH = "/metrics";
   private static final String AUTH_PATH = "/auth";
   private static final String IDP_PATH = "auth/select-idp";
@@ -59,6 +60,7 @@ class MainTest {
     assertGetOk(baseUri.resolve(FEDERATION_CONFIG_PATH));
 
     assertGetOk(managementBaseUri.resolve(HEALTH_PATH));
+    assertGetOk(managementBaseUri.resolve(READINESS_PATH));
     assertGetOk(managementBaseUri.resolve(METRICS_PATH));
   }
 
@@ -76,6 +78,8 @@ class MainTest {
         .contentType(ContentType.TEXT)
         .body(containsString("cache_gets_total{cache=\"sessionCache\""))
         .body(containsString("cache_gets_total{cache=\"codeCache\""))
+        .body(containsString("cache_gets_total{cache=\"entityStatementCache\""))
+        .body(containsString("cache_evictions_total{cache=\"idpListCache\""))
         .body(containsString("jvm_memory_used_bytes{area=\"heap\""))
         .body(containsString("jvm_gc_memory_allocated_bytes_total "));
   }
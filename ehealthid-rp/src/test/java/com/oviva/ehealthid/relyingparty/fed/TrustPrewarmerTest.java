@@ -0,0 +1,91 @@
+package com.oviva.ehealthid.relyingparty.fed;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.oviva.ehealthid.fedclient.FederationException;
+import com.oviva.ehealthid.fedclient.FederationException.Reason;
+import com.oviva.ehealthid.fedclient.FederationMasterClient;
+import com.oviva.ehealthid.fedclient.IdpEntry;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class TrustPrewarmerTest {
+
+  @Test
+  void run_establishesTrustInAllIdps() throws InterruptedException {
+
+    var client = mock(FederationMasterClient.class);
+    var idps =
+        IntStream.range(0, 20)
+            .mapToObj(i -> new IdpEntry("https://idp-%d.example.com".formatted(i), null, null))
+            .toList();
+    when(client.listAvailableIdps()).thenReturn(idps);
+
+    var inFlight = new AtomicInteger();
+    var maxInFlight = new AtomicInteger();
+    when(client.establishIdpTrust(any()))
+        .thenAnswer(
+            i -> {
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              Thread.sleep(5);
+              inFlight.decrementAndGet();
+              return null;
+            });
+
+    var sut = new TrustPrewarmer(client, 3);
+
+    // when
+    var trusted = sut.run();
+
+    // then
+    assertEquals(20, trusted);
+    assertTrue(maxInFlight.get() <= 3);
+    for (var idp : idps) {
+      verify(client).establishIdpTrust(URI.create(idp.iss()));
+    }
+  }
+
+  @Test
+  void run_skipsUntrustedIdp() throws InterruptedException {
+
+    var client = mock(FederationMasterClient.class);
+    var good = new IdpEntry("https://good.example.com", null, null);
+    var bad = new IdpEntry("https://bad.example.com", null, null);
+    when(client.listAvailableIdps()).thenReturn(List.of(bad, good));
+    when(client.establishIdpTrust(URI.create(bad.iss())))
+        .thenThrow(new FederationException("bad signature", Reason.UNTRUSTED_IDP));
+
+    var sut = new TrustPrewarmer(client, 2);
+
+    // when
+    var trusted = sut.run();
+
+    // then
+    assertEquals(1, trusted);
+    verify(client).establishIdpTrust(URI.create(good.iss()));
+  }
+
+  @Test
+  void run_idpListUnavailable() throws InterruptedException {
+
+    var client = mock(FederationMasterClient.class);
+    when(client.listAvailableIdps()).thenThrow(new IllegalStateException("fedmaster down"));
+
+    var sut = new TrustPrewarmer(client, 2);
+
+    // when
+    var trusted = sut.run();
+
+    // then
+    assertEquals(0, trusted);
+    verify(client, never()).establishIdpTrust(any());
+  }
+}
@@ -2,8 +2,11 @@ package com.oviva.ehealthid.relyingparty.svc;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.oviva.ehealthid.auth.AuthenticationFlow;
@@ -14,10 +17,13 @@ import com.oviva.ehealthid.relyingparty.fed.FederationConfig;
 import com.oviva.ehealthid.relyingparty.svc.AuthService.AuthorizationRequest;
 import com.oviva.ehealthid.relyingparty.svc.AuthService.CallbackRequest;
 import com.oviva.ehealthid.relyingparty.svc.AuthService.SelectedIdpRequest;
+import com.oviva.ehealthid.relyingparty.svc.LocalizedException.Message;
 import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
 import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
 import com.oviva.ehealthid.relyingparty.util.IdGenerator;
+import com.oviva.ehealthid.relyingparty.util.StoreAdmission;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
@@ -31,12 +37,14 @@ class AuthServiceTest {
   private static final URI BASE_URI = URI.create("https://idp.example.com");
   private static final URI REDIRECT_URI = URI.create("https://myapp.example.com");
 
+  private final StoreAdmission admission = mock(StoreAdmission.class);
+
   @Test
   void auth_badScopes() {
 
     var rpConfig = new RelyingPartyConfig(null, List.of(REDIRECT_URI));
 
-    var sut = new AuthService(BASE_URI, rpConfig, null, null, null, null);
+    var sut = new AuthService(BASE_URI, rpConfig, null, null, null, null, admission);
 
     var scope = "openid email";
     var state = UUID.randomUUID().toString();
@@ -58,7 +66,7 @@ class AuthServiceTest {
   void auth_untrustedRedirect() {
     var config = new RelyingPartyConfig(null, List.of(REDIRECT_URI));
 
-    var sut = new AuthService(BASE_URI, config, null, null, null, null);
+    var sut = new AuthService(BASE_URI, config, null, null, null, null, admission);
 
     var scope = "openid email";
     var state = UUID.randomUUID().toString();
@@ -77,7 +85,7 @@ class AuthServiceTest {
     var config = new RelyingPartyConfig(List.of("code"), List.of(REDIRECT_URI));
 
     var sessionRepo = mock(SessionRepo.class);
-    var sut = new AuthService(BASE_URI, config, null, sessionRepo, null, null);
+    var sut = new AuthService(BASE_URI, config, null, sessionRepo, null, null, admission);
 
     var scope = "openid";
     var state = UUID.randomUUID().toString();
@@ -113,7 +121,8 @@ class AuthServiceTest {
     when(authFlow.start(any())).thenReturn(selectIdpStep);
 
     var sessionRepo = mock(SessionRepo.class);
-    var sut = new AuthService(BASE_URI, config, fedConfig, sessionRepo, null, authFlow);
+    when(sessionRepo.save(any())).thenReturn("mySessionId");
+    var sut = new AuthService(BASE_URI, config, fedConfig, sessionRepo, null, authFlow, admission);
 
     var scope = "openid";
     var state = UUID.randomUUID().toString();
@@ -124,7 +133,30 @@ class AuthServiceTest {
 
     // when
     var res = sut.auth(req);
-    assertNotNull(res.sessionId());
+    assertEquals("mySessionId", res.sessionId());
+  }
+
+  @Test
+  void auth_overloaded() {
+    var config = new RelyingPartyConfig(List.of("code"), List.of(REDIRECT_URI));
+
+    var authFlow = mock(AuthenticationFlow.class);
+    var sessionRepo = mock(SessionRepo.class);
+    doThrow(new OverloadedException(new Message("error.overloaded"), Duration.ofSeconds(30)))
+        .when(admission)
+        .admit();
+
+    var sut = new AuthService(BASE_URI, config, null, sessionRepo, null, authFlow, admission);
+
+    var req =
+        new AuthorizationRequest(
+            "openid", "state", "code", "myapp", REDIRECT_URI, UUID.randomUUID().toString());
+
+    // when
+    assertThrows(OverloadedException.class, () -> sut.auth(req));
+
+    // then
+    verifyNoInteractions(authFlow, sessionRepo);
   }
 
   @ParameterizedTest
@@ -134,7 +166,7 @@ class AuthServiceTest {
 
     var config = new RelyingPartyConfig(null, null);
 
-    var sut = new AuthService(BASE_URI, config, null, null, null, null);
+    var sut = new AuthService(BASE_URI, config, null, null, null, null, admission);
 
     var req = new CallbackRequest(sessionId, "");
 
@@ -149,7 +181,7 @@ class AuthServiceTest {
 
     var sessionRepo = mock(SessionRepo.class);
 
-    var sut = new AuthService(BASE_URI, config, null, sessionRepo, null, null);
+    var sut = new AuthService(BASE_URI, config, null, sessionRepo, null, null, admission);
 
     var sessionId = UUID.randomUUID().toString();
 
@@ -161,91 +193,111 @@ class AuthServiceTest {
     assertThrows(ValidationException.class, () -> sut.callback(req));
   }
 
+  @Test
+  void selectIdp() {
+
+    var sessionRepo = mock(SessionRepo.class);
+    var authFlow = mock(AuthenticationFlow.class);
+    var fedConfig = FederationConfig.create().scopes(List.of("openid")).build();
+
+    var selectedIdpIssuer = "https://aok-testfalen.example.com";
+    var idpRedirect = URI.create(selectedIdpIssuer).resolve("/auth/login");
+
+    var selectIdpStep = mock(SelectSectoralIdpStep.class);
+    var trustedIdpStep = mock(TrustedSectoralIdpStep.class);
+    when(authFlow.start(any())).thenReturn(selectIdpStep);
+    when(selectIdpStep.redirectToSectoralIdp(selectedIdpIssuer)).thenReturn(trustedIdpStep);
+    when(trustedIdpStep.idpRedirectUri()).thenReturn(idpRedirect);
+
+    var sessionId = IdGenerator.generateID();
+    var session =
+        Session.create().id(sessionId).state("myState").codeVerifier("myVerifier").build();
+    when(sessionRepo.load(sessionId)).thenReturn(session);
+    when(sessionRepo.save(any())).thenReturn("myNewSessionId");
+
+    var sut = new AuthService(BASE_URI, null, fedConfig, sessionRepo, null, authFlow, admission);
+
+    // when
+    var res = sut.selectedIdentityProvider(new SelectedIdpRequest(sessionId, selectedIdpIssuer));
+
+    // then
+    assertEquals(idpRedirect, res.idpRedirectUri());
+    assertEquals("myNewSessionId", res.sessionId());
+
+    var flowSession = ArgumentCaptor.forClass(AuthenticationFlow.Session.class);
+    verify(authFlow).start(flowSession.capture());
+    assertEquals("myState", flowSession.getValue().state());
+    assertEquals(BASE_URI.resolve("/auth/callback"), flowSession.getValue().callbackUri());
+
+    var saved = ArgumentCaptor.forClass(Session.class);
+    verify(sessionRepo).save(saved.capture());
+    assertEquals(selectedIdpIssuer, saved.getValue().selectedIdp());
+    assertEquals(idpRedirect, saved.getValue().idpRedirectUri());
+  }
+
   @Test
   void callback() {
 
     var config = new RelyingPartyConfig(List.of("code"), List.of(REDIRECT_URI));
+    var fedConfig = FederationConfig.create().scopes(List.of("openid")).build();
 
     var sessionRepo = mock(SessionRepo.class);
     var tokenIssuer = mock(TokenIssuer.class);
+    var authFlow = mock(AuthenticationFlow.class);
 
-    var sut = new AuthService(BASE_URI, config, null, sessionRepo, tokenIssuer, null);
-
-    var sessionId = UUID.randomUUID().toString();
-
-    var state = "mySuperDuperState";
-    var nonce = "20e5ed8b-f96b-48de-ae73-4460bcfc35a1";
-    var clientId = "myapp";
+    var sut =
+        new AuthService(BASE_URI, config, fedConfig, sessionRepo, tokenIssuer, authFlow, admission);
 
-    var trustedIdpStep = mock(TrustedSectoralIdpStep.class);
+    var selectedIdpIssuer = "https://aok-testfalen.example.com";
+    var idpRedirect = URI.create(selectedIdpIssuer).resolve("/auth/login");
 
+    var sessionId = IdGenerator.generateID();
     var session =
         Session.create()
             .id(sessionId)
-            .state(state)
-            .nonce(nonce)
+            .state("myState")
             .redirectUri(REDIRECT_URI)
-            .clientId(clientId)
-            .trustedSectoralIdpStep(trustedIdpStep)
+            .codeVerifier("myVerifier")
+            .selectedIdp(selectedIdpIssuer)
+            .idpRedirectUri(idpRedirect)
             .build();
-
     when(sessionRepo.load(sessionId)).thenReturn(session);
     when(sessionRepo.remove(sessionId)).thenReturn(session);
 
-    var code = "6238e4504332468aa0c12e300787fded";
-
-    when(trustedIdpStep.exchangeSectoralIdpCode(code, null)).thenReturn(null);
+    var trustedIdpStep = mock(TrustedSectoralIdpStep.class);
+    when(authFlow.resume(any(), any(), any())).thenReturn(trustedIdpStep);
 
-    var issued = new Code(code, null, null, REDIRECT_URI, nonce, clientId, null);
+    var issued = new Code("myCode", null, null, REDIRECT_URI, null, null, null);
     when(tokenIssuer.issueCode(session, null)).thenReturn(issued);
 
-    var req = new CallbackRequest(sessionId, "somecode");
-
     // when
-    var res = sut.callback(req);
+    var res = sut.callback(new CallbackRequest(sessionId, "idpCode"));
 
     // then
-    assertEquals(
-        "https://myapp.example.com?code=6238e4504332468aa0c12e300787fded&state=mySuperDuperState",
-        res.toString());
-
-    verify(sessionRepo).remove(sessionId);
+    assertEquals("https://myapp.example.com?code=myCode&state=myState", res.toString());
+    verify(authFlow).resume(any(), eq(selectedIdpIssuer), eq(idpRedirect));
+    verify(trustedIdpStep).exchangeSectoralIdpCode("idpCode", "myVerifier");
   }
 
   @Test
-  void selectIdp() {
-
-    var sessionRepo = mock(SessionRepo.class);
-
-    var sessionId = IdGenerator.generateID();
-    var selectIdpStep = mock(SelectSectoralIdpStep.class);
+  void callback_noIdpSelected() {
 
-    var selectedIdpIssuer = "https://aok-testfalen.example.com";
+    var config = new RelyingPartyConfig(List.of("code"), List.of(REDIRECT_URI));
 
-    var idpRedirect = URI.create(selectedIdpIssuer).resolve("/auth/login");
+    var sessionRepo = mock(SessionRepo.class);
+    var authFlow = mock(AuthenticationFlow.class);
 
-    var trustedIdpStep = mock(TrustedSectoralIdpStep.class);
-    when(selectIdpStep.redirectToSectoralIdp(selectedIdpIssuer)).thenReturn(trustedIdpStep);
-    when(trustedIdpStep.idpRedirectUri()).thenReturn(idpRedirect);
+    var sut = new AuthService(BASE_URI, config, null, sessionRepo, null, authFlow, admission);
 
-    var session = Session.create().id(sessionId).selectSectoralIdpStep(selectIdpStep).build();
+    var sessionId = IdGenerator.generateID();
+    var session = Session.create().id(sessionId).codeVerifier("myVerifier").build();
     when(sessionRepo.load(sessionId)).thenReturn(session);
 
-    var sut = new AuthService(BASE_URI, null, null, sessionRepo, null, null);
-
-    var req = new SelectedIdpRequest(sessionId, selectedIdpIssuer);
-
-    // when
-    var res = sut.selectedIdentityProvider(req);
-
-    // then
-    assertEquals(idpRedirect, res);
-
-    var captor = ArgumentCaptor.forClass(Session.class);
-    verify(sessionRepo).save(captor.capture());
+    var req = new CallbackRequest(sessionId, "idpCode");
 
-    var savedSession = captor.getValue();
-    assertEquals(trustedIdpStep, savedSession.trustedSectoralIdpStep());
+    // when & then
+    assertThrows(ValidationException.class, () -> sut.callback(req));
+    verifyNoInteractions(authFlow);
   }
 
   @Test
@@ -257,7 +309,7 @@ class AuthServiceTest {
 
     when(sessionRepo.load(sessionId)).thenReturn(null);
 
-    var sut = new AuthService(BASE_URI, null, null, sessionRepo, null, null);
+    var sut = new AuthService(BASE_URI, null, null, sessionRepo, null, null, admission);
     var req = new SelectedIdpRequest(sessionId, selectedIdpIssuer);
 
     // when
@@ -271,7 +323,7 @@ class AuthServiceTest {
   void selectIdp_nothingSelected() {
 
     var sessionId = "1234";
-    var sut = new AuthService(BASE_URI, null, null, null, null, null);
+    var sut = new AuthService(BASE_URI, null, null, null, null, null, admission);
 
     // when
     assertThrows(
@@ -0,0 +1,197 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.oviva.ehealthid.fedclient.api.TemporalValid;
+import com.oviva.ehealthid.relyingparty.svc.CaffeineFederationCache.TemporalValidExpiry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CaffeineFederationCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T13:11:00.000Z");
+  private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+  private static final Duration TTL = Duration.ofSeconds(10);
+
+  @Test
+  void computeIfAbsent_loadsOnce() {
+
+    var store = buildStore(100);
+    var sut = new CaffeineFederationCache<>(store);
+
+    var loads = new AtomicInteger();
+
+    // when
+    var first =
+        sut.computeIfAbsent(
+            "1",
+            k -> {
+              loads.incrementAndGet();
+              return new Entry(k, NOW.plusSeconds(60));
+            });
+    var second = sut.computeIfAbsent("1", k -> fail());
+
+    // then
+    assertSame(first, second);
+    assertEquals(1, loads.get());
+
+    var stats = store.synchronous().stats();
+    assertEquals(1, stats.hitCount());
+    assertEquals(1, stats.missCount());
+    assertEquals(1, stats.loadSuccessCount());
+  }
+
+  @Test
+  void computeIfAbsent_propagatesFailure() {
+
+    var sut = new CaffeineFederationCache<>(buildStore(100));
+
+    var failure = new IllegalStateException("remote down");
+
+    // when
+    var e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                sut.computeIfAbsent(
+                    "1",
+                    k -> {
+                      throw failure;
+                    }));
+
+    // then
+    assertSame(failure, e);
+  }
+
+  @Test
+  void computeIfAbsentAsync_sharesPendingLoad() {
+
+    var sut = new CaffeineFederationCache<>(buildStore(100));
+
+    var load = new CompletableFuture<Entry>();
+    var loads = new AtomicInteger();
+
+    // when
+    var first =
+        sut.computeIfAbsentAsync(
+            "1",
+            k -> {
+              loads.incrementAndGet();
+              return load;
+            });
+    var second = sut.computeIfAbsentAsync("1", k -> fail());
+    load.complete(new Entry("1", NOW.plusSeconds(60)));
+
+    // then
+    assertSame(first.join(), second.join());
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void refresh_replacesEntry() {
+
+    var sut = new CaffeineFederationCache<>(buildStore(100));
+    sut.computeIfAbsent("1", k -> new Entry("old", NOW.plusSeconds(60)));
+
+    // when
+    var fresh = sut.refresh("1", k -> new Entry("new", NOW.plusSeconds(120)));
+
+    // then
+    assertSame(fresh, sut.computeIfAbsent("1", k -> fail()));
+  }
+
+  @Test
+  void evictsBeyondMaximumWeight() {
+
+    var store = buildStore(2);
+    var sut = new CaffeineFederationCache<>(store);
+
+    // when
+    for (int i = 0; i < 10; i++) {
+      sut.computeIfAbsent(String.valueOf(i), k -> new Entry(k, NOW.plusSeconds(60)));
+    }
+    store.synchronous().cleanUp();
+
+    // then
+    assertTrue(store.synchronous().estimatedSize() <= 2);
+    assertTrue(store.synchronous().stats().evictionCount() >= 8);
+  }
+
+  @Test
+  void expiry_beforeExpiresAt() {
+
+    var sut = new TemporalValidExpiry<Entry>(CLOCK, TTL);
+
+    // when
+    var expiry = sut.expireAfterCreate("1", new Entry("1", NOW.plusSeconds(60)), 0);
+
+    // then
+    assertEquals(Duration.ofSeconds(50).toNanos(), expiry);
+  }
+
+  @Test
+  void expiry_alreadyExpired() {
+
+    var sut = new TemporalValidExpiry<Entry>(CLOCK, TTL);
+
+    // when
+    var expiry = sut.expireAfterUpdate("1", new Entry("1", NOW.plusSeconds(5)), 0, 1000);
+
+    // then
+    assertEquals(0, expiry);
+  }
+
+  @Test
+  void expiry_neverExpires() {
+
+    var sut = new TemporalValidExpiry<Entry>(CLOCK, TTL);
+
+    // when
+    var expiry = sut.expireAfterCreate("1", new Entry("1", null), 0);
+
+    // then
+    assertEquals(Long.MAX_VALUE, expiry);
+  }
+
+  @Test
+  void expiry_unchangedOnRead() {
+
+    var sut = new TemporalValidExpiry<Entry>(CLOCK, TTL);
+
+    // when
+    var expiry = sut.expireAfterRead("1", new Entry("1", NOW.plusSeconds(60)), 0, 1234);
+
+    // then
+    assertEquals(1234, expiry);
+  }
+
+  private AsyncCache<String, Entry> buildStore(long maxWeight) {
+    return Caffeine.newBuilder()
+        .executor(Runnable::run)
+        .expireAfter(new TemporalValidExpiry<Entry>(CLOCK, TTL))
+        .maximumWeight(maxWeight)
+        .weigher((String k, Entry v) -> 1)
+        .recordStats()
+        .buildAsync();
+  }
+
+  record Entry(String value, Instant exp) implements TemporalValid {
+
+    @Override
+    public boolean isValidAt(Instant pointInTime) {
+      return exp == null || pointInTime.isBefore(exp);
+    }
+
+    @Override
+    public Instant expiresAt() {
+      return exp;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CookieSessionRepoTest {
+
+  private static final Duration TTL = Duration.ofMinutes(20);
+  private static final byte[] SECRET =
+      "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+  // at the start of a key period
+  private static final Instant NOW = Instant.ofEpochMilli(TTL.toMillis() * 1_000_000);
+
+  private Clock clock;
+
+  @BeforeEach
+  void setUp() {
+    clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW);
+  }
+
+  @Test
+  void saveAndLoad_onAnotherInstance() {
+
+    var session = session(NOW);
+    var sessionId = new CookieSessionRepo(SECRET, TTL, clock).save(session);
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+
+    // when
+    var got = sut.load(sessionId);
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void save_encrypted() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+
+    // when
+    var sessionId = sut.save(session(NOW));
+
+    // then
+    var sealed = new String(Base64.getUrlDecoder().decode(sessionId), StandardCharsets.ISO_8859_1);
+    assertFalse(sealed.contains("myVerifier"));
+    assertFalse(sealed.contains("mySessionId"));
+    assertTrue(sessionId.length() < 1024, "cookie too large: " + sessionId.length());
+  }
+
+  @Test
+  void load_otherSecret() {
+
+    var sessionId = new CookieSessionRepo(SECRET, TTL, clock).save(session(NOW));
+
+    var otherSecret = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+    var sut = new CookieSessionRepo(otherSecret, TTL, clock);
+
+    // when
+    var got = sut.load(sessionId);
+
+    // then
+    assertNull(got);
+  }
+
+  @Test
+  void load_tampered() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+    var sealed = Base64.getUrlDecoder().decode(sut.save(session(NOW)));
+    sealed[sealed.length / 2] ^= 1;
+
+    // when
+    var got = sut.load(Base64.getUrlEncoder().withoutPadding().encodeToString(sealed));
+
+    // then
+    assertNull(got);
+  }
+
+  @Test
+  void load_malformed() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+
+    // when & then
+    assertNull(sut.load("mySessionId"));
+    assertNull(sut.load("not base64!"));
+    assertNull(sut.load(""));
+  }
+
+  @Test
+  void load_afterKeyRotation() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+
+    // sealed at the very end of a key period
+    var sealedAt = NOW.minusSeconds(1);
+    when(clock.instant()).thenReturn(sealedAt);
+    var session = session(sealedAt.minus(TTL.dividedBy(2)));
+    var sessionId = sut.save(session);
+
+    // when
+    when(clock.instant()).thenReturn(NOW.plusSeconds(60));
+    var got = sut.load(sessionId);
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void load_expired() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+    var sessionId = sut.save(session(NOW));
+
+    // when
+    when(clock.instant()).thenReturn(NOW.plus(TTL).plusSeconds(1));
+    var got = sut.load(sessionId);
+
+    // then
+    assertNull(got);
+  }
+
+  @Test
+  void load_keyRetired() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+
+    // the session claims to be fresh, but its key is long gone
+    var sessionId = sut.save(session(NOW.plus(TTL.multipliedBy(2))));
+
+    // when
+    when(clock.instant()).thenReturn(NOW.plus(TTL.multipliedBy(2)));
+    var got = sut.load(sessionId);
+
+    // then
+    assertNull(got);
+  }
+
+  @Test
+  void remove() {
+
+    var sut = new CookieSessionRepo(SECRET, TTL, clock);
+    var session = session(NOW);
+    var sessionId = sut.save(session);
+
+    // when
+    var got = sut.remove(sessionId);
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void shortSecret() {
+    var secret = "tooShort".getBytes(StandardCharsets.UTF_8);
+    assertThrows(IllegalArgumentException.class, () -> new CookieSessionRepo(secret, TTL));
+  }
+
+  private static Session session(Instant createdAt) {
+    return Session.create()
+        .id("mySessionId")
+        .createdAt(createdAt)
+        .state("myState")
+        .nonce("myNonce")
+        .redirectUri(URI.create("https://example.com/callback"))
+        .clientId("app")
+        .codeVerifier("myVerifier")
+        .selectedIdp("https://idp.example.com")
+        .idpRedirectUri(URI.create("https://idp.example.com/auth?request_uri=urn:example:par"))
+        .build();
+  }
+}
@@ -0,0 +1,148 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.oviva.ehealthid.auth.IdTokenJWS;
+import com.oviva.ehealthid.auth.IdTokenJWS.IdToken;
+import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
+import com.oviva.ehealthid.relyingparty.util.InProcessRedis;
+import com.oviva.ehealthid.relyingparty.util.RedisKeyValueStore;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class KeyValueCodeRepoTest {
+
+  private static final URI REDIRECT_URI = URI.create("https://example.com/callback");
+
+  private InProcessRedis redis;
+  private RedisKeyValueStore store;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    redis = new InProcessRedis();
+    store = new RedisKeyValueStore(redis.uri(), Duration.ofSeconds(2));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    store.close();
+    redis.close();
+  }
+
+  @Test
+  void saveAndRemove() throws JOSEException {
+
+    var sut = new KeyValueCodeRepo(store, Duration.ofMinutes(5));
+
+    var issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    var idToken = idToken("tobias");
+    var code =
+        new Code("1234", issuedAt, issuedAt.plusSeconds(60), REDIRECT_URI, "nonce", "app", idToken);
+
+    // when
+    sut.save(code);
+    var got = sut.remove("1234").orElseThrow();
+
+    // then
+    assertEquals(code.code(), got.code());
+    assertEquals(code.issuedAt(), got.issuedAt());
+    assertEquals(code.expiresAt(), got.expiresAt());
+    assertEquals(REDIRECT_URI, got.redirectUri());
+    assertEquals("nonce", got.nonce());
+    assertEquals("app", got.clientId());
+    assertEquals(idToken.jws().serialize(), got.federatedIdToken().jws().serialize());
+    assertEquals("tobias", got.federatedIdToken().body().sub());
+  }
+
+  @Test
+  void remove_nonExisting() {
+
+    var sut = new KeyValueCodeRepo(store, Duration.ofMinutes(5));
+
+    // when
+    var got = sut.remove("x");
+
+    // then
+    assertTrue(got.isEmpty());
+  }
+
+  @Test
+  void remove_onceAcrossInstances() throws Exception {
+
+    var code = new Code("4929", null, null, REDIRECT_URI, null, "app", null);
+    new KeyValueCodeRepo(store, Duration.ofMinutes(5)).save(code);
+
+    // when
+    var results = new ArrayList<Future<Optional<Code>>>();
+    try (var executor = Executors.newFixedThreadPool(8)) {
+      for (var i = 0; i < 8; i++) {
+        // each one like another instance, with its own connections
+        Callable<Optional<Code>> redeem =
+            () -> {
+              try (var instanceStore = new RedisKeyValueStore(redis.uri(), Duration.ofSeconds(2))) {
+                return new KeyValueCodeRepo(instanceStore, Duration.ofMinutes(5)).remove("4929");
+              }
+            };
+        results.add(executor.submit(redeem));
+      }
+    }
+
+    // then
+    var redeemed = 0;
+    for (var result : results) {
+      redeemed += result.get().isPresent() ? 1 : 0;
+    }
+    assertEquals(1, redeemed);
+  }
+
+  private static IdTokenJWS idToken(String sub) throws JOSEException {
+    var key = new ECKeyGenerator(Curve.P_256).generate();
+    var jws =
+        new JWSObject(
+            new JWSHeader(JWSAlgorithm.ES256),
+            new Payload(Map.of("sub", sub, "iss", "https://idp.example.com")));
+    jws.sign(new ECDSASigner(key));
+    return new IdTokenJWS(
+        jws,
+        new IdToken(
+            "https://idp.example.com",
+            sub,
+            null,
+            0,
+            0,
+            0,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null));
+  }
+}
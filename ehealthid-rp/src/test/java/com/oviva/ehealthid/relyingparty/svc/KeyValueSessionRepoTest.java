@@ -0,0 +1,108 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
+import com.oviva.ehealthid.relyingparty.util.InProcessRedis;
+import com.oviva.ehealthid.relyingparty.util.RedisKeyValueStore;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class KeyValueSessionRepoTest {
+
+  private static final Duration TTL = Duration.ofMinutes(5);
+
+  private InProcessRedis redis;
+  private RedisKeyValueStore store;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    redis = new InProcessRedis();
+    store = new RedisKeyValueStore(redis.uri(), Duration.ofSeconds(2));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    store.close();
+    redis.close();
+  }
+
+  @Test
+  void save_noId() {
+    var sut = new KeyValueSessionRepo(store, TTL);
+    var session = new Session(null, null, null, null, null, null, null, null, null);
+
+    assertThrows(IllegalArgumentException.class, () -> sut.save(session));
+  }
+
+  @Test
+  void saveAndLoad_onAnotherInstance() {
+
+    var session =
+        Session.create()
+            .id("mySessionId")
+            .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+            .state("myState")
+            .nonce("myNonce")
+            .redirectUri(URI.create("https://example.com/callback"))
+            .clientId("app")
+            .codeVerifier("myVerifier")
+            .selectedIdp("https://idp.example.com")
+            .idpRedirectUri(URI.create("https://idp.example.com/auth?request_uri=urn:example:par"))
+            .build();
+
+    new KeyValueSessionRepo(store, TTL).save(session);
+
+    try (var otherStore = new RedisKeyValueStore(redis.uri(), Duration.ofSeconds(2))) {
+      var sut = new KeyValueSessionRepo(otherStore, TTL);
+
+      // when
+      var got = sut.load("mySessionId");
+
+      // then
+      assertEquals(session, got);
+    }
+  }
+
+  @Test
+  void load_expired() {
+
+    var sut = new KeyValueSessionRepo(store, TTL);
+
+    var session =
+        Session.create()
+            .id("mySessionId")
+            .createdAt(Instant.now().minus(TTL.plusSeconds(1)))
+            .build();
+
+    // when
+    sut.save(session);
+
+    // then
+    assertNull(sut.load("mySessionId"));
+    assertFalse(redis.contains("ehealthid:session:mySessionId"));
+  }
+
+  @Test
+  void remove() {
+
+    var sut = new KeyValueSessionRepo(store, TTL);
+
+    sut.save(Session.create().id("mySessionId").state("myState").build());
+
+    // when
+    var got1 = sut.remove("mySessionId");
+    var got2 = sut.remove("mySessionId");
+
+    // then
+    assertNotNull(got1);
+    assertEquals("myState", got1.state());
+    assertNull(got2);
+  }
+}
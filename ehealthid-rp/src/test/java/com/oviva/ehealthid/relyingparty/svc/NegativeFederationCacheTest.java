@@ -0,0 +1,142 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.oviva.ehealthid.fedclient.FederationException;
+import com.oviva.ehealthid.fedclient.api.HttpException;
+import com.oviva.ehealthid.fedclient.api.InMemoryCacheImpl;
+import com.oviva.ehealthid.fedclient.api.TemporalValid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class NegativeFederationCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T13:11:00.000Z");
+  private static final Duration TTL = Duration.ofSeconds(5);
+  private static final String KEY = "https://idp.example.com/.well-known/openid-federation";
+
+  @Test
+  void computeIfAbsentAsync_failsRightAwayAfterFailure() {
+
+    var clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW);
+
+    var meterRegistry = new SimpleMeterRegistry();
+    var sut = newCache(clock, meterRegistry);
+
+    var loads = new AtomicInteger();
+    var failure = new HttpException("GET", URI.create(KEY), "connect timed out", null);
+
+    var first =
+        sut.computeIfAbsentAsync(
+            KEY,
+            k -> {
+              loads.incrementAndGet();
+              return CompletableFuture.failedFuture(failure);
+            });
+    var e1 = assertThrows(CompletionException.class, first::join);
+    assertSame(failure, e1.getCause());
+
+    // when
+    var second = sut.computeIfAbsentAsync(KEY, k -> fail());
+    var third = sut.computeIfAbsentAsync(KEY, k -> fail());
+
+    // then
+    var e2 = assertThrows(CompletionException.class, second::join);
+    var e3 = assertThrows(CompletionException.class, third::join);
+    assertInstanceOf(FederationException.class, e2.getCause());
+    assertNotSame(e2.getCause(), e3.getCause());
+    assertEquals(1, loads.get());
+
+    var hits =
+        meterRegistry
+            .get("ehealthid.federation.cache.negative.hits")
+            .tag("cache", "entityStatementCache")
+            .counter();
+    assertEquals(2, hits.count());
+  }
+
+  @Test
+  void computeIfAbsentAsync_loadsAgainAfterTtl() {
+
+    var clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW, NOW.plus(TTL));
+
+    var sut = newCache(clock, new SimpleMeterRegistry());
+
+    sut.computeIfAbsentAsync(KEY, k -> CompletableFuture.failedFuture(new IllegalStateException()));
+
+    // when
+    var got =
+        sut.computeIfAbsentAsync(
+            KEY, k -> CompletableFuture.completedFuture(new Entry(NOW.plusSeconds(60))));
+
+    // then
+    assertNotNull(got.join());
+  }
+
+  @Test
+  void computeIfAbsent_failsRightAwayAfterFailure() {
+
+    var clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW);
+
+    var sut = newCache(clock, new SimpleMeterRegistry());
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            sut.computeIfAbsent(
+                KEY,
+                k -> {
+                  throw new IllegalStateException("remote down");
+                }));
+
+    // when & then
+    assertThrows(FederationException.class, () -> sut.computeIfAbsent(KEY, k -> fail()));
+  }
+
+  @Test
+  void put_forgetsFailure() {
+
+    var clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW);
+
+    var sut = newCache(clock, new SimpleMeterRegistry());
+
+    sut.computeIfAbsentAsync(KEY, k -> CompletableFuture.failedFuture(new IllegalStateException()));
+
+    // when
+    var entry = new Entry(NOW.plusSeconds(60));
+    sut.put(KEY, entry);
+
+    // then
+    assertSame(entry, sut.computeIfAbsentAsync(KEY, k -> fail()).join());
+  }
+
+  private NegativeFederationCache<Entry> newCache(Clock clock, SimpleMeterRegistry meterRegistry) {
+    return new NegativeFederationCache<>(
+        new InMemoryCacheImpl<>(clock, Duration.ZERO),
+        "entityStatementCache",
+        TTL,
+        clock,
+        meterRegistry);
+  }
+
+  record Entry(Instant expiresAt) implements TemporalValid {
+
+    @Override
+    public boolean isValidAt(Instant pointInTime) {
+      return pointInTime.isBefore(expiresAt);
+    }
+  }
+}
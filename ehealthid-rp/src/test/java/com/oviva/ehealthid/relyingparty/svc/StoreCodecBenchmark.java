@@ -0,0 +1,253 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.oviva.ehealthid.auth.IdTokenJWS;
+import com.oviva.ehealthid.auth.IdTokenJWS.IdToken;
+import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
+import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
+import com.oviva.ehealthid.util.JsonCodec;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the binary {@link StoreCodec} against Jackson via {@link JsonCodec}, the format of the
+ * first shared store.
+ *
+ * <p>Run with the GC profiler to see the bytes allocated per operation ({@code
+ * gc.alloc.rate.norm}), e.g. by running {@link #main(String[])} from the IDE. The sizes of the
+ * encoded values are printed first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreCodecBenchmark {
+
+  private Session session;
+  private Code code;
+
+  private byte[] binarySession;
+  private byte[] jsonSession;
+  private byte[] binaryCode;
+  private byte[] jsonCode;
+
+  public static void main(String[] args) throws RunnerException, JOSEException {
+    var sizes = new StoreCodecBenchmark();
+    sizes.setUp();
+    System.out.printf(
+        "session: %d bytes binary, %d bytes JSON%ncode: %d bytes binary, %d bytes JSON%n",
+        sizes.binarySession.length,
+        sizes.jsonSession.length,
+        sizes.binaryCode.length,
+        sizes.jsonCode.length);
+
+    var opts =
+        new OptionsBuilder()
+            .include(StoreCodecBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+    new Runner(opts).run();
+  }
+
+  @Setup
+  public void setUp() throws JOSEException {
+
+    // a session just before the callback, the largest it gets
+    session =
+        Session.create()
+            .state("b1f0c4a7-2f4e-4e0e-9a43-5f7d1b3c2a10")
+            .nonce("20e5ed8b-f96b-48de-ae73-4460bcfc35a1")
+            .redirectUri(URI.create("https://app.example.com/auth/callback"))
+            .clientId("https://app.example.com")
+            .codeVerifier("dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk")
+            .selectedIdp("https://idp.tk.example.com")
+            .idpRedirectUri(
+                URI.create(
+                    "https://idp.tk.example.com/auth?client_id=https%3A%2F%2Fapp.example.com"
+                        + "&request_uri=urn%3Aietf%3Aparams%3Aoauth%3Arequest_uri%3A8f3bd1c2"))
+            .build();
+
+    var now = Instant.now();
+    code =
+        new Code(
+            "6238e4504332468aa0c12e300787fded",
+            now,
+            now.plusSeconds(60),
+            URI.create("https://app.example.com/auth/callback"),
+            "20e5ed8b-f96b-48de-ae73-4460bcfc35a1",
+            "https://app.example.com",
+            idToken());
+
+    binarySession = StoreCodec.encodeSession(session);
+    jsonSession = encodeJsonSession();
+    binaryCode = StoreCodec.encodeCode(code);
+    jsonCode = encodeJsonCode();
+  }
+
+  @Benchmark
+  public byte[] encodeSessionBinary() {
+    return StoreCodec.encodeSession(session);
+  }
+
+  @Benchmark
+  public byte[] encodeSessionJson() {
+    return encodeJsonSession();
+  }
+
+  @Benchmark
+  public Session decodeSessionBinary() {
+    return StoreCodec.decodeSession(binarySession);
+  }
+
+  @Benchmark
+  public Session decodeSessionJson() {
+    var stored = JsonCodec.readValue(jsonSession, JsonSession.class);
+    return new Session(
+        stored.id(),
+        Instant.ofEpochMilli(stored.createdAt()),
+        stored.state(),
+        stored.nonce(),
+        stored.redirectUri(),
+        stored.clientId(),
+        stored.codeVerifier(),
+        stored.selectedIdp(),
+        stored.idpRedirectUri());
+  }
+
+  @Benchmark
+  public byte[] encodeCodeBinary() {
+    return StoreCodec.encodeCode(code);
+  }
+
+  @Benchmark
+  public byte[] encodeCodeJson() {
+    return encodeJsonCode();
+  }
+
+  @Benchmark
+  public Code decodeCodeBinary() {
+    return StoreCodec.decodeCode(binaryCode);
+  }
+
+  @Benchmark
+  public Code decodeCodeJson() throws ParseException {
+    var stored = JsonCodec.readValue(jsonCode, JsonCode.class);
+    var jws = JWSObject.parse(stored.federatedIdToken());
+    var body = JsonCodec.readValue(jws.getPayload().toBytes(), IdToken.class);
+    return new Code(
+        stored.code(),
+        Instant.ofEpochMilli(stored.issuedAt()),
+        Instant.ofEpochMilli(stored.expiresAt()),
+        stored.redirectUri(),
+        stored.nonce(),
+        stored.clientId(),
+        new IdTokenJWS(jws, body));
+  }
+
+  private byte[] encodeJsonSession() {
+    var stored =
+        new JsonSession(
+            session.id(),
+            session.createdAt().toEpochMilli(),
+            session.state(),
+            session.nonce(),
+            session.redirectUri(),
+            session.clientId(),
+            session.codeVerifier(),
+            session.selectedIdp(),
+            session.idpRedirectUri());
+    return JsonCodec.writeValueAsString(stored).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] encodeJsonCode() {
+    var stored =
+        new JsonCode(
+            code.code(),
+            code.issuedAt().toEpochMilli(),
+            code.expiresAt().toEpochMilli(),
+            code.redirectUri(),
+            code.nonce(),
+            code.clientId(),
+            code.federatedIdToken().jws().serialize());
+    return JsonCodec.writeValueAsString(stored).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static IdTokenJWS idToken() throws JOSEException {
+    var body =
+        new IdToken(
+            "https://idp.tk.example.com",
+            "X110411675-a6f1d4e8b3c2",
+            "https://app.example.com",
+            1700000000,
+            1700000300,
+            1700000000,
+            "20e5ed8b-f96b-48de-ae73-4460bcfc35a1",
+            "gematik-ehealth-loa-high",
+            List.of("urn:telematik:auth:eGK"),
+            null,
+            "1970-01-01",
+            "54",
+            "Erika Mustermann",
+            "Erika",
+            "W",
+            "erika.mustermann@example.com",
+            "1.2.276.0.76.4.49",
+            "X110411675",
+            "101575519");
+
+    var key = new ECKeyGenerator(Curve.P_256).generate();
+    var jws =
+        new JWSObject(
+            new JWSHeader(JWSAlgorithm.ES256), new Payload(JsonCodec.writeValueAsString(body)));
+    jws.sign(new ECDSASigner(key));
+    return new IdTokenJWS(jws, body);
+  }
+
+  record JsonSession(
+      @JsonProperty("id") String id,
+      @JsonProperty("created_at") long createdAt,
+      @JsonProperty("state") String state,
+      @JsonProperty("nonce") String nonce,
+      @JsonProperty("redirect_uri") URI redirectUri,
+      @JsonProperty("client_id") String clientId,
+      @JsonProperty("code_verifier") String codeVerifier,
+      @JsonProperty("selected_idp") String selectedIdp,
+      @JsonProperty("idp_redirect_uri") URI idpRedirectUri) {}
+
+  record JsonCode(
+      @JsonProperty("code") String code,
+      @JsonProperty("issued_at") long issuedAt,
+      @JsonProperty("expires_at") long expiresAt,
+      @JsonProperty("redirect_uri") URI redirectUri,
+      @JsonProperty("nonce") String nonce,
+      @JsonProperty("client_id") String clientId,
+      @JsonProperty("federated_id_token") String federatedIdToken) {}
+}
@@ -0,0 +1,221 @@
+package com.oviva.ehealthid.relyingparty.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.oviva.ehealthid.auth.IdTokenJWS;
+import com.oviva.ehealthid.auth.IdTokenJWS.IdToken;
+import com.oviva.ehealthid.relyingparty.svc.SessionRepo.Session;
+import com.oviva.ehealthid.relyingparty.svc.TokenIssuer.Code;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class StoreCodecTest {
+
+  private static final URI REDIRECT_URI = URI.create("https://example.com/callback");
+
+  @Test
+  void session_roundTrip() {
+
+    var session =
+        Session.create()
+            .id("mySessionId")
+            .createdAt(Instant.ofEpochSecond(1700000000, 123456789))
+            .state("myState")
+            .nonce("myNonce")
+            .redirectUri(REDIRECT_URI)
+            .clientId("app")
+            .codeVerifier("myVerifier")
+            .selectedIdp("https://idp.example.com")
+            .idpRedirectUri(URI.create("https://idp.example.com/auth?request_uri=urn:example:par"))
+            .build();
+
+    // when
+    var got = StoreCodec.decodeSession(StoreCodec.encodeSession(session));
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void session_roundTripNulls() {
+
+    var session = new Session(null, null, null, null, null, null, null, null, null);
+
+    // when
+    var got = StoreCodec.decodeSession(StoreCodec.encodeSession(session));
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void session_roundTripNonAscii() {
+
+    var session = Session.create().id("s").state("ünïcødé 😀".repeat(20)).build();
+
+    // when
+    var got = StoreCodec.decodeSession(StoreCodec.encodeSession(session));
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void code_roundTrip() throws JOSEException {
+
+    var idToken = idToken("tobias");
+    var code =
+        new Code(
+            "1234",
+            Instant.ofEpochSecond(1700000000, 1),
+            Instant.ofEpochSecond(1700000060),
+            REDIRECT_URI,
+            "nonce",
+            "app",
+            idToken);
+
+    // when
+    var got = StoreCodec.decodeCode(StoreCodec.encodeCode(code));
+
+    // then
+    assertEquals(code.code(), got.code());
+    assertEquals(code.issuedAt(), got.issuedAt());
+    assertEquals(code.expiresAt(), got.expiresAt());
+    assertEquals(REDIRECT_URI, got.redirectUri());
+    assertEquals("nonce", got.nonce());
+    assertEquals("app", got.clientId());
+    assertEquals(idToken.jws().serialize(), got.federatedIdToken().jws().serialize());
+    assertEquals(idToken.body(), got.federatedIdToken().body());
+  }
+
+  @Test
+  void code_roundTripNulls() {
+
+    var code = new Code(null, null, null, null, null, null, null);
+
+    // when
+    var got = StoreCodec.decodeCode(StoreCodec.encodeCode(code));
+
+    // then
+    assertEquals(code, got);
+  }
+
+  @Test
+  void decodeSession_fromNewerVersion() {
+
+    var session = Session.create().id("mySessionId").state("myState").build();
+    var encoded = StoreCodec.encodeSession(session);
+
+    // a later version appended two fields
+    var newer = Arrays.copyOf(encoded, encoded.length + 4);
+    newer[2] += 2;
+    newer[encoded.length] = 3;
+    newer[encoded.length + 1] = 'a';
+    newer[encoded.length + 2] = 'b';
+    newer[encoded.length + 3] = 0;
+
+    // when
+    var got = StoreCodec.decodeSession(newer);
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void decodeSession_fromOlderVersion() {
+
+    // only id and creation time, no fields after those
+    var createdAt = Instant.ofEpochSecond(1700000000);
+    var session = Session.create().id("mySessionId").createdAt(createdAt).build();
+    var encoded = StoreCodec.encodeSession(session);
+
+    var older = Arrays.copyOf(encoded, 3 + 1 + "mySessionId".length() + 1 + 12);
+    older[2] = 2;
+
+    // when
+    var got = StoreCodec.decodeSession(older);
+
+    // then
+    assertEquals(session, got);
+  }
+
+  @Test
+  void decodeSession_otherType() {
+
+    var encoded = StoreCodec.encodeCode(new Code("1234", null, null, null, null, null, null));
+
+    // when & then
+    assertThrows(IllegalArgumentException.class, () -> StoreCodec.decodeSession(encoded));
+  }
+
+  @Test
+  void decodeSession_otherVersion() {
+
+    var encoded = StoreCodec.encodeSession(Session.create().build());
+    encoded[1] = 2;
+
+    // when & then
+    assertThrows(IllegalArgumentException.class, () -> StoreCodec.decodeSession(encoded));
+  }
+
+  @Test
+  void decodeSession_truncated() {
+
+    var encoded = StoreCodec.encodeSession(Session.create().state("myState").build());
+    var truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+    // when & then
+    assertThrows(IllegalArgumentException.class, () -> StoreCodec.decodeSession(truncated));
+  }
+
+  @Test
+  void decodeSession_json() {
+
+    var json = "{\"id\":\"mySessionId\"}".getBytes();
+
+    // when & then
+    assertThrows(IllegalArgumentException.class, () -> StoreCodec.decodeSession(json));
+  }
+
+  private static IdTokenJWS idToken(String sub) throws JOSEException {
+    var key = new ECKeyGenerator(Curve.P_256).generate();
+    var jws =
+        new JWSObject(
+            new JWSHeader(JWSAlgorithm.ES256),
+            new Payload(Map.of("sub", sub, "iss", "https://idp.example.com")));
+    jws.sign(new ECDSASigner(key));
+    return new IdTokenJWS(
+        jws,
+        new IdToken(
+            "https://idp.example.com",
+            sub,
+            null,
+            0,
+            0,
+            0,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null));
+  }
+}
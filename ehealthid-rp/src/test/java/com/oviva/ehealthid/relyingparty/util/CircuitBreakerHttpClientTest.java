@@ -0,0 +1,188 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.oviva.ehealthid.fedclient.api.HttpClient;
+import com.oviva.ehealthid.fedclient.api.HttpClient.Request;
+import com.oviva.ehealthid.fedclient.api.HttpClient.Response;
+import com.oviva.ehealthid.fedclient.api.HttpException;
+import com.oviva.ehealthid.relyingparty.util.CircuitBreakerHttpClient.Policy;
+import com.oviva.ehealthid.relyingparty.util.CircuitBreakerHttpClient.State;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerHttpClientTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T13:11:00.000Z");
+  private static final URI IDP = URI.create("https://idp.example.com/openid-federation");
+  private static final Policy POLICY = new Policy(2, Duration.ofSeconds(30));
+
+  private final AtomicReference<Instant> now = new AtomicReference<>(NOW);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private HttpClient delegate;
+  private CircuitBreakerHttpClient sut;
+
+  @BeforeEach
+  void setUp() {
+    var clock = mock(Clock.class);
+    when(clock.instant()).thenAnswer(i -> now.get());
+
+    delegate = mock(HttpClient.class);
+    sut = new CircuitBreakerHttpClient(delegate, "test", POLICY, clock, meterRegistry);
+  }
+
+  @Test
+  void passesThrough() {
+
+    var res = new Response(200, List.of(), new byte[0]);
+    when(delegate.call(any())).thenReturn(res);
+
+    // when
+    var got = sut.call(get(IDP));
+
+    // then
+    assertSame(res, got);
+    assertEquals(State.CLOSED.ordinal(), stateGauge());
+  }
+
+  @Test
+  void opensAfterConsecutiveFailures() {
+
+    when(delegate.call(any())).thenReturn(new Response(503, List.of(), new byte[0]));
+
+    sut.call(post(IDP));
+    sut.call(post(IDP));
+
+    // when
+    var e = assertThrows(HttpException.class, () -> sut.call(post(IDP)));
+
+    // then
+    assertTrue(e.getMessage().contains("circuit open"));
+    verify(delegate, times(2)).call(any());
+    assertEquals(State.OPEN.ordinal(), stateGauge());
+  }
+
+  @Test
+  void probesAndCloses() {
+
+    when(delegate.call(any()))
+        .thenReturn(new Response(503, List.of(), new byte[0]))
+        .thenReturn(new Response(503, List.of(), new byte[0]))
+        .thenReturn(new Response(201, List.of(), new byte[0]));
+
+    sut.call(post(IDP));
+    sut.call(post(IDP));
+
+    // when
+    now.set(NOW.plusSeconds(31));
+    var res = sut.call(post(IDP));
+
+    // then
+    assertEquals(201, res.status());
+    assertEquals(State.CLOSED.ordinal(), stateGauge());
+  }
+
+  @Test
+  void failedProbeReopens() {
+
+    when(delegate.call(any())).thenReturn(new Response(503, List.of(), new byte[0]));
+
+    sut.call(post(IDP));
+    sut.call(post(IDP));
+
+    now.set(NOW.plusSeconds(31));
+    sut.call(post(IDP));
+
+    // when
+    assertThrows(HttpException.class, () -> sut.call(post(IDP)));
+
+    // then
+    verify(delegate, times(3)).call(any());
+    assertEquals(State.OPEN.ordinal(), stateGauge());
+  }
+
+  @Test
+  void breakersArePerHost() {
+
+    var other = URI.create("https://other.example.com/par");
+    when(delegate.call(any())).thenReturn(new Response(503, List.of(), new byte[0]));
+
+    sut.call(post(IDP));
+    sut.call(post(IDP));
+
+    // when
+    var res = sut.call(post(other));
+
+    // then
+    assertEquals(503, res.status());
+  }
+
+  @Test
+  void evictsClosedCircuits() {
+
+    when(delegate.call(any())).thenReturn(new Response(503, List.of(), new byte[0]));
+
+    sut.call(post(IDP));
+    sut.call(post(IDP));
+
+    for (int i = 0; i < CircuitBreakerHttpClient.MAX_HOSTS; i++) {
+      when(delegate.call(any())).thenReturn(new Response(200, List.of(), new byte[0]));
+      sut.call(post(URI.create("https://idp%d.example.com/par".formatted(i))));
+    }
+
+    // when
+    var gauges = meterRegistry.find("http.client.circuit.state").gauges();
+
+    // then
+    assertTrue(gauges.size() <= CircuitBreakerHttpClient.MAX_HOSTS);
+    assertEquals(State.OPEN.ordinal(), stateGauge());
+    assertThrows(HttpException.class, () -> sut.call(post(IDP)));
+  }
+
+  @Test
+  void opensAfterConsecutiveFailuresAsync() {
+
+    when(delegate.callAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(new Response(503, List.of(), new byte[0])));
+
+    sut.callAsync(post(IDP)).join();
+    sut.callAsync(post(IDP)).join();
+
+    // when
+    var res = sut.callAsync(post(IDP));
+
+    // then
+    var e = assertThrows(CompletionException.class, res::join);
+    assertTrue(e.getCause().getMessage().contains("circuit open"));
+    verify(delegate, times(2)).callAsync(any());
+    assertEquals(State.OPEN.ordinal(), stateGauge());
+  }
+
+  private double stateGauge() {
+    var gauge = meterRegistry.get("http.client.circuit.state").tag("host", IDP.getHost()).gauge();
+    return gauge.value();
+  }
+
+  private Request get(URI uri) {
+    return new Request(uri, "GET", List.of(), null);
+  }
+
+  private Request post(URI uri) {
+    return new Request(uri, "POST", List.of(), new byte[0]);
+  }
+}
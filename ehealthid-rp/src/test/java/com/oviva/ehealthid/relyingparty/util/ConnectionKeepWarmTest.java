@@ -0,0 +1,89 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class ConnectionKeepWarmTest {
+
+  private static final URI HOT_PAR = URI.create("https://hot.example.com/auth/par");
+  private static final URI HOT_TOKEN = URI.create("https://hot.example.com/auth/token");
+  private static final URI COLD_PAR = URI.create("https://cold.example.com/auth/par");
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private HttpClient httpClient;
+  private ConnectionKeepWarm sut;
+
+  @BeforeEach
+  void setUp() {
+    httpClient = mock(HttpClient.class);
+    sut = new ConnectionKeepWarm(httpClient, "openid", 1, Duration.ofSeconds(5), meterRegistry);
+  }
+
+  @Test
+  void warmUp_mostUsed() {
+
+    HttpResponse<Object> res = mock(HttpResponse.class);
+    when(httpClient.sendAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(res));
+
+    sut.onOperation("pushed_authorization_request", HOT_PAR, 201, null, Duration.ZERO);
+    sut.onOperation("token", HOT_TOKEN, 200, null, Duration.ZERO);
+    sut.onOperation("pushed_authorization_request", COLD_PAR, 201, null, Duration.ZERO);
+
+    // when
+    sut.warmUp();
+
+    // then
+    var req = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient).sendAsync(req.capture(), any());
+
+    assertEquals("HEAD", req.getValue().method());
+    assertEquals(HOT_TOKEN, req.getValue().uri());
+    assertEquals(1.0, meterRegistry.get("http.client.keepwarm.endpoints").gauge().value());
+    assertEquals(1.0, meterRegistry.get("http.client.keepwarm.requests").counter().count());
+  }
+
+  @Test
+  void warmUp_onlyOpenIdEndpoints() {
+
+    sut.onOperation("entity_configuration", HOT_PAR, 200, null, Duration.ZERO);
+
+    // when
+    sut.warmUp();
+
+    // then
+    verify(httpClient, never()).sendAsync(any(), any());
+  }
+
+  @Test
+  void warmUp_failed() {
+
+    when(httpClient.sendAsync(any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(new IOException("connection refused")));
+
+    sut.onOperation("pushed_authorization_request", HOT_PAR, 201, null, Duration.ZERO);
+
+    // when
+    sut.warmUp();
+
+    // then
+    assertEquals(0.0, meterRegistry.get("http.client.keepwarm.endpoints").gauge().value());
+    assertEquals(1.0, meterRegistry.get("http.client.keepwarm.failures").counter().count());
+  }
+}
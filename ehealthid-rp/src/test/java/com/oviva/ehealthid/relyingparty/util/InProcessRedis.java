@@ -0,0 +1,229 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for a Redis server, speaking just enough of the protocol for {@link
+ * RedisKeyValueStore}: {@code AUTH}, {@code PING}, {@code SET} with {@code PX}, {@code GET} and
+ * {@code GETDEL}.
+ */
+public class InProcessRedis implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+  private final Thread acceptor;
+  private final String password;
+  private final Map<String, Entry> data = new ConcurrentHashMap<>();
+  private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+  private final Map<String, AtomicInteger> executed = new ConcurrentHashMap<>();
+  private final AtomicInteger maxClients = new AtomicInteger();
+  private volatile Duration replyDelay = Duration.ZERO;
+
+  public InProcessRedis() throws IOException {
+    this(null);
+  }
+
+  /**
+   * @param password the password clients must authenticate with, {@code null} if none
+   */
+  public InProcessRedis(String password) throws IOException {
+    this.password = password;
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.acceptor = Thread.ofVirtual().start(this::accept);
+  }
+
+  public URI uri() {
+    var auth = password != null ? ":" + password + "@" : "";
+    return URI.create("redis://%s127.0.0.1:%d".formatted(auth, serverSocket.getLocalPort()));
+  }
+
+  public boolean contains(String key) {
+    var entry = data.get(key);
+    return entry != null && !entry.isExpired();
+  }
+
+  /** how often a command was executed, e.g. {@code GETDEL} */
+  public int executed(String command) {
+    var count = executed.get(command);
+    return count == null ? 0 : count.get();
+  }
+
+  /** the most client connections open at once */
+  public int maxClients() {
+    return maxClients.get();
+  }
+
+  /** executes commands right away but holds back the replies, like a slow network */
+  public void delayReplies(Duration delay) {
+    this.replyDelay = delay;
+  }
+
+  /** closes all client connections, like a server timing out idle connections */
+  public void dropConnections() throws IOException {
+    for (var client : clients) {
+      client.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+
+    // a connection accepted while closing must not outlive the server
+    try {
+      acceptor.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    dropConnections();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        var client = serverSocket.accept();
+        clients.add(client);
+        maxClients.accumulateAndGet(clients.size(), Math::max);
+        Thread.ofVirtual().start(() -> serve(client));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket client) {
+    try (client) {
+      var in = new BufferedInputStream(client.getInputStream());
+      var out = new BufferedOutputStream(client.getOutputStream());
+      var authenticated = password == null;
+      List<byte[]> command;
+      while ((command = readCommand(in)) != null) {
+        var name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+        if ("AUTH".equals(name)) {
+          authenticated = password.equals(string(command.get(command.size() - 1)));
+          writeLine(out, authenticated ? "+OK" : "-WRONGPASS invalid password");
+        } else if (!authenticated) {
+          writeLine(out, "-NOAUTH Authentication required.");
+        } else {
+          execute(name, command, out);
+          executed.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+          delay();
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      // client gone
+    } finally {
+      clients.remove(client);
+    }
+  }
+
+  private void delay() throws IOException {
+    try {
+      Thread.sleep(replyDelay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  private void execute(String name, List<byte[]> command, OutputStream out) throws IOException {
+    switch (name) {
+      case "PING" -> writeLine(out, "+PONG");
+      case "SET" -> {
+        var expiresAt = Long.MAX_VALUE;
+        if (command.size() == 5 && "PX".equalsIgnoreCase(string(command.get(3)))) {
+          var px = Long.parseLong(string(command.get(4)));
+          if (px <= 0) {
+            writeLine(out, "-ERR invalid expire time in 'set' command");
+            return;
+          }
+          expiresAt = System.currentTimeMillis() + px;
+        }
+        data.put(string(command.get(1)), new Entry(command.get(2), expiresAt));
+        writeLine(out, "+OK");
+      }
+      case "GET" -> writeBulk(out, value(data.get(string(command.get(1)))));
+      case "GETDEL" -> writeBulk(out, value(data.remove(string(command.get(1)))));
+      default -> writeLine(out, "-ERR unknown command '%s'".formatted(name));
+    }
+  }
+
+  private static byte[] value(Entry entry) {
+    return entry == null || entry.isExpired() ? null : entry.value();
+  }
+
+  private static List<byte[]> readCommand(InputStream in) throws IOException {
+    var type = in.read();
+    if (type == -1) {
+      return null;
+    }
+    if (type != '*') {
+      throw new IOException("expected an array");
+    }
+    var length = Integer.parseInt(readLine(in));
+    var command = new ArrayList<byte[]>(length);
+    for (var i = 0; i < length; i++) {
+      if (in.read() != '$') {
+        throw new IOException("expected a bulk string");
+      }
+      command.add(in.readNBytes(Integer.parseInt(readLine(in))));
+      in.readNBytes(2);
+    }
+    return command;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    var line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\r') {
+      if (b == -1) {
+        throw new IOException("truncated command");
+      }
+      line.write(b);
+    }
+    in.read();
+    return line.toString(StandardCharsets.US_ASCII);
+  }
+
+  private static void writeLine(OutputStream out, String line) throws IOException {
+    out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+    if (value == null) {
+      writeLine(out, "$-1");
+      return;
+    }
+    writeLine(out, "$" + value.length);
+    out.write(value);
+    out.write(new byte[] {'\r', '\n'});
+  }
+
+  private static String string(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private record Entry(byte[] value, long expiresAt) {
+
+    boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
+}
@@ -14,6 +14,7 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.LoggerFactory;
@@ -84,6 +85,37 @@ class LoggingHttpClientTest {
     assertResponseLog(responseLog, res);
   }
 
+  @Test
+  void logCallAsync() {
+
+    var body = "Hello World!";
+    var res =
+        new HttpClient.Response(
+            200,
+            List.of(new HttpClient.Header("content-type", "text/plain")),
+            body.getBytes(StandardCharsets.UTF_8));
+
+    var delegate = mock(HttpClient.class);
+    when(delegate.callAsync(any())).thenReturn(CompletableFuture.completedFuture(res));
+
+    var sut = new LoggingHttpClient(delegate);
+
+    logger.setLevel(Level.DEBUG);
+
+    // when
+    var got =
+        sut.callAsync(
+            new HttpClient.Request(
+                URI.create("http://localhost:1234/test"), "GET", List.of(), null));
+
+    // then
+    assertSame(res, got.join());
+    assertEquals(2, logs.list.size());
+
+    assertRequestLog(logs.list.get(0));
+    assertResponseLog(logs.list.get(1), res);
+  }
+
   private void assertRequestLog(ILoggingEvent log) {
     assertEquals(Level.DEBUG, log.getLevel());
     assertEquals("request: GET http://localhost:1234/test", log.getMessage());
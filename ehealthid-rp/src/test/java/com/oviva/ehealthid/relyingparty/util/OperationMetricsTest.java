@@ -0,0 +1,67 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.oviva.ehealthid.fedclient.api.HttpException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class OperationMetricsTest {
+
+  private static final URI IDP =
+      URI.create("https://idp.example.com/.well-known/openid-federation");
+
+  @Test
+  void onOperation() {
+
+    var meterRegistry = new SimpleMeterRegistry();
+    var sut = new OperationMetrics("federation", meterRegistry);
+
+    // when
+    sut.onOperation("entity_configuration", IDP, 200, null, Duration.ofMillis(40));
+    sut.onOperation("entity_configuration", IDP, 200, null, Duration.ofMillis(60));
+    sut.onOperation(
+        "entity_configuration",
+        IDP,
+        0,
+        new HttpException("GET", IDP, "connect timed out", null),
+        Duration.ofMillis(10));
+
+    // then
+    var success =
+        meterRegistry
+            .get("ehealthid.client.operations")
+            .tag("client", "federation")
+            .tag("operation", "entity_configuration")
+            .tag("host", "idp.example.com")
+            .tag("status", "2xx")
+            .tag("outcome", "success")
+            .timer();
+    assertEquals(2, success.count());
+    assertEquals(100, success.totalTime(TimeUnit.MILLISECONDS));
+
+    var buckets = success.takeSnapshot().histogramCounts();
+    assertEquals(6, buckets.length);
+    assertEquals(100, buckets[0].bucket(TimeUnit.MILLISECONDS));
+    assertEquals(2, buckets[0].count());
+
+    var error =
+        meterRegistry
+            .get("ehealthid.client.operations")
+            .tag("status", "none")
+            .tag("outcome", "error")
+            .timer();
+    assertEquals(1, error.count());
+  }
+
+  @ParameterizedTest
+  @CsvSource({"0,none", "200,2xx", "304,3xx", "404,4xx", "503,5xx", "999,none"})
+  void statusClass(int status, String expected) {
+    assertEquals(expected, OperationMetrics.statusClass(status));
+  }
+}
@@ -0,0 +1,114 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.oviva.ehealthid.relyingparty.ConfigReader.HttpClientConfig;
+import com.oviva.ehealthid.relyingparty.util.OutboundHttpClients.Target;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class OutboundHttpClientsTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private OutboundHttpClients sut;
+
+  @BeforeEach
+  void setUp() {
+    // generous, a cold WireMock may take a while to answer the first request
+    sut = clients(Duration.ofSeconds(10));
+  }
+
+  @AfterEach
+  void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  void forTarget_shared() {
+
+    // when
+    var federation = sut.forTarget(Target.FEDERATION);
+
+    // then
+    assertSame(federation, sut.forTarget(Target.FEDERATION));
+    assertNotSame(federation, sut.forTarget(Target.DISCOVERY));
+  }
+
+  @Test
+  void forTarget_recordsRequests(WireMockRuntimeInfo wm) throws Exception {
+
+    stubFor(get("/jwks").willReturn(ok("{}")));
+
+    var client = sut.forTarget(Target.DISCOVERY);
+    var req = HttpRequest.newBuilder(URI.create(wm.getHttpBaseUrl()).resolve("/jwks")).build();
+
+    // when
+    client.send(req, BodyHandlers.ofString());
+    client.sendAsync(req, BodyHandlers.ofString()).join();
+
+    // then
+    var timer =
+        meterRegistry
+            .get("http.client.requests")
+            .tag("client", "discovery")
+            .tag("host", "localhost")
+            .tag("version", "HTTP_1_1")
+            .tag("outcome", "success")
+            .timer();
+    assertEquals(2, timer.count());
+
+    var active =
+        meterRegistry.get("http.client.requests.active").tag("client", "discovery").gauge();
+    assertEquals(0.0, active.value());
+  }
+
+  @Test
+  void forTarget_appliesRequestTimeout(WireMockRuntimeInfo wm) {
+
+    stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+
+    sut.close();
+    sut = clients(Duration.ofMillis(500));
+    var client = sut.forTarget(Target.FEDERATION);
+    var req = HttpRequest.newBuilder(URI.create(wm.getHttpBaseUrl()).resolve("/slow")).build();
+
+    // when
+    assertThrows(HttpTimeoutException.class, () -> client.send(req, BodyHandlers.ofString()));
+
+    // then
+    var timer =
+        meterRegistry
+            .get("http.client.requests")
+            .tag("client", "federation")
+            .tag("outcome", "error")
+            .timer();
+    assertEquals(1, timer.count());
+  }
+
+  private OutboundHttpClients clients(Duration requestTimeout) {
+    Map<Target, HttpClientConfig> config = new EnumMap<>(Target.class);
+    for (var target : Target.values()) {
+      config.put(
+          target,
+          new HttpClientConfig(Version.HTTP_1_1, Duration.ofSeconds(1), requestTimeout, 0, 1024));
+    }
+    return new OutboundHttpClients(config, meterRegistry);
+  }
+}
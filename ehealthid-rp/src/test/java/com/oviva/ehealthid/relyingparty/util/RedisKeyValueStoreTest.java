@@ -0,0 +1,183 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RedisKeyValueStoreTest {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(2);
+
+  private InProcessRedis redis;
+  private RedisKeyValueStore sut;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    redis = new InProcessRedis();
+    sut = new RedisKeyValueStore(redis.uri(), TIMEOUT);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    sut.close();
+    redis.close();
+  }
+
+  @Test
+  void setAndGet() {
+
+    // when
+    sut.set("key", bytes("value"), Duration.ofMinutes(1));
+
+    // then
+    assertArrayEquals(bytes("value"), sut.get("key"));
+    assertArrayEquals(bytes("value"), sut.get("key"));
+  }
+
+  @Test
+  void get_unknown() {
+    assertNull(sut.get("unknown"));
+  }
+
+  @Test
+  void get_expired() throws InterruptedException {
+
+    sut.set("key", bytes("value"), Duration.ofMillis(10));
+
+    // when
+    Thread.sleep(50);
+
+    // then
+    assertNull(sut.get("key"));
+  }
+
+  @Test
+  void remove_once() {
+
+    sut.set("key", bytes("value"), Duration.ofMinutes(1));
+
+    // when
+    var first = sut.remove("key");
+    var second = sut.remove("key");
+
+    // then
+    assertArrayEquals(bytes("value"), first);
+    assertNull(second);
+    assertFalse(redis.contains("key"));
+  }
+
+  @Test
+  void set_zeroTtl() throws InterruptedException {
+
+    // when
+    sut.set("key", bytes("value"), Duration.ZERO);
+    Thread.sleep(10);
+
+    // then
+    assertNull(sut.get("key"));
+  }
+
+  @Test
+  void remove_notRepeatedAfterTimeout() throws IOException {
+
+    sut.set("key", bytes("value"), Duration.ofMinutes(1));
+    redis.delayReplies(TIMEOUT.multipliedBy(2));
+
+    try (var store = new RedisKeyValueStore(redis.uri(), Duration.ofMillis(200))) {
+
+      // when
+      assertThrows(UncheckedIOException.class, () -> store.remove("key"));
+
+      // then
+      assertEquals(1, redis.executed("GETDEL"));
+      assertFalse(redis.contains("key"));
+    }
+  }
+
+  @Test
+  void limitsConnections() {
+
+    redis.delayReplies(Duration.ofMillis(50));
+    var callers = RedisKeyValueStore.MAX_CONNECTIONS * 2;
+
+    // when
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var gets =
+          IntStream.range(0, callers).mapToObj(i -> executor.submit(() -> sut.get("key"))).toList();
+      for (var get : gets) {
+        assertDoesNotThrow(() -> get.get());
+      }
+    }
+
+    // then
+    assertTrue(redis.maxClients() <= RedisKeyValueStore.MAX_CONNECTIONS);
+    assertEquals(callers, redis.executed("GET"));
+  }
+
+  @Test
+  void reconnectsAfterDroppedConnection() throws IOException {
+
+    sut.set("key", bytes("value"), Duration.ofMinutes(1));
+
+    // when
+    redis.dropConnections();
+
+    // then
+    assertArrayEquals(bytes("value"), sut.get("key"));
+  }
+
+  @Test
+  void authenticates() throws IOException {
+    try (var secured = new InProcessRedis("s3cret");
+        var store = new RedisKeyValueStore(secured.uri(), TIMEOUT)) {
+
+      // when
+      store.set("key", bytes("value"), Duration.ofMinutes(1));
+
+      // then
+      assertArrayEquals(bytes("value"), store.get("key"));
+    }
+  }
+
+  @Test
+  void badPassword() throws IOException {
+    try (var secured = new InProcessRedis("s3cret");
+        var store =
+            new RedisKeyValueStore(
+                URI.create(secured.uri().toString().replace("s3cret", "wrong")), TIMEOUT)) {
+
+      // when & then
+      assertThrows(UncheckedIOException.class, () -> store.get("key"));
+    }
+  }
+
+  @Test
+  void unreachable() throws IOException {
+    var uri = redis.uri();
+    redis.close();
+
+    try (var store = new RedisKeyValueStore(uri, TIMEOUT)) {
+      // when & then
+      assertThrows(UncheckedIOException.class, () -> store.get("key"));
+    }
+  }
+
+  @Test
+  void unsupportedUri() {
+    var uri = URI.create("memcached://cache.example.com:11211");
+    assertThrows(IllegalArgumentException.class, () -> new RedisKeyValueStore(uri, TIMEOUT));
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,202 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.oviva.ehealthid.fedclient.api.AsyncFederationApiClient;
+import com.oviva.ehealthid.fedclient.api.HttpException;
+import com.oviva.ehealthid.fedclient.api.HttpExceptions;
+import com.oviva.ehealthid.fedclient.api.IdpListJWS;
+import com.oviva.ehealthid.relyingparty.util.ResilientFederationApiClient.Operation;
+import com.oviva.ehealthid.relyingparty.util.ResilientFederationApiClient.Policy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ResilientFederationApiClientTest {
+
+  private static final URI IDP_LIST = URI.create("https://fedmaster.example.com/federation/idps");
+
+  private static final Policy POLICY =
+      new Policy(Duration.ofSeconds(5), 2, Duration.ofMillis(1), 0, Duration.ZERO);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private ScheduledExecutorService scheduler;
+  private AsyncFederationApiClient delegate;
+
+  @BeforeEach
+  void setUp() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    delegate = mock(AsyncFederationApiClient.class);
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void passesThrough() {
+
+    var idpList = new IdpListJWS(null, null);
+    when(delegate.fetchIdpListAsync(IDP_LIST))
+        .thenReturn(CompletableFuture.completedFuture(idpList));
+
+    var sut = sut(POLICY);
+
+    // when
+    var got = sut.fetchIdpList(IDP_LIST);
+
+    // then
+    assertSame(idpList, got);
+    assertEquals(0.0, counter("federation.client.retries"));
+  }
+
+  @Test
+  void retriesTransientFailure() {
+
+    var idpList = new IdpListJWS(null, null);
+    when(delegate.fetchIdpListAsync(IDP_LIST))
+        .thenReturn(
+            CompletableFuture.failedFuture(HttpExceptions.httpFailBadStatus("GET", IDP_LIST, 503)))
+        .thenReturn(CompletableFuture.completedFuture(idpList));
+
+    var sut = sut(POLICY);
+
+    // when
+    var got = sut.fetchIdpList(IDP_LIST);
+
+    // then
+    assertSame(idpList, got);
+    verify(delegate, times(2)).fetchIdpListAsync(any());
+    assertEquals(1.0, counter("federation.client.retries"));
+  }
+
+  @Test
+  void givesUpAfterMaxRetries() {
+
+    var failure = new HttpException("GET", IDP_LIST, "connect timed out", null);
+    when(delegate.fetchIdpListAsync(IDP_LIST)).thenReturn(CompletableFuture.failedFuture(failure));
+
+    var sut = sut(POLICY);
+
+    // when
+    var e = assertThrows(HttpException.class, () -> sut.fetchIdpList(IDP_LIST));
+
+    // then
+    assertSame(failure, e);
+    verify(delegate, times(3)).fetchIdpListAsync(any());
+    assertEquals(2.0, counter("federation.client.retries"));
+  }
+
+  @Test
+  void doesNotRetryClientError() {
+
+    when(delegate.fetchIdpListAsync(IDP_LIST))
+        .thenReturn(
+            CompletableFuture.failedFuture(HttpExceptions.httpFailBadStatus("GET", IDP_LIST, 404)));
+
+    var sut = sut(POLICY);
+
+    // when
+    var e = assertThrows(HttpException.class, () -> sut.fetchIdpList(IDP_LIST));
+
+    // then
+    assertEquals(404, e.status());
+    verify(delegate, times(1)).fetchIdpListAsync(any());
+  }
+
+  @Test
+  void doesNotRetryOpenCircuit() {
+
+    when(delegate.fetchIdpListAsync(IDP_LIST))
+        .thenReturn(
+            CompletableFuture.failedFuture(
+                new CircuitBreakerHttpClient.CircuitOpenException("GET", IDP_LIST)));
+
+    var sut = sut(POLICY);
+
+    // when
+    assertThrows(HttpException.class, () -> sut.fetchIdpList(IDP_LIST));
+
+    // then
+    verify(delegate, times(1)).fetchIdpListAsync(any());
+    assertEquals(0.0, counter("federation.client.retries"));
+  }
+
+  @Test
+  void doesNotRetryBadArtifact() {
+
+    when(delegate.fetchIdpListAsync(IDP_LIST))
+        .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("bad idp list")));
+
+    var sut = sut(POLICY);
+
+    // when
+    assertThrows(IllegalStateException.class, () -> sut.fetchIdpList(IDP_LIST));
+
+    // then
+    verify(delegate, times(1)).fetchIdpListAsync(any());
+  }
+
+  @Test
+  void hedgesSlowFetch() {
+
+    var idpList = new IdpListJWS(null, null);
+    when(delegate.fetchIdpListAsync(IDP_LIST))
+        .thenReturn(new CompletableFuture<>())
+        .thenReturn(CompletableFuture.completedFuture(idpList));
+
+    var policy = new Policy(Duration.ofSeconds(5), 0, Duration.ZERO, 0.95, Duration.ofMillis(10));
+    var sut = sut(policy);
+
+    // when
+    var got = sut.fetchIdpList(IDP_LIST);
+
+    // then
+    assertSame(idpList, got);
+    verify(delegate, times(2)).fetchIdpListAsync(any());
+    assertEquals(1.0, counter("federation.client.hedges"));
+  }
+
+  @Test
+  void failsOnceBudgetExceeded() {
+
+    when(delegate.fetchIdpListAsync(IDP_LIST)).thenReturn(new CompletableFuture<>());
+
+    var policy = new Policy(Duration.ofMillis(50), 2, Duration.ofMillis(1), 0, Duration.ZERO);
+    var sut = sut(policy);
+
+    // when
+    var e = assertThrows(HttpException.class, () -> sut.fetchIdpList(IDP_LIST));
+
+    // then
+    assertEquals(IDP_LIST, e.uri());
+    assertEquals(1.0, counter("federation.client.budget.exceeded"));
+  }
+
+  private ResilientFederationApiClient sut(Policy policy) {
+    Map<Operation, Policy> policies = new EnumMap<>(Operation.class);
+    for (var op : Operation.values()) {
+      policies.put(op, policy);
+    }
+    return new ResilientFederationApiClient(delegate, policies, scheduler, meterRegistry);
+  }
+
+  private double counter(String name) {
+    return meterRegistry.get(name).tag("operation", "idp_list").counter().count();
+  }
+}
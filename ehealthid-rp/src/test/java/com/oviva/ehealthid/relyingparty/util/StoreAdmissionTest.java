@@ -0,0 +1,74 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.oviva.ehealthid.relyingparty.svc.OverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class StoreAdmissionTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  void admit_belowHighWaterMark() {
+
+    var sut = new StoreAdmission(0.9, Duration.ofSeconds(30), meterRegistry);
+    var sessions = new AtomicLong(89);
+    sut.watch("sessions", sessions::get, 100);
+
+    // when
+    sut.admit();
+
+    // then
+    var occupancy = meterRegistry.get("store.occupancy").tag("store", "sessions").gauge();
+    assertEquals(0.89, occupancy.value());
+    assertEquals(0.0, meterRegistry.get("store.admission.rejections").counter().count());
+  }
+
+  @Test
+  void admit_aboveHighWaterMark() {
+
+    var sut = new StoreAdmission(0.9, Duration.ofSeconds(30), meterRegistry);
+    var sessions = new AtomicLong(0);
+    var codes = new AtomicLong(90);
+    sut.watch("sessions", sessions::get, 100);
+    sut.watch("codes", codes::get, 100);
+
+    // when
+    var e = assertThrows(OverloadedException.class, sut::admit);
+
+    // then
+    assertEquals(Duration.ofSeconds(30), e.retryAfter());
+    assertEquals("error.overloaded", e.localizedMessage().messageKey());
+    assertEquals(
+        1.0,
+        meterRegistry.get("store.admission.rejections").tag("store", "codes").counter().count());
+    assertEquals(
+        0.0,
+        meterRegistry.get("store.admission.rejections").tag("store", "sessions").counter().count());
+  }
+
+  @Test
+  void admit_recovers() {
+
+    var sut = new StoreAdmission(0.5, Duration.ofSeconds(30), meterRegistry);
+    var sessions = new AtomicLong(5);
+    sut.watch("sessions", sessions::get, 10);
+    assertThrows(OverloadedException.class, sut::admit);
+
+    // when
+    sessions.set(4);
+
+    // then
+    assertDoesNotThrow(sut::admit);
+  }
+
+  @Test
+  void admit_nothingWatched() {
+    var sut = new StoreAdmission(0.9, Duration.ofSeconds(30), meterRegistry);
+    assertDoesNotThrow(sut::admit);
+  }
+}
@@ -0,0 +1,32 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TlsHandshakeMetricsTest {
+
+  @Test
+  void onHandshake() {
+
+    var meterRegistry = new SimpleMeterRegistry();
+    var sut = new TlsHandshakeMetrics("openid", meterRegistry);
+
+    // when
+    sut.onHandshake("idp.example.com", "TLSv1.3", false, Duration.ofMillis(80));
+    sut.onHandshake("idp.example.com", "TLSv1.3", true, Duration.ofMillis(10));
+    sut.onHandshake("idp.example.com", "TLSv1.3", true, Duration.ofMillis(20));
+
+    // then
+    var resumed =
+        meterRegistry.get("tls.handshakes").tag("client", "openid").tag("resumed", "true").timer();
+    assertEquals(2, resumed.count());
+    assertEquals(30, resumed.totalTime(TimeUnit.MILLISECONDS));
+
+    var full = meterRegistry.get("tls.handshakes").tag("resumed", "false").timer();
+    assertEquals(1, full.count());
+  }
+}
@@ -0,0 +1,39 @@
+package com.oviva.ehealthid.relyingparty.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import org.junit.jupiter.api.Test;
+
+class TransferMetricsTest {
+
+  private static final URI IDP_LIST =
+      URI.create("https://fedmaster.example.com/federation/listidps");
+
+  @Test
+  void onBody() {
+
+    var meterRegistry = new SimpleMeterRegistry();
+    var sut = new TransferMetrics("federation", meterRegistry);
+
+    // when
+    sut.onBody(IDP_LIST, "gzip", 3_000, 12_000);
+    sut.onBody(IDP_LIST, "gzip", 1_000, 4_000);
+    sut.onBody(IDP_LIST, "identity", 500, 500);
+
+    // then
+    assertEquals(4_000, counter(meterRegistry, "http.client.body.wire", "gzip"));
+    assertEquals(16_000, counter(meterRegistry, "http.client.body.decoded", "gzip"));
+    assertEquals(500, counter(meterRegistry, "http.client.body.wire", "identity"));
+  }
+
+  private double counter(SimpleMeterRegistry meterRegistry, String name, String encoding) {
+    return meterRegistry
+        .get(name)
+        .tag("client", "federation")
+        .tag("encoding", encoding)
+        .counter()
+        .count();
+  }
+}
@@ -0,0 +1,151 @@
+package com.oviva.ehealthid.relyingparty.ws;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.oviva.ehealthid.relyingparty.ConfigReader.ExecutionMode;
+import com.oviva.ehealthid.relyingparty.ConfigReader.ServerConfig;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.Application;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Load test with a simulated slow downstream IdP, shows how many logins are in flight at once with
+ * a worker thread pool versus a virtual thread per request.
+ */
+class ApplicationServerTest {
+
+  private static final int WORKER_THREADS = 4;
+  private static final int CONCURRENT_LOGINS = 50;
+  private static final Duration IDP_LATENCY = Duration.ofMillis(300);
+
+  @Test
+  void workerMode_cappedByWorkerThreads() throws Exception {
+
+    // when
+    var got = runLoad(ExecutionMode.WORKER);
+
+    // then
+    assertEquals(WORKER_THREADS, got.maxInFlight());
+
+    // at least one full round trip to the IdP per batch of workers
+    var batches = CONCURRENT_LOGINS / WORKER_THREADS;
+    assertTrue(got.elapsed().compareTo(IDP_LATENCY.multipliedBy(batches)) >= 0);
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_24)
+  void virtualMode_notCappedByWorkerThreads() throws Exception {
+
+    // when
+    var got = runLoad(ExecutionMode.VIRTUAL);
+
+    // then
+    assertTrue(got.maxInFlight() > WORKER_THREADS, "in flight: " + got.maxInFlight());
+
+    // faster than queueing the logins in batches of workers
+    var batches = CONCURRENT_LOGINS / WORKER_THREADS;
+    assertTrue(got.elapsed().compareTo(IDP_LATENCY.multipliedBy(batches)) < 0);
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_24)
+  void virtualMode_runsOnVirtualThreads() throws Exception {
+
+    var app =
+        new Application() {
+          @Override
+          public Set<Object> getSingletons() {
+            return Set.of(new ThreadEndpoint());
+          }
+        };
+
+    var config = new ServerConfig(ExecutionMode.VIRTUAL, 2, WORKER_THREADS);
+    try (var server = ApplicationServer.start(app, "127.0.0.1", 0, config)) {
+
+      var client = HttpClient.newBuilder().version(Version.HTTP_1_1).build();
+      var req = HttpRequest.newBuilder(server.baseUri().resolve("/thread")).build();
+
+      // when
+      var res = client.send(req, BodyHandlers.ofString());
+
+      // then
+      assertEquals(200, res.statusCode());
+      assertEquals("virtual", res.body());
+    }
+  }
+
+  private Result runLoad(ExecutionMode mode) throws Exception {
+
+    var idp = new SlowIdpEndpoint();
+    var app =
+        new Application() {
+          @Override
+          public Set<Object> getSingletons() {
+            return Set.of(idp);
+          }
+        };
+
+    var config = new ServerConfig(mode, 2, WORKER_THREADS);
+    try (var server = ApplicationServer.start(app, "127.0.0.1", 0, config)) {
+
+      var client = HttpClient.newBuilder().version(Version.HTTP_1_1).build();
+      var req = HttpRequest.newBuilder(server.baseUri().resolve("/auth/callback")).build();
+
+      var start = System.nanoTime();
+      var responses =
+          IntStream.range(0, CONCURRENT_LOGINS)
+              .mapToObj(i -> client.sendAsync(req, BodyHandlers.ofString()))
+              .toList();
+      CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+      var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+      for (var res : responses) {
+        assertEquals(200, res.join().statusCode());
+      }
+
+      return new Result(idp.maxInFlight.get(), elapsed);
+    }
+  }
+
+  record Result(int maxInFlight, Duration elapsed) {}
+
+  @Path("/thread")
+  public static class ThreadEndpoint {
+
+    @GET
+    public String thread() {
+      return Thread.currentThread().isVirtual() ? "virtual" : "platform";
+    }
+  }
+
+  @Path("/auth/callback")
+  public static class SlowIdpEndpoint {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @GET
+    public String callback() throws InterruptedException {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      try {
+        // blocking on the token exchange with the sectoral IdP
+        Thread.sleep(IDP_LATENCY);
+        return "ok";
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+}
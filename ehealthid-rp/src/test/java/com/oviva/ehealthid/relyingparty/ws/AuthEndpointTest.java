@@ -10,6 +10,7 @@ import com.oviva.ehealthid.relyingparty.svc.AuthService.AuthorizationRequest;
 import com.oviva.ehealthid.relyingparty.svc.AuthService.AuthorizationResponse;
 import com.oviva.ehealthid.relyingparty.svc.AuthService.CallbackRequest;
 import com.oviva.ehealthid.relyingparty.svc.AuthService.SelectedIdpRequest;
+import com.oviva.ehealthid.relyingparty.svc.AuthService.SelectedIdpResponse;
 import com.oviva.ehealthid.relyingparty.svc.ValidationException;
 import com.oviva.ehealthid.relyingparty.util.IdGenerator;
 import jakarta.ws.rs.core.MediaType;
@@ -160,7 +161,8 @@ class AuthEndpointTest {
     var idpRedirect = URI.create(selectedIdpIssuer).resolve("/auth/login");
 
     var authService = mock(AuthService.class);
-    when(authService.selectedIdentityProvider(any())).thenReturn(idpRedirect);
+    when(authService.selectedIdentityProvider(any()))
+        .thenReturn(new SelectedIdpResponse(idpRedirect, sessionId));
     var sut = new AuthEndpoint(authService, null);
 
     // when
@@ -170,6 +172,7 @@ class AuthEndpointTest {
 
       // then
       assertTrue(page.contains(idpRedirect.toString()));
+      assertEquals(sessionId, res.getCookies().get("session_id").getValue());
     }
   }
 
@@ -183,7 +186,8 @@ class AuthEndpointTest {
     var idpRedirect = URI.create(selectedIdpIssuer).resolve("/auth/login");
 
     var authService = mock(AuthService.class);
-    when(authService.selectedIdentityProvider(any())).thenReturn(idpRedirect);
+    when(authService.selectedIdentityProvider(any()))
+        .thenReturn(new SelectedIdpResponse(idpRedirect, sessionId));
     var sut = new AuthEndpoint(authService, null);
 
     // when
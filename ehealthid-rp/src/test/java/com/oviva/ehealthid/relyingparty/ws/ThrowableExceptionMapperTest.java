@@ -11,6 +11,7 @@ import com.oviva.ehealthid.auth.AuthException;
 import com.oviva.ehealthid.fedclient.FederationException;
 import com.oviva.ehealthid.relyingparty.svc.AuthenticationException;
 import com.oviva.ehealthid.relyingparty.svc.LocalizedException.Message;
+import com.oviva.ehealthid.relyingparty.svc.OverloadedException;
 import com.oviva.ehealthid.relyingparty.svc.ValidationException;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.ServerErrorException;
@@ -18,6 +19,7 @@ import jakarta.ws.rs.core.*;
 import java.io.StringWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -195,6 +197,24 @@ class ThrowableExceptionMapperTest {
     assertNotNull(res.getEntity());
   }
 
+  @Test
+  void toResponse_withBody_withOverloadedException() {
+
+    doReturn("de-DE").when(headers).getHeaderString("Accept-Language");
+
+    // when
+    var res =
+        mapper.toResponse(
+            new OverloadedException(new Message("error.overloaded"), Duration.ofSeconds(30)));
+
+    // then
+    assertEquals(503, res.getStatus());
+    assertEquals("30", res.getHeaderString("Retry-After"));
+    assertEquals(MediaType.TEXT_HTML_TYPE, res.getMediaType());
+    assertNotNull(res.getEntity());
+    verify(logger, never()).atError();
+  }
+
   @Test
   void toResponse_withBody_withFederationException() {
 
@@ -1,7 +1,9 @@
 package com.oviva.ehealthid.auth;
 
 import com.oviva.ehealthid.auth.internal.steps.SelectSectoralIdpStepImpl;
+import com.oviva.ehealthid.auth.internal.steps.TrustedSectoralIdpStepImpl;
 import com.oviva.ehealthid.auth.steps.SelectSectoralIdpStep;
+import com.oviva.ehealthid.auth.steps.TrustedSectoralIdpStep;
 import com.oviva.ehealthid.crypto.KeySupplier;
 import com.oviva.ehealthid.fedclient.FederationMasterClient;
 import com.oviva.ehealthid.fedclient.api.OpenIdClient;
@@ -44,6 +46,31 @@ public class AuthenticationFlow {
         session.scopes());
   }
 
+  /**
+   * Restores the step returned by {@link SelectSectoralIdpStep#redirectToSectoralIdp(String)}, e.g.
+   * when the callback from the sectoral IdP reaches another instance than the one redirecting to
+   * it. Trust in the sectoral IdP is established again, nothing of the original step is trusted.
+   *
+   * @param sectoralIdpIss the issuer of the selected sectoral IdP
+   * @param idpRedirectUri the authorization URL the user was redirected to
+   */
+  @NonNull
+  public TrustedSectoralIdpStep resume(
+      @NonNull Session session, @NonNull String sectoralIdpIss, @NonNull URI idpRedirectUri) {
+
+    var trustedIdpEntityStatement =
+        federationMasterClient.establishIdpTrust(URI.create(sectoralIdpIss));
+
+    return new TrustedSectoralIdpStepImpl(
+        openIdClient,
+        selfIssuer,
+        idpRedirectUri,
+        session.callbackUri(),
+        trustedIdpEntityStatement,
+        relyingPartyKeySupplier,
+        federationMasterClient);
+  }
+
   public record Session(
       String state, String nonce, URI callbackUri, String codeChallengeS256, List<String> scopes) {}
 }
@@ -3,13 +3,22 @@ package com.oviva.ehealthid.crypto;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSObject;
-import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.oviva.ehealthid.fedclient.FederationExceptions;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JwsVerifier {
 
+  // verifiers are thread-safe and costly to set up, they are keyed by the full key so a rotated key
+  // never hits a stale verifier
+  private static final int MAX_CACHED_VERIFIERS = 256;
+  private static final Map<JWK, JWSVerifier> verifiers = new ConcurrentHashMap<>();
+
   private JwsVerifier() {}
 
   @SuppressWarnings("java:S2583")
@@ -35,11 +44,26 @@ public class JwsVerifier {
     }
 
     try {
-      var processor = new DefaultJWSVerifierFactory();
-      var verifier = processor.createJWSVerifier(jws.getHeader(), key.toECKey().toPublicKey());
-      return jws.verify(verifier);
+      return jws.verify(verifierFor(key));
     } catch (JOSEException e) {
       throw FederationExceptions.badSignature(e);
     }
   }
+
+  private static JWSVerifier verifierFor(JWK key) throws JOSEException {
+
+    var verifier = verifiers.get(key);
+    if (verifier != null) {
+      return verifier;
+    }
+
+    if (verifiers.size() >= MAX_CACHED_VERIFIERS) {
+      // keys of the federation rarely change, simply start over with the current ones
+      verifiers.clear();
+    }
+
+    verifier = new ECDSAVerifier(key.toECKey());
+    verifiers.put(key, verifier);
+    return verifier;
+  }
 }
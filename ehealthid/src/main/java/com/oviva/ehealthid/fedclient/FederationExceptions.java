@@ -47,6 +47,24 @@ public class FederationExceptions {
         FederationException.Reason.INVALID_ENTITY_STATEMENT);
   }
 
+  public static FederationException entityStatementMissingIdpListUrl(String sub) {
+    return new FederationException(
+        "entity statement of '%s' has no idp list url".formatted(sub),
+        FederationException.Reason.BAD_FEDERATION_MASTER);
+  }
+
+  public static FederationException untrustedIdpList(URI master) {
+    return new FederationException(
+        "list of idps from '%s' expired or has a bad signature".formatted(master),
+        FederationException.Reason.BAD_FEDERATION_MASTER);
+  }
+
+  public static FederationException unlistedIdp(String sub) {
+    return new FederationException(
+        "idp not listed by the federation master: sub=%s".formatted(sub),
+        FederationException.Reason.UNTRUSTED_IDP);
+  }
+
   public static FederationException entityStatementTimeNotValid(String sub) {
     return new FederationException(
         "entity statement of '%s' expired or not yet valid".formatted(sub),
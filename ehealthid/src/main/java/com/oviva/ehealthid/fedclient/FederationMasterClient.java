@@ -4,6 +4,7 @@ import com.nimbusds.jose.jwk.JWKSet;
 import com.oviva.ehealthid.fedclient.api.EntityStatementJWS;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface FederationMasterClient {
 
@@ -11,5 +12,20 @@ public interface FederationMasterClient {
 
   EntityStatementJWS establishIdpTrust(URI issuer);
 
+  /**
+   * like {@link #establishIdpTrust(URI)}, but fetches the independent statements of the trust chain
+   * concurrently
+   *
+   * <p>The default implementation falls back to {@link #establishIdpTrust(URI)} on the calling
+   * thread.
+   */
+  default CompletableFuture<EntityStatementJWS> establishIdpTrustAsync(URI issuer) {
+    try {
+      return CompletableFuture.completedFuture(establishIdpTrust(issuer));
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
   JWKSet resolveOpenIdProviderJwks(EntityStatementJWS es);
 }
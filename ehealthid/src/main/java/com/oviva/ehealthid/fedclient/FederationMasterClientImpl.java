@@ -2,27 +2,59 @@ package com.oviva.ehealthid.fedclient;
 
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.util.Base64URL;
+import com.oviva.ehealthid.fedclient.api.AsyncFederationApiClient;
 import com.oviva.ehealthid.fedclient.api.EntityStatement;
 import com.oviva.ehealthid.fedclient.api.EntityStatementJWS;
+import com.oviva.ehealthid.fedclient.api.ExecutorFederationApiClient;
+import com.oviva.ehealthid.fedclient.api.ExtendedJWKSetJWS;
 import com.oviva.ehealthid.fedclient.api.FederationApiClient;
 import com.oviva.ehealthid.fedclient.api.IdpList.IdpEntity;
+import com.oviva.ehealthid.fedclient.api.IdpListJWS;
+import com.oviva.ehealthid.fedclient.api.TemporalValid;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.net.URI;
 import java.time.Clock;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 public class FederationMasterClientImpl implements FederationMasterClient {
 
   private final URI fedMasterUri;
   private final FederationApiClient apiClient;
+  private final AsyncFederationApiClient asyncApiClient;
 
   private final Clock clock;
 
+  // issuers we already established trust in, bounded by the number of IdPs in the federation
+  private final Map<URI, TrustedIdp> trustedIdps = new ConcurrentHashMap<>();
+
+  // resolved OpenID provider keys per IdP subject
+  private final Map<String, ResolvedJwks> resolvedJwks = new ConcurrentHashMap<>();
+
   public FederationMasterClientImpl(URI fedMasterUri, FederationApiClient apiClient, Clock clock) {
+    this(fedMasterUri, apiClient, new ExecutorFederationApiClient(apiClient, Runnable::run), clock);
+  }
+
+  /**
+   * @param asyncApiClient used to fetch the statements of a trust chain without blocking, usually
+   *     backed by the same client as {@code apiClient}
+   */
+  public FederationMasterClientImpl(
+      URI fedMasterUri,
+      FederationApiClient apiClient,
+      AsyncFederationApiClient asyncApiClient,
+      Clock clock) {
     this.fedMasterUri = fedMasterUri;
     this.apiClient = apiClient;
+    this.asyncApiClient = asyncApiClient;
     this.clock = clock;
   }
 
@@ -42,6 +74,15 @@ public class FederationMasterClientImpl implements FederationMasterClient {
     // https://openid.net/specs/openid-federation-1_0.html#section-5.2.1.1
     // https://gemspec.gematik.de/docs/gemSpec/gemSpec_IDP_Sek/latest/#A_22655-02
 
+    // keys resolved for this very entity statement which did not expire since
+    var signature = es.jws() != null ? es.jws().getSignature() : null;
+    var resolved = resolvedJwks.get(es.body().sub());
+    if (resolved != null
+        && resolved.signature().equals(signature)
+        && clock.instant().isBefore(resolved.notAfter())) {
+      return resolved.jwks();
+    }
+
     var op =
         Optional.of(es)
             .map(EntityStatementJWS::body)
@@ -58,21 +99,34 @@ public class FederationMasterClientImpl implements FederationMasterClient {
     op.map(EntityStatement.OpenidProvider::jwks).map(JWKSet::getKeys).ifPresent(allKeys::addAll);
 
     // from signed_jwks_uri
-    op.map(EntityStatement.OpenidProvider::signedJwksUri)
-        .flatMap(
-            u -> fetchOpenIdProviderJwksFromSignedJwksUri(es.body().sub(), u, es.body().jwks()))
-        .ifPresent(allKeys::addAll);
+    var signedJwks =
+        op.map(EntityStatement.OpenidProvider::signedJwksUri)
+            .flatMap(
+                u ->
+                    fetchOpenIdProviderJwksFromSignedJwksUri(es.body().sub(), u, es.body().jwks()));
+    signedJwks.map(s -> s.body().toJWKSet()).map(JWKSet::getKeys).ifPresent(allKeys::addAll);
 
     // Note: OpenID federation also supports a `jwks_uri`, the GesundheitsID does not though
     if (allKeys.isEmpty()) {
       throw FederationExceptions.noOpenIdProviderKeys(es.body().sub());
     }
 
-    return new JWKSet(allKeys);
+    var jwks = new JWKSet(allKeys);
+
+    if (signature != null) {
+      var notAfter =
+          signedJwks
+              .map(ExtendedJWKSetJWS::expiresAt)
+              .filter(exp -> exp.isBefore(es.expiresAt()))
+              .orElse(es.expiresAt());
+      resolvedJwks.put(es.body().sub(), new ResolvedJwks(signature, jwks, notAfter));
+    }
+
+    return jwks;
   }
 
   @NonNull
-  private Optional<List<JWK>> fetchOpenIdProviderJwksFromSignedJwksUri(
+  private Optional<ExtendedJWKSetJWS> fetchOpenIdProviderJwksFromSignedJwksUri(
       @NonNull String issuer, @NonNull String signedJwksUri, @NonNull JWKSet idpTrustStore) {
 
     return Optional.of(signedJwksUri)
@@ -92,9 +146,7 @@ public class FederationMasterClientImpl implements FederationMasterClient {
                 throw FederationExceptions.invalidSignedJwks(issuer, signedJwksUri);
               }
               return jws;
-            })
-        .map(s -> s.body().toJWKSet())
-        .map(JWKSet::getKeys);
+            });
   }
 
   private boolean matchesIfPresent(String expected, String actual) {
@@ -107,20 +159,100 @@ public class FederationMasterClientImpl implements FederationMasterClient {
 
   @Override
   public EntityStatementJWS establishIdpTrust(URI issuer) {
+    try {
+      return establishIdpTrustAsync(issuer).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw e;
+    }
+  }
 
-    var trustedFederationStatement = fetchTrustedFederationStatement(issuer);
+  @Override
+  public CompletableFuture<EntityStatementJWS> establishIdpTrustAsync(URI issuer) {
+
+    // the whole chain was verified before and none of its statements expired since
+    var trusted = trustedIdps.get(issuer);
+    if (trusted != null) {
+      if (clock.instant().isBefore(trusted.notAfter())) {
+        return CompletableFuture.completedFuture(trusted.entityConfiguration());
+      }
+      trustedIdps.remove(issuer, trusted);
+    }
+
+    return asyncApiClient
+        .fetchEntityConfigurationAsync(fedMasterUri)
+        .thenCompose(
+            masterEntityConfiguration -> {
+              assertValidMasterEntityStatement(masterEntityConfiguration);
+
+              var idpListEndpoint = getIdpListEndpoint(masterEntityConfiguration.body());
+              return asyncApiClient
+                  .fetchIdpListAsync(idpListEndpoint)
+                  .thenCompose(
+                      idpList -> {
+                        // the issuer comes from the user, only contact IdPs the master lists
+                        assertListedIdp(idpList, masterEntityConfiguration.body().jwks(), issuer);
+                        return fetchTrustChain(issuer, masterEntityConfiguration, idpList);
+                      });
+            });
+  }
+
+  private CompletableFuture<EntityStatementJWS> fetchTrustChain(
+      URI issuer, EntityStatementJWS masterEntityConfiguration, IdpListJWS idpList) {
+
+    var federationFetchEndpoint = getFederationFetchEndpoint(masterEntityConfiguration.body());
+
+    // independent of each other, both are verified once they are here
+    var federationStatement =
+        asyncApiClient.fetchFederationStatementAsync(
+            federationFetchEndpoint, fedMasterUri.toString(), issuer.toString());
+    var entityConfiguration = asyncApiClient.fetchEntityConfigurationAsync(issuer);
+
+    return federationStatement.thenCombine(
+        entityConfiguration,
+        (fs, ec) -> {
+          var trustedFederationStatement =
+              verifyFederationStatement(fs, masterEntityConfiguration.body().jwks(), issuer);
+          return trust(issuer, masterEntityConfiguration, idpList, trustedFederationStatement, ec);
+        });
+  }
+
+  private EntityStatementJWS trust(
+      URI issuer,
+      EntityStatementJWS masterEntityConfiguration,
+      IdpListJWS idpList,
+      EntityStatementJWS trustedFederationStatement,
+      EntityStatementJWS entityConfiguration) {
 
     // the federation statement from the master will establish trust in the JWKS and the issuer URL
     // of the idp,
-    // we still need to fetch the entity configuration directly afterward to get the full
-    // entity statement
+    // we still need the entity configuration directly from the idp to get the full entity
+    // statement
+
+    var trustedEntityConfiguration =
+        verifyEntityConfiguration(
+            entityConfiguration, issuer, trustedFederationStatement.body().jwks());
+
+    // an IdP dropped from the list is no longer trusted once the list expires
+    var notAfter =
+        Stream.of(
+                masterEntityConfiguration,
+                idpList,
+                trustedFederationStatement,
+                trustedEntityConfiguration)
+            .map(TemporalValid::expiresAt)
+            .min(Instant::compareTo)
+            .orElseThrow();
+    trustedIdps.put(issuer, new TrustedIdp(trustedEntityConfiguration, notAfter));
 
-    return fetchTrustedEntityConfiguration(issuer, trustedFederationStatement.body().jwks());
+    return trustedEntityConfiguration;
   }
 
-  private EntityStatementJWS fetchTrustedEntityConfiguration(@NonNull URI sub, JWKSet trustStore) {
+  private EntityStatementJWS verifyEntityConfiguration(
+      EntityStatementJWS trustedEntityConfiguration, @NonNull URI sub, JWKSet trustStore) {
 
-    var trustedEntityConfiguration = apiClient.fetchEntityConfiguration(sub);
     if (!trustedEntityConfiguration.isValidAt(clock.instant())) {
       throw FederationExceptions.entityStatementTimeNotValid(sub.toString());
     }
@@ -137,22 +269,8 @@ public class FederationMasterClientImpl implements FederationMasterClient {
     return trustedEntityConfiguration;
   }
 
-  private EntityStatementJWS fetchTrustedFederationStatement(URI issuer) {
-    var masterEntityConfiguration = apiClient.fetchEntityConfiguration(fedMasterUri);
-    assertValidMasterEntityStatement(masterEntityConfiguration);
-
-    var federationFetchEndpoint = getFederationFetchEndpoint(masterEntityConfiguration.body());
-
-    return fetchTrustedFederationStatement(
-        federationFetchEndpoint, masterEntityConfiguration.body().jwks(), issuer);
-  }
-
-  private EntityStatementJWS fetchTrustedFederationStatement(
-      URI federationFetchEndpoint, JWKSet fedmasterTrustStore, URI issuer) {
-
-    var federationStatement =
-        apiClient.fetchFederationStatement(
-            federationFetchEndpoint, fedMasterUri.toString(), issuer.toString());
+  private EntityStatementJWS verifyFederationStatement(
+      EntityStatementJWS federationStatement, JWKSet fedmasterTrustStore, URI issuer) {
 
     if (!federationStatement.isValidAt(clock.instant())) {
       throw FederationExceptions.federationStatementTimeNotValid(federationStatement.body().sub());
@@ -162,9 +280,43 @@ public class FederationMasterClientImpl implements FederationMasterClient {
       throw FederationExceptions.federationStatementBadSignature(issuer.toString());
     }
 
+    if (!issuer.toString().equals(federationStatement.body().sub())) {
+      throw FederationExceptions.untrustedFederationStatement(issuer.toString());
+    }
+
     return federationStatement;
   }
 
+  private void assertListedIdp(IdpListJWS idpList, JWKSet fedmasterTrustStore, URI issuer) {
+
+    if (idpList == null || idpList.body() == null || idpList.body().idpEntities() == null) {
+      throw FederationExceptions.emptyIdpList(fedMasterUri);
+    }
+
+    if (!idpList.isValidAt(clock.instant()) || !idpList.verifySignature(fedmasterTrustStore)) {
+      throw FederationExceptions.untrustedIdpList(fedMasterUri);
+    }
+
+    var listed =
+        idpList.body().idpEntities().stream().anyMatch(e -> issuer.toString().equals(e.iss()));
+    if (!listed) {
+      throw FederationExceptions.unlistedIdp(issuer.toString());
+    }
+  }
+
+  private URI getIdpListEndpoint(EntityStatement entityStatement) {
+
+    var uri =
+        Optional.ofNullable(entityStatement.metadata())
+            .map(EntityStatement.Metadata::federationEntity)
+            .map(EntityStatement.FederationEntity::idpListEndpoint)
+            .filter(u -> !u.isBlank())
+            .orElseThrow(
+                () -> FederationExceptions.entityStatementMissingIdpListUrl(entityStatement.sub()));
+
+    return URI.create(uri);
+  }
+
   private URI getFederationFetchEndpoint(EntityStatement entityStatement) {
 
     if (entityStatement == null) {
@@ -210,4 +362,8 @@ public class FederationMasterClientImpl implements FederationMasterClient {
 
     return idpJws.body().idpEntities();
   }
+
+  private record TrustedIdp(EntityStatementJWS entityConfiguration, Instant notAfter) {}
+
+  private record ResolvedJwks(Base64URL signature, JWKSet jwks, Instant notAfter) {}
 }
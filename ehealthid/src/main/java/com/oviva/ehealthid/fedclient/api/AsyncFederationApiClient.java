@@ -0,0 +1,20 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link FederationApiClient}, allows fetching independent federation
+ * artifacts concurrently.
+ */
+public interface AsyncFederationApiClient {
+
+  CompletableFuture<EntityStatementJWS> fetchFederationStatementAsync(
+      URI federationFetchUrl, String issuer, String subject);
+
+  CompletableFuture<IdpListJWS> fetchIdpListAsync(URI idpListUrl);
+
+  CompletableFuture<EntityStatementJWS> fetchEntityConfigurationAsync(URI entityUrl);
+
+  CompletableFuture<ExtendedJWKSetJWS> fetchSignedJwksAsync(URI signedJwksUrl);
+}
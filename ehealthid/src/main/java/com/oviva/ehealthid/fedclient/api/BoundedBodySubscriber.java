@@ -0,0 +1,95 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.io.IOException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscription;
+
+/**
+ * Collects a response body into a single array, sized upfront by the {@code Content-Length} if
+ * known. Fails as soon as the body exceeds the maximum size rather than buffering it all first.
+ */
+class BoundedBodySubscriber implements BodySubscriber<byte[]> {
+
+  private static final int INITIAL_CAPACITY = 8 * 1024;
+
+  private final long maxBytes;
+  private final long contentLength;
+  private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+
+  private Subscription subscription;
+  private byte[] buffer;
+  private int size;
+
+  BoundedBodySubscriber(long maxBytes, long contentLength) {
+    this.maxBytes = maxBytes;
+    this.contentLength = contentLength;
+  }
+
+  static BoundedBodySubscriber of(ResponseInfo info, long maxBytes) {
+    var contentLength = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+    return new BoundedBodySubscriber(maxBytes, contentLength);
+  }
+
+  @Override
+  public CompletionStage<byte[]> getBody() {
+    return body;
+  }
+
+  @Override
+  public void onSubscribe(Subscription subscription) {
+    this.subscription = subscription;
+    if (contentLength > maxBytes) {
+      tooLarge();
+      return;
+    }
+
+    var capacity = contentLength >= 0 ? contentLength : INITIAL_CAPACITY;
+    buffer = new byte[(int) Math.min(capacity, maxBytes)];
+    subscription.request(Long.MAX_VALUE);
+  }
+
+  @Override
+  public void onNext(List<ByteBuffer> items) {
+    if (body.isDone()) {
+      return;
+    }
+    for (var item : items) {
+      var n = item.remaining();
+      if (size + (long) n > maxBytes) {
+        tooLarge();
+        return;
+      }
+      if (size + n > buffer.length) {
+        var grown = Math.max(size + n, Math.min(buffer.length * 2L, maxBytes));
+        buffer = Arrays.copyOf(buffer, (int) grown);
+      }
+      item.get(buffer, size, n);
+      size += n;
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    body.completeExceptionally(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    if (body.isDone()) {
+      return;
+    }
+    body.complete(size == buffer.length ? buffer : Arrays.copyOf(buffer, size));
+  }
+
+  private void tooLarge() {
+    subscription.cancel();
+    body.completeExceptionally(
+        new IOException("response body exceeds %d bytes".formatted(maxBytes)));
+  }
+}
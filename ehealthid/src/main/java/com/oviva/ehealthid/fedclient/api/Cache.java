@@ -1,8 +1,55 @@
 package com.oviva.ehealthid.fedclient.api;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 public interface Cache<T extends TemporalValid> {
 
   T computeIfAbsent(String key, Function<String, T> supplier);
+
+  /**
+   * like {@link #computeIfAbsent(String, Function)} but with an asynchronous loader, a miss does
+   * not block the caller if the implementation supports it
+   *
+   * <p>The default implementation waits for the loader on the calling thread.
+   */
+  default CompletableFuture<T> computeIfAbsentAsync(
+      String key, Function<String, CompletableFuture<T>> loader) {
+    try {
+      return CompletableFuture.completedFuture(computeIfAbsent(key, k -> loader.apply(k).join()));
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * loads the entry for the given key regardless of whether the cached one is still valid
+   *
+   * <p>The default implementation loads the entry and hands it to {@link #put(String,
+   * TemporalValid)}.
+   */
+  default T refresh(String key, Function<String, T> supplier) {
+    var value = supplier.apply(key);
+    put(key, value);
+    return value;
+  }
+
+  /**
+   * stores the given entry, e.g. when restoring a snapshot
+   *
+   * <p>The default implementation stores it only if there is no valid entry for the key yet.
+   */
+  default void put(String key, T value) {
+    computeIfAbsent(key, k -> value);
+  }
+
+  /**
+   * a point-in-time copy of all cached entries, including ones no longer valid
+   *
+   * <p>The default implementation cannot enumerate the entries and returns none.
+   */
+  default Map<String, T> entries() {
+    return Map.of();
+  }
 }
@@ -1,12 +1,37 @@
 package com.oviva.ehealthid.fedclient.api;
 
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.jwk.JWKSet;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.net.URI;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-/** very primitive cached client, there is no cache eviction here */
-public class CachedFederationApiClient implements FederationApiClient {
+/**
+ * cached client, expiry and eviction of entries are up to the given {@link Cache}s
+ *
+ * <p>The cached artifacts can be persisted with {@link #snapshot(Instant)} and restored after a
+ * restart with {@link #restore(FederationSnapshot, Instant)}, sparing the remote fetches until they
+ * expire.
+ *
+ * <p>The asynchronous variants only block on a miss if the delegate or the cache do not support
+ * asynchronous loads. The blocking variants wait for the asynchronous ones, entries are always
+ * loaded asynchronously and e.g. a {@link RefreshAheadCache} can refresh them without blocking.
+ */
+public class CachedFederationApiClient implements FederationApiClient, AsyncFederationApiClient {
 
-  private final FederationApiClient delegate;
+  private static final Logger logger = LoggerFactory.getLogger(CachedFederationApiClient.class);
+
+  private final AsyncFederationApiClient asyncDelegate;
 
   private final Cache<EntityStatementJWS> entityStatementCache;
 
@@ -21,7 +46,10 @@ public class CachedFederationApiClient implements FederationApiClient {
       Cache<EntityStatementJWS> federationStatementCache,
       Cache<ExtendedJWKSetJWS> signedJwksCache,
       Cache<IdpListJWS> idpListCache) {
-    this.delegate = delegate;
+    this.asyncDelegate =
+        delegate instanceof AsyncFederationApiClient async
+            ? async
+            : new ExecutorFederationApiClient(delegate, Runnable::run);
     this.entityStatementCache = entityStatementCache;
     this.federationStatementCache = federationStatementCache;
     this.signedJwksCache = signedJwksCache;
@@ -32,28 +60,190 @@ public class CachedFederationApiClient implements FederationApiClient {
   @Override
   public EntityStatementJWS fetchFederationStatement(
       URI federationFetchUrl, String issuer, String subject) {
-    var key = "%s|%s|%s".formatted(federationFetchUrl, issuer, subject);
-    return federationStatementCache.computeIfAbsent(
-        key, k -> delegate.fetchFederationStatement(federationFetchUrl, issuer, subject));
+    return join(fetchFederationStatementAsync(federationFetchUrl, issuer, subject));
   }
 
   @NonNull
   @Override
   public IdpListJWS fetchIdpList(URI idpListUrl) {
-    return idpListCache.computeIfAbsent(
-        idpListUrl.toString(), k -> delegate.fetchIdpList(idpListUrl));
+    return join(fetchIdpListAsync(idpListUrl));
   }
 
   @Override
   public @NonNull EntityStatementJWS fetchEntityConfiguration(URI entityUrl) {
-    return entityStatementCache.computeIfAbsent(
-        entityUrl.toString(), k -> delegate.fetchEntityConfiguration(entityUrl));
+    return join(fetchEntityConfigurationAsync(entityUrl));
   }
 
   @NonNull
   @Override
   public ExtendedJWKSetJWS fetchSignedJwks(URI signedJwksUrl) {
-    return signedJwksCache.computeIfAbsent(
-        signedJwksUrl.toString(), k -> delegate.fetchSignedJwks(signedJwksUrl));
+    return join(fetchSignedJwksAsync(signedJwksUrl));
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchFederationStatementAsync(
+      URI federationFetchUrl, String issuer, String subject) {
+    var key = "%s|%s|%s".formatted(federationFetchUrl, issuer, subject);
+    return federationStatementCache.computeIfAbsentAsync(
+        key, k -> asyncDelegate.fetchFederationStatementAsync(federationFetchUrl, issuer, subject));
+  }
+
+  @Override
+  public CompletableFuture<IdpListJWS> fetchIdpListAsync(URI idpListUrl) {
+    return idpListCache.computeIfAbsentAsync(
+        idpListUrl.toString(), k -> asyncDelegate.fetchIdpListAsync(idpListUrl));
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchEntityConfigurationAsync(URI entityUrl) {
+    return entityStatementCache.computeIfAbsentAsync(
+        entityUrl.toString(), k -> asyncDelegate.fetchEntityConfigurationAsync(entityUrl));
+  }
+
+  @Override
+  public CompletableFuture<ExtendedJWKSetJWS> fetchSignedJwksAsync(URI signedJwksUrl) {
+    return signedJwksCache.computeIfAbsentAsync(
+        signedJwksUrl.toString(), k -> asyncDelegate.fetchSignedJwksAsync(signedJwksUrl));
+  }
+
+  /**
+   * @return all cached artifacts which are still valid at the given point in time
+   */
+  public FederationSnapshot snapshot(Instant pointInTime) {
+    return new FederationSnapshot(
+        FederationSnapshot.VERSION,
+        wireFormat(entityStatementCache, EntityStatementJWS::jws, pointInTime),
+        wireFormat(federationStatementCache, EntityStatementJWS::jws, pointInTime),
+        wireFormat(signedJwksCache, ExtendedJWKSetJWS::jws, pointInTime),
+        wireFormat(idpListCache, IdpListJWS::jws, pointInTime));
+  }
+
+  /**
+   * Restores the artifacts of a snapshot, verifying them offline. Entity configurations must be
+   * self-signed, everything else must be signed by a restored entity configuration referencing it.
+   * Artifacts failing verification or no longer valid are skipped and fetched on demand.
+   *
+   * <p>This does not replace establishing trust, the restored artifacts still go through the usual
+   * verification when used.
+   *
+   * @return the number of restored artifacts
+   */
+  public int restore(FederationSnapshot snapshot, Instant pointInTime) {
+
+    var entityConfigurations =
+        restore(
+            snapshot.entityConfigurations(),
+            EntityStatementJWS::parse,
+            entityStatementCache,
+            (k, es) -> es.verifySelfSigned(),
+            pointInTime);
+
+    var bySubject = new HashMap<String, EntityStatementJWS>();
+    var bySignedJwksUri = new HashMap<String, EntityStatementJWS>();
+    var byIdpListEndpoint = new HashMap<String, EntityStatementJWS>();
+    for (var es : entityConfigurations.values()) {
+      var metadata = Optional.ofNullable(es.body().metadata());
+      bySubject.put(es.body().sub(), es);
+      metadata
+          .map(EntityStatement.Metadata::openidProvider)
+          .map(EntityStatement.OpenidProvider::signedJwksUri)
+          .ifPresent(u -> bySignedJwksUri.put(u, es));
+      metadata
+          .map(EntityStatement.Metadata::federationEntity)
+          .map(EntityStatement.FederationEntity::idpListEndpoint)
+          .ifPresent(u -> byIdpListEndpoint.put(u, es));
+    }
+
+    var federationStatements =
+        restore(
+            snapshot.federationStatements(),
+            EntityStatementJWS::parse,
+            federationStatementCache,
+            (k, fs) -> isSignedBy(bySubject.get(fs.body().iss()), fs::verifySignature),
+            pointInTime);
+
+    var signedJwks =
+        restore(
+            snapshot.signedJwks(),
+            ExtendedJWKSetJWS::parse,
+            signedJwksCache,
+            (k, jwks) -> isSignedBy(bySignedJwksUri.get(k), jwks::verifySignature),
+            pointInTime);
+
+    var idpLists =
+        restore(
+            snapshot.idpLists(),
+            IdpListJWS::parse,
+            idpListCache,
+            (k, list) -> isSignedBy(byIdpListEndpoint.get(k), list::verifySignature),
+            pointInTime);
+
+    return entityConfigurations.size()
+        + federationStatements.size()
+        + signedJwks.size()
+        + idpLists.size();
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      // caches falling back to blocking loads wrap the failure once more
+      Throwable cause = e;
+      while (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      if (cause instanceof Error err) {
+        throw err;
+      }
+      throw e;
+    }
+  }
+
+  private boolean isSignedBy(EntityStatementJWS issuer, Predicate<JWKSet> verifier) {
+    return issuer != null && verifier.test(issuer.body().jwks());
+  }
+
+  private <T extends TemporalValid> Map<String, T> restore(
+      Map<String, String> wire,
+      Function<String, T> parser,
+      Cache<T> cache,
+      BiPredicate<String, T> verifier,
+      Instant pointInTime) {
+
+    var restored = new HashMap<String, T>();
+    for (var e : wire.entrySet()) {
+      try {
+        var value = parser.apply(e.getValue());
+        if (!value.isValidAt(pointInTime) || !verifier.test(e.getKey(), value)) {
+          logger.atDebug().log("skipping untrusted or expired snapshot entry '{}'", e.getKey());
+          continue;
+        }
+        cache.put(e.getKey(), value);
+        restored.put(e.getKey(), value);
+      } catch (RuntimeException ex) {
+        logger.atWarn().setCause(ex).log("skipping bad snapshot entry '{}'", e.getKey());
+      }
+    }
+    return restored;
+  }
+
+  private static <T extends TemporalValid> Map<String, String> wireFormat(
+      Cache<T> cache, Function<T, JWSObject> jwsOf, Instant pointInTime) {
+
+    var wire = new HashMap<String, String>();
+    cache
+        .entries()
+        .forEach(
+            (k, v) -> {
+              var jws = jwsOf.apply(v);
+              if (jws != null && v.isValidAt(pointInTime)) {
+                wire.put(k, jws.serialize());
+              }
+            });
+    return wire;
   }
 }
@@ -0,0 +1,82 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes response bodies by their {@code Content-Encoding}. The decoded size is limited, a tiny
+ * compressed body must not expand into gigabytes.
+ */
+class ContentDecoder {
+
+  static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  static final String IDENTITY = "identity";
+
+  private ContentDecoder() {}
+
+  /**
+   * @return the normalized content coding, e.g. {@code gzip} or {@code identity} if there is none
+   */
+  static String encoding(String contentEncoding) {
+    if (contentEncoding == null || contentEncoding.isBlank()) {
+      return IDENTITY;
+    }
+    var encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+    return "x-gzip".equals(encoding) ? "gzip" : encoding;
+  }
+
+  static byte[] decode(String encoding, byte[] body, long maxBytes) throws IOException {
+    if (IDENTITY.equals(encoding)) {
+      return body;
+    }
+    if (body.length == 0) {
+      return body;
+    }
+
+    try (var in = decoding(encoding, body)) {
+      var decoded = in.readNBytes((int) Math.min(maxBytes + 1, Integer.MAX_VALUE - 8));
+      if (decoded.length > maxBytes) {
+        throw new IOException("decoded response body exceeds %d bytes".formatted(maxBytes));
+      }
+      return decoded;
+    }
+  }
+
+  private static InputStream decoding(String encoding, byte[] body) throws IOException {
+    var in = new ByteArrayInputStream(body);
+    return switch (encoding) {
+      case "gzip" -> new GZIPInputStream(in);
+      case "deflate" -> {
+        var inflater = new Inflater(!isZlib(body));
+        yield new InflaterInputStream(in, inflater) {
+          @Override
+          public void close() throws IOException {
+            // a given inflater is not released by the stream itself
+            try {
+              super.close();
+            } finally {
+              inflater.end();
+            }
+          }
+        };
+      }
+      default -> throw new IOException("unsupported content encoding '%s'".formatted(encoding));
+    };
+  }
+
+  // 'deflate' is meant to be zlib wrapped, some servers send raw deflate data nonetheless
+  private static boolean isZlib(byte[] body) {
+    if (body.length < 2) {
+      return false;
+    }
+    var cmf = body[0] & 0xff;
+    var flg = body[1] & 0xff;
+    return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+  }
+}
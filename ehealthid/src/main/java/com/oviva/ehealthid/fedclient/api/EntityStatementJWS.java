@@ -4,8 +4,10 @@ import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.oviva.ehealthid.crypto.JwsVerifier;
 import com.oviva.ehealthid.fedclient.FederationExceptions;
+import com.oviva.ehealthid.util.CompactJws;
 import com.oviva.ehealthid.util.JsonCodec;
 import com.oviva.ehealthid.util.JsonPayloadTransformer;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import java.text.ParseException;
 import java.time.Instant;
 
@@ -31,6 +33,22 @@ public record EntityStatementJWS(JWSObject jws, EntityStatement body) implements
     }
   }
 
+  /** parses the raw bytes of a response body, see {@link CompactJws} */
+  public static EntityStatementJWS parse(@NonNull byte[] wire) {
+    try {
+      var jws = CompactJws.parse(wire);
+
+      if (!isValidTyp(jws)) {
+        throw FederationExceptions.notAnEntityStatement(jws.getHeader().getType().getType());
+      }
+
+      var body = CompactJws.readPayload(wire, EntityStatement.class);
+      return new EntityStatementJWS(jws, body);
+    } catch (ParseException e) {
+      throw FederationExceptions.badEntityStatement(e);
+    }
+  }
+
   private static boolean isValidTyp(JWSObject jws) {
 
     if (jws.getHeader() == null || jws.getHeader().getType() == null) {
@@ -54,4 +72,9 @@ public record EntityStatementJWS(JWSObject jws, EntityStatement body) implements
     var epoch = pointInTime.getEpochSecond();
     return body.nbf() < epoch && epoch < body.exp();
   }
+
+  @Override
+  public Instant expiresAt() {
+    return Instant.ofEpochSecond(body.exp());
+  }
 }
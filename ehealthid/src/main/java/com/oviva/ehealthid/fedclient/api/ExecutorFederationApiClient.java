@@ -0,0 +1,44 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the calls of a blocking {@link FederationApiClient} on the given executor, e.g. to fetch
+ * artifacts of a trust chain without blocking the caller. Failures complete the returned futures
+ * exceptionally.
+ */
+public class ExecutorFederationApiClient implements AsyncFederationApiClient {
+
+  private final FederationApiClient delegate;
+  private final Executor executor;
+
+  public ExecutorFederationApiClient(FederationApiClient delegate, Executor executor) {
+    this.delegate = delegate;
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchFederationStatementAsync(
+      URI federationFetchUrl, String issuer, String subject) {
+    return CompletableFuture.supplyAsync(
+        () -> delegate.fetchFederationStatement(federationFetchUrl, issuer, subject), executor);
+  }
+
+  @Override
+  public CompletableFuture<IdpListJWS> fetchIdpListAsync(URI idpListUrl) {
+    return CompletableFuture.supplyAsync(() -> delegate.fetchIdpList(idpListUrl), executor);
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchEntityConfigurationAsync(URI entityUrl) {
+    return CompletableFuture.supplyAsync(
+        () -> delegate.fetchEntityConfiguration(entityUrl), executor);
+  }
+
+  @Override
+  public CompletableFuture<ExtendedJWKSetJWS> fetchSignedJwksAsync(URI signedJwksUrl) {
+    return CompletableFuture.supplyAsync(() -> delegate.fetchSignedJwks(signedJwksUrl), executor);
+  }
+}
@@ -4,8 +4,10 @@ import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.oviva.ehealthid.crypto.JwsVerifier;
 import com.oviva.ehealthid.fedclient.FederationExceptions;
+import com.oviva.ehealthid.util.CompactJws;
 import com.oviva.ehealthid.util.JsonCodec;
 import com.oviva.ehealthid.util.JsonPayloadTransformer;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import java.text.ParseException;
 import java.time.Instant;
 
@@ -32,6 +34,22 @@ public record ExtendedJWKSetJWS(JWSObject jws, ExtendedJWKSet body) implements T
     }
   }
 
+  /** parses the raw bytes of a response body, see {@link CompactJws} */
+  public static ExtendedJWKSetJWS parse(@NonNull byte[] wire) {
+    try {
+      var jws = CompactJws.parse(wire);
+
+      if (!isValidTyp(jws)) {
+        throw FederationExceptions.notASignedJwks(jws.getHeader().getType().getType());
+      }
+
+      var body = CompactJws.readPayload(wire, ExtendedJWKSet.class);
+      return new ExtendedJWKSetJWS(jws, body);
+    } catch (ParseException e) {
+      throw FederationExceptions.badSignedJwks(e);
+    }
+  }
+
   private static boolean isValidTyp(JWSObject jws) {
     // GemSpec and OpenID Spec disagree
     // according to OpenID spec this is a MUST and GemSpec allows it blank
@@ -58,4 +76,12 @@ public record ExtendedJWKSetJWS(JWSObject jws, ExtendedJWKSet body) implements T
     var epoch = pointInTime.getEpochSecond();
     return body.exp() == 0 || epoch < body.exp();
   }
+
+  @Override
+  public Instant expiresAt() {
+    if (body.exp() == 0) {
+      return null;
+    }
+    return Instant.ofEpochSecond(body.exp());
+  }
 }
@@ -7,11 +7,30 @@ import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.UriBuilder;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
-public class FederationApiClientImpl implements FederationApiClient {
+/**
+ * Fetches federation artifacts over HTTP.
+ *
+ * <p>Remembers the validators ({@code ETag}, {@code Last-Modified}) of fetched artifacts and
+ * revalidates them with conditional requests. If the server answers with {@code 304 Not Modified}
+ * the previously parsed artifact is returned as is, without transferring or parsing it again.
+ * Artifacts about to expire are fetched unconditionally, the server would confirm them with their
+ * old expiry just the same.
+ *
+ * <p>The asynchronous variants are backed by {@link HttpClient#callAsync(Request)} and do not block
+ * a thread while waiting for the remote.
+ *
+ * <p>Every fetch is reported to the {@link OperationListener}, e.g. {@code entity_configuration}.
+ */
+public class FederationApiClientImpl implements FederationApiClient, AsyncFederationApiClient {
 
   public static final String ENTITY_STATEMENT_MEDIA_TYPE = "application/entity-statement+jwt";
   public static final String SIGNED_JWKS_MEDIA_TYPE = "application/jwk-set+jwt";
@@ -19,33 +38,104 @@ public class FederationApiClientImpl implements FederationApiClient {
   public static final String WELLKNOWN_FEDERATION_DOCUMENT = "openid-federation";
   public static final String WELLKNOWN_PATH = ".well-known";
 
+  private static final int MAX_VALIDATED = 1000;
+
   private final HttpClient httpClient;
+  private final Clock clock;
+  private final OperationListener listener;
+  private final Duration minTimeToLive;
+
+  private final Map<URI, Validated<?>> validated = new ConcurrentHashMap<>();
 
   public FederationApiClientImpl(HttpClient client) {
+    this(client, Clock.systemUTC());
+  }
+
+  public FederationApiClientImpl(HttpClient client, Clock clock) {
+    this(client, clock, OperationListener.NOOP);
+  }
+
+  public FederationApiClientImpl(HttpClient client, Clock clock, OperationListener listener) {
+    this(client, clock, listener, Duration.ZERO);
+  }
+
+  /**
+   * @param minTimeToLive artifacts valid for less than this are no longer revalidated but fetched
+   *     anew, e.g. the minimum time to live of the cache in front, which would otherwise ask for
+   *     the very same artifact again on every lookup
+   */
+  public FederationApiClientImpl(
+      HttpClient client, Clock clock, OperationListener listener, Duration minTimeToLive) {
     this.httpClient = client;
+    this.clock = clock;
+    this.listener = listener;
+    this.minTimeToLive = minTimeToLive;
   }
 
   @NonNull
   @Override
   public EntityStatementJWS fetchFederationStatement(
       URI federationFetchUrl, String issuer, String subject) {
+    return doGetRequest(federationStatementGet(federationFetchUrl, issuer, subject));
+  }
 
-    var params = List.of(new Param("iss", issuer), new Param("sub", subject));
+  @NonNull
+  @Override
+  public IdpListJWS fetchIdpList(URI idpListUrl) {
+    return doGetRequest(idpListGet(idpListUrl));
+  }
 
-    var body = doGetRequest(federationFetchUrl, ENTITY_STATEMENT_MEDIA_TYPE, params);
-    return EntityStatementJWS.parse(body);
+  @Override
+  public @NonNull EntityStatementJWS fetchEntityConfiguration(URI entityUrl) {
+    return doGetRequest(entityConfigurationGet(entityUrl));
   }
 
   @NonNull
   @Override
-  public IdpListJWS fetchIdpList(URI idpListUrl) {
+  public ExtendedJWKSetJWS fetchSignedJwks(URI signedJwksUrl) {
+    return doGetRequest(signedJwksGet(signedJwksUrl));
+  }
 
-    var body = doGetRequest(idpListUrl, MediaType.APPLICATION_JSON, null);
-    return IdpListJWS.parse(body);
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchFederationStatementAsync(
+      URI federationFetchUrl, String issuer, String subject) {
+    return doGetRequestAsync(federationStatementGet(federationFetchUrl, issuer, subject));
   }
 
   @Override
-  public @NonNull EntityStatementJWS fetchEntityConfiguration(URI entityUrl) {
+  public CompletableFuture<IdpListJWS> fetchIdpListAsync(URI idpListUrl) {
+    return doGetRequestAsync(idpListGet(idpListUrl));
+  }
+
+  @Override
+  public CompletableFuture<EntityStatementJWS> fetchEntityConfigurationAsync(URI entityUrl) {
+    return doGetRequestAsync(entityConfigurationGet(entityUrl));
+  }
+
+  @Override
+  public CompletableFuture<ExtendedJWKSetJWS> fetchSignedJwksAsync(URI signedJwksUrl) {
+    return doGetRequestAsync(signedJwksGet(signedJwksUrl));
+  }
+
+  private Get<EntityStatementJWS> federationStatementGet(
+      URI federationFetchUrl, String issuer, String subject) {
+
+    var params = List.of(new Param("iss", issuer), new Param("sub", subject));
+
+    return prepareGet(
+        "federation_statement",
+        federationFetchUrl,
+        ENTITY_STATEMENT_MEDIA_TYPE,
+        params,
+        EntityStatementJWS::parse);
+  }
+
+  private Get<IdpListJWS> idpListGet(URI idpListUrl) {
+
+    return prepareGet("idp_list", idpListUrl, MediaType.APPLICATION_JSON, null, IdpListJWS::parse);
+  }
+
+  private Get<EntityStatementJWS> entityConfigurationGet(URI entityUrl) {
 
     var uri =
         UriBuilder.fromUri(entityUrl)
@@ -53,22 +143,50 @@ public class FederationApiClientImpl implements FederationApiClient {
             .path(WELLKNOWN_FEDERATION_DOCUMENT)
             .build();
 
-    var body = doGetRequest(uri, ENTITY_STATEMENT_MEDIA_TYPE, null);
-    return EntityStatementJWS.parse(body);
+    return prepareGet(
+        "entity_configuration", uri, ENTITY_STATEMENT_MEDIA_TYPE, null, EntityStatementJWS::parse);
   }
 
-  @NonNull
-  @Override
-  public ExtendedJWKSetJWS fetchSignedJwks(URI signedJwksUrl) {
+  private Get<ExtendedJWKSetJWS> signedJwksGet(URI signedJwksUrl) {
 
     // the Gematik IdP lies about the content-type, hence also requesting 'application/jwk-set+json'
-    var body =
-        doGetRequest(
-            signedJwksUrl, SIGNED_JWKS_MEDIA_TYPE + ", " + ALT_SIGNED_JWKS_MEDIA_TYPE, null);
-    return ExtendedJWKSetJWS.parse(body);
+    return prepareGet(
+        "signed_jwks",
+        signedJwksUrl,
+        SIGNED_JWKS_MEDIA_TYPE + ", " + ALT_SIGNED_JWKS_MEDIA_TYPE,
+        null,
+        ExtendedJWKSetJWS::parse);
+  }
+
+  private <T extends TemporalValid> T doGetRequest(Get<T> get) {
+    var start = System.nanoTime();
+
+    HttpClient.Response res;
+    try {
+      res = httpClient.call(get.request());
+    } catch (RuntimeException e) {
+      get.observe(0, e, start);
+      throw e;
+    }
+    return get.handle(res, start);
   }
 
-  private String doGetRequest(URI uri, String accept, List<Param> params) {
+  private <T extends TemporalValid> CompletableFuture<T> doGetRequestAsync(Get<T> get) {
+    var start = System.nanoTime();
+
+    return httpClient
+        .callAsync(get.request())
+        .whenComplete(
+            (res, e) -> {
+              if (e != null) {
+                get.observe(0, e, start);
+              }
+            })
+        .thenApply(res -> get.handle(res, start));
+  }
+
+  private <T extends TemporalValid> Get<T> prepareGet(
+      String operation, URI uri, String accept, List<Param> params, Function<byte[], T> parser) {
 
     List<Header> headers = new ArrayList<>();
 
@@ -80,15 +198,101 @@ public class FederationApiClientImpl implements FederationApiClient {
       uri = builder.build();
     }
 
-    var req = new Request(uri, "GET", headers, null);
+    // only revalidate what we could still use as is, a 304 keeps the old expiry
+    @SuppressWarnings("unchecked")
+    var previous = (Validated<T>) validated.get(uri);
+    if (previous != null && previous.value().isValidAt(clock.instant().plus(minTimeToLive))) {
+      if (previous.etag() != null) {
+        headers.add(new Header(HttpHeaders.IF_NONE_MATCH, previous.etag()));
+      }
+      if (previous.lastModified() != null) {
+        headers.add(new Header(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified()));
+      }
+    } else {
+      previous = null;
+    }
+
+    return new Get<>(operation, new Request(uri, "GET", headers, null), previous, parser);
+  }
+
+  private <T extends TemporalValid> void remember(URI uri, HttpClient.Response res, T value) {
+
+    var etag = header(res, HttpHeaders.ETAG);
+    var lastModified = header(res, HttpHeaders.LAST_MODIFIED);
+    if (etag == null && lastModified == null) {
+      validated.remove(uri);
+      return;
+    }
 
-    var res = httpClient.call(req);
-    if (res.status() != 200) {
-      throw HttpExceptions.httpFailBadStatus("GET", uri, res.status());
+    if (validated.size() >= MAX_VALIDATED) {
+      // the federation is much smaller than this, simply start over
+      validated.clear();
     }
+    validated.put(uri, new Validated<>(value, etag, lastModified));
+  }
 
-    return new String(res.body(), StandardCharsets.UTF_8);
+  private String header(HttpClient.Response res, String name) {
+    if (res.headers() == null) {
+      return null;
+    }
+    return res.headers().stream()
+        .filter(h -> name.equalsIgnoreCase(h.name()))
+        .map(Header::value)
+        .findFirst()
+        .orElse(null);
   }
 
   private record Param(String name, String value) {}
+
+  private class Get<T extends TemporalValid> {
+
+    private final String operation;
+    private final Request request;
+    private final Validated<T> previous;
+    private final Function<byte[], T> parser;
+
+    Get(String operation, Request request, Validated<T> previous, Function<byte[], T> parser) {
+      this.operation = operation;
+      this.request = request;
+      this.previous = previous;
+      this.parser = parser;
+    }
+
+    Request request() {
+      return request;
+    }
+
+    T handle(HttpClient.Response res, long start) {
+      try {
+        var value = handle(res);
+        observe(res.status(), null, start);
+        return value;
+      } catch (RuntimeException e) {
+        observe(res.status(), e, start);
+        throw e;
+      }
+    }
+
+    void observe(int status, Throwable failure, long start) {
+      var duration = Duration.ofNanos(System.nanoTime() - start);
+      listener.onOperation(operation, request.uri(), status, failure, duration);
+    }
+
+    private T handle(HttpClient.Response res) {
+      if (res.status() == 304 && previous != null) {
+        return previous.value();
+      }
+
+      if (res.status() != 200) {
+        throw HttpExceptions.httpFailBadStatus("GET", request.uri(), res.status());
+      }
+
+      // parsed straight from the body, without decoding it into a string first
+      var value = parser.apply(res.body());
+      remember(request.uri(), res, value);
+      return value;
+    }
+  }
+
+  private record Validated<T extends TemporalValid>(T value, String etag, String lastModified) {}
 }
@@ -0,0 +1,65 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.oviva.ehealthid.util.JsonCodec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Federation artifacts in their compact JWS wire format, keyed like the caches of {@link
+ * CachedFederationApiClient}. Used to persist trusted artifacts across restarts, it carries no
+ * trust by itself: everything must be verified again when restored.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record FederationSnapshot(
+    @JsonProperty("version") int version,
+    @JsonProperty("entity_configurations") Map<String, String> entityConfigurations,
+    @JsonProperty("federation_statements") Map<String, String> federationStatements,
+    @JsonProperty("signed_jwks") Map<String, String> signedJwks,
+    @JsonProperty("idp_lists") Map<String, String> idpLists) {
+
+  public static final int VERSION = 1;
+
+  public FederationSnapshot {
+    entityConfigurations = entityConfigurations == null ? Map.of() : entityConfigurations;
+    federationStatements = federationStatements == null ? Map.of() : federationStatements;
+    signedJwks = signedJwks == null ? Map.of() : signedJwks;
+    idpLists = idpLists == null ? Map.of() : idpLists;
+  }
+
+  public static FederationSnapshot read(Path path) {
+    try {
+      var snapshot = JsonCodec.readValue(Files.readAllBytes(path), FederationSnapshot.class);
+      if (snapshot.version() != VERSION) {
+        throw new IllegalStateException(
+            "unsupported snapshot version %d in '%s'".formatted(snapshot.version(), path));
+      }
+      return snapshot;
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to read snapshot from '%s'".formatted(path), e);
+    }
+  }
+
+  /** writes the snapshot atomically, readers never see a partially written file */
+  public void write(Path path) {
+    var target = path.toAbsolutePath();
+    try {
+      var tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+      try {
+        Files.writeString(tmp, JsonCodec.writeValueAsString(this), StandardCharsets.UTF_8);
+        Files.move(
+            tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to write snapshot to '%s'".formatted(path), e);
+    }
+  }
+}
@@ -2,11 +2,26 @@ package com.oviva.ehealthid.fedclient.api;
 
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface HttpClient {
 
   Response call(Request req);
 
+  /**
+   * Sends the request without blocking the calling thread. Failures complete the returned future
+   * exceptionally, usually with an {@link HttpException}.
+   *
+   * <p>The default implementation falls back to {@link #call(Request)} on the calling thread.
+   */
+  default CompletableFuture<Response> callAsync(Request req) {
+    try {
+      return CompletableFuture.completedFuture(call(req));
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
   record Request(URI uri, String method, List<Header> headers, byte[] body) {}
 
   record Response(int status, List<Header> headers, byte[] body) {}
@@ -1,7 +1,10 @@
 package com.oviva.ehealthid.fedclient.api;
 
 import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.oviva.ehealthid.crypto.JwsVerifier;
 import com.oviva.ehealthid.fedclient.FederationExceptions;
+import com.oviva.ehealthid.util.CompactJws;
 import com.oviva.ehealthid.util.JsonCodec;
 import com.oviva.ehealthid.util.JsonPayloadTransformer;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -29,9 +32,34 @@ public record IdpListJWS(JWSObject jws, IdpList body) implements TemporalValid {
     }
   }
 
+  /** parses the raw bytes of a response body, see {@link CompactJws} */
+  public static IdpListJWS parse(@NonNull byte[] wire) {
+    try {
+      var jws = CompactJws.parse(wire);
+
+      if (!IDP_LIST_TYP.equals(jws.getHeader().getType().getType())) {
+        throw FederationExceptions.notAnIdpList(jws.getHeader().getType().getType());
+      }
+
+      var body = CompactJws.readPayload(wire, IdpList.class);
+      return new IdpListJWS(jws, body);
+    } catch (ParseException e) {
+      throw FederationExceptions.badIdpList(e);
+    }
+  }
+
+  public boolean verifySignature(JWKSet jwks) {
+    return JwsVerifier.verify(jwks, jws);
+  }
+
   @Override
   public boolean isValidAt(Instant pointInTime) {
     var epoch = pointInTime.getEpochSecond();
     return body.nbf() < epoch && epoch < body.exp();
   }
+
+  @Override
+  public Instant expiresAt() {
+    return Instant.ofEpochSecond(body.exp());
+  }
 }
@@ -3,12 +3,23 @@ package com.oviva.ehealthid.fedclient.api;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
+/**
+ * Simple in-memory cache for federation artifacts.
+ *
+ * <p>Loads are single-flight per key: concurrent callers for the same key share one in-flight load
+ * instead of each hitting the remote. The supplier is never run while holding a map lock, so a slow
+ * load does not block lookups of unrelated keys. While a refresh is in progress, callers are served
+ * the current entry as long as it is still valid.
+ */
 public class InMemoryCacheImpl<T extends TemporalValid> implements Cache<T> {
 
   private final Map<String, T> cache = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
 
   private final Clock clock;
   private final Duration minTimeToLive;
@@ -20,22 +31,94 @@ public class InMemoryCacheImpl<T extends TemporalValid> implements Cache<T> {
 
   @Override
   public T computeIfAbsent(String key, Function<String, T> supplier) {
-    return cache.compute(
-        key,
-        (String k, T current) -> {
-          if (isValidLongEnough(current)) {
-            return current;
-          }
-          return supplier.apply(key);
-        });
+
+    var current = cache.get(key);
+    if (isValidLongEnough(current)) {
+      return current;
+    }
+
+    var load = new CompletableFuture<T>();
+    var pending = inFlight.putIfAbsent(key, load);
+    if (pending != null) {
+      // someone else is already loading, serve the stale entry meanwhile if we still can
+      if (isValid(current)) {
+        return current;
+      }
+      return await(pending);
+    }
+
+    return load(key, supplier, load, false);
   }
 
-  private boolean isValidLongEnough(T entity) {
-    if (entity == null) {
-      return false;
+  @Override
+  public T refresh(String key, Function<String, T> supplier) {
+
+    var load = new CompletableFuture<T>();
+    var pending = inFlight.putIfAbsent(key, load);
+    if (pending != null) {
+      return await(pending);
+    }
+
+    return load(key, supplier, load, true);
+  }
+
+  @Override
+  public void put(String key, T value) {
+    cache.put(key, value);
+  }
+
+  @Override
+  public Map<String, T> entries() {
+    return Map.copyOf(cache);
+  }
+
+  private T load(
+      String key, Function<String, T> supplier, CompletableFuture<T> load, boolean force) {
+    try {
+      // a concurrent load might have completed between our lookup and claiming the load
+      var current = cache.get(key);
+      if (!force && isValidLongEnough(current)) {
+        load.complete(current);
+        return current;
+      }
+
+      var fresh = supplier.apply(key);
+      if (fresh == null) {
+        cache.remove(key);
+      } else {
+        cache.put(key, fresh);
+      }
+
+      load.complete(fresh);
+      return fresh;
+    } catch (RuntimeException | Error e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, load);
     }
+  }
+
+  private T await(CompletableFuture<T> pending) {
+    try {
+      return pending.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      if (e.getCause() instanceof Error err) {
+        throw err;
+      }
+      throw e;
+    }
+  }
 
-    if (!entity.isValidAt(clock.instant())) {
+  private boolean isValid(T entity) {
+    return entity != null && entity.isValidAt(clock.instant());
+  }
+
+  private boolean isValidLongEnough(T entity) {
+    if (!isValid(entity)) {
       return false;
     }
 
@@ -4,52 +4,155 @@ import java.io.IOException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
 public class JavaHttpClient implements HttpClient {
 
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String CONTENT_ENCODING = "Content-Encoding";
+  private static final String CONTENT_LENGTH = "Content-Length";
+
   private final java.net.http.HttpClient httpClient;
+  private final BodyHandler<byte[]> bodyHandler;
+  private final long maxBodyBytes;
+  private final boolean decodes;
+  private final TransferListener transferListener;
 
   public JavaHttpClient(java.net.http.HttpClient httpClient) {
     this.httpClient = httpClient;
+    this.bodyHandler = BodyHandlers.ofByteArray();
+    this.maxBodyBytes = Long.MAX_VALUE;
+    this.decodes = false;
+    this.transferListener = TransferListener.NOOP;
+  }
+
+  /**
+   * @param maxBodyBytes the maximum size of response bodies, larger ones fail without being read
+   *     completely
+   */
+  public JavaHttpClient(java.net.http.HttpClient httpClient, long maxBodyBytes) {
+    this.httpClient = httpClient;
+    this.bodyHandler = info -> BoundedBodySubscriber.of(info, maxBodyBytes);
+    this.maxBodyBytes = maxBodyBytes;
+    this.decodes = false;
+    this.transferListener = TransferListener.NOOP;
+  }
+
+  /**
+   * Negotiates compressed response bodies with {@code Accept-Encoding: gzip, deflate} and
+   * transparently decodes them, unless a request asks for an encoding itself.
+   *
+   * @param maxBodyBytes the maximum size of response bodies, both as received and once decoded
+   * @param transferListener notified about the size of each body as received and once decoded
+   */
+  public JavaHttpClient(
+      java.net.http.HttpClient httpClient, long maxBodyBytes, TransferListener transferListener) {
+    this.httpClient = httpClient;
+    this.bodyHandler = info -> BoundedBodySubscriber.of(info, maxBodyBytes);
+    this.maxBodyBytes = maxBodyBytes;
+    this.decodes = true;
+    this.transferListener = transferListener;
   }
 
   @Override
   public Response call(Request req) {
 
+    try {
+      var res = httpClient.send(toHttpRequest(req), bodyHandler);
+      return toResponse(req, res);
+    } catch (IOException e) {
+      throw HttpExceptions.httpFailCausedBy(req.method(), req.uri(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw HttpExceptions.httpFailCausedBy(req.method(), req.uri(), e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Response> callAsync(Request req) {
+
+    return httpClient
+        .sendAsync(toHttpRequest(req), bodyHandler)
+        .handle(
+            (res, e) -> {
+              if (e != null) {
+                throw toHttpException(req, e);
+              }
+              try {
+                return toResponse(req, res);
+              } catch (IOException ex) {
+                throw HttpExceptions.httpFailCausedBy(req.method(), req.uri(), ex);
+              }
+            });
+  }
+
+  private HttpRequest toHttpRequest(Request req) {
+
     var builder = HttpRequest.newBuilder().uri(req.uri());
 
     Stream.ofNullable(req.headers())
         .flatMap(List::stream)
         .forEach(h -> builder.header(h.name(), h.value()));
 
+    if (isDecoding(req)) {
+      builder.header(ACCEPT_ENCODING, ContentDecoder.ACCEPT_ENCODING);
+    }
+
     if (req.body() == null || req.body().length == 0) {
       builder.method(req.method(), BodyPublishers.noBody());
     } else {
       builder.method(req.method(), BodyPublishers.ofByteArray(req.body()));
     }
 
-    try {
-      var res = httpClient.send(builder.build(), BodyHandlers.ofByteArray());
-      return toResponse(res);
-    } catch (IOException e) {
-      throw HttpExceptions.httpFailCausedBy(req.method(), req.uri(), e);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+    return builder.build();
+  }
+
+  private RuntimeException toHttpException(Request req, Throwable e) {
+    var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    if (cause instanceof Exception exception) {
+      return HttpExceptions.httpFailCausedBy(req.method(), req.uri(), exception);
     }
+    return new CompletionException(cause);
+  }
 
-    return null;
+  private boolean isDecoding(Request req) {
+    return decodes
+        && Stream.ofNullable(req.headers())
+            .flatMap(List::stream)
+            .noneMatch(h -> ACCEPT_ENCODING.equalsIgnoreCase(h.name()));
   }
 
-  private Response toResponse(HttpResponse<byte[]> response) {
+  private Response toResponse(Request req, HttpResponse<byte[]> response) throws IOException {
 
     var headers =
         response.headers().map().entrySet().stream()
             .map(e -> new Header(e.getKey(), e.getValue().get(0)))
             .toList();
 
-    return new Response(response.statusCode(), headers, response.body());
+    var body = response.body();
+    if (body == null || !isDecoding(req)) {
+      return new Response(response.statusCode(), headers, body);
+    }
+
+    var encoding =
+        ContentDecoder.encoding(response.headers().firstValue(CONTENT_ENCODING).orElse(null));
+    var decoded = ContentDecoder.decode(encoding, body, maxBodyBytes);
+    transferListener.onBody(req.uri(), encoding, body.length, decoded.length);
+
+    if (decoded != body) {
+      // the body is not encoded anymore, nor does the length still match
+      headers =
+          headers.stream()
+              .filter(h -> !CONTENT_ENCODING.equalsIgnoreCase(h.name()))
+              .filter(h -> !CONTENT_LENGTH.equalsIgnoreCase(h.name()))
+              .toList();
+    }
+
+    return new Response(response.statusCode(), headers, decoded);
   }
 }
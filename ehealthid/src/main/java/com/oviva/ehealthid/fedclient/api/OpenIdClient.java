@@ -8,14 +8,25 @@ import com.oviva.ehealthid.util.JsonCodec;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 
+/**
+ * Calls the OpenID endpoints of sectoral IdPs, every call is reported to the {@link
+ * OperationListener} as either {@code pushed_authorization_request} or {@code token}.
+ */
 public class OpenIdClient {
 
   private final HttpClient httpClient;
+  private final OperationListener listener;
 
   public OpenIdClient(HttpClient httpClient) {
+    this(httpClient, OperationListener.NOOP);
+  }
+
+  public OpenIdClient(HttpClient httpClient, OperationListener listener) {
     this.httpClient = httpClient;
+    this.listener = listener;
   }
 
   public TokenResponse exchangePkceCode(
@@ -37,12 +48,7 @@ public class OpenIdClient {
 
     var req = new Request(tokenEndpoint, "POST", headers, body);
 
-    var res = httpClient.call(req);
-    if (res.status() != 200) {
-      throw HttpExceptions.httpFailBadStatus(req.method(), tokenEndpoint, res.status());
-    }
-
-    return JsonCodec.readValue(res.body(), TokenResponse.class);
+    return call("token", req, 200, TokenResponse.class);
   }
 
   public ParResponse requestPushedUri(
@@ -55,13 +61,31 @@ public class OpenIdClient {
 
     var req = new Request(pushedAuthorizationRequestUri, "POST", headers, parBodyBuilder.build());
 
-    var res = httpClient.call(req);
-    if (res.status() != 201) {
-      throw HttpExceptions.httpFailBadStatus(
-          req.method(), pushedAuthorizationRequestUri, res.status());
+    return call("pushed_authorization_request", req, 201, ParResponse.class);
+  }
+
+  private <T> T call(String operation, Request req, int expectedStatus, Class<T> type) {
+    var start = System.nanoTime();
+    var status = 0;
+    try {
+      var res = httpClient.call(req);
+      status = res.status();
+      if (status != expectedStatus) {
+        throw HttpExceptions.httpFailBadStatus(req.method(), req.uri(), status);
+      }
+
+      var value = JsonCodec.readValue(res.body(), type);
+      observe(operation, req, status, null, start);
+      return value;
+    } catch (RuntimeException e) {
+      observe(operation, req, status, e, start);
+      throw e;
     }
+  }
 
-    return JsonCodec.readValue(res.body(), ParResponse.class);
+  private void observe(String operation, Request req, int status, Throwable failure, long start) {
+    var duration = Duration.ofNanos(System.nanoTime() - start);
+    listener.onOperation(operation, req.uri(), status, failure, duration);
   }
 
   @JsonIgnoreProperties(ignoreUnknown = true)
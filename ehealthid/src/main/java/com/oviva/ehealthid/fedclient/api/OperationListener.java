@@ -0,0 +1,33 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Observes the completed operations of {@link FederationApiClientImpl} and {@link OpenIdClient},
+ * e.g. to record their latency and error rate.
+ */
+@FunctionalInterface
+public interface OperationListener {
+
+  OperationListener NOOP = (operation, uri, status, failure, duration) -> {};
+
+  /**
+   * @param operation the operation, e.g. {@code idp_list} or {@code token}
+   * @param uri the requested URI
+   * @param status the status of the response, {@code 0} if there was none
+   * @param failure why the operation failed, {@code null} if it succeeded
+   * @param duration the time from sending the request until the response was handled
+   */
+  void onOperation(String operation, URI uri, int status, Throwable failure, Duration duration);
+
+  /**
+   * @return a listener notifying this one and then the given one
+   */
+  default OperationListener andThen(OperationListener next) {
+    return (operation, uri, status, failure, duration) -> {
+      onOperation(operation, uri, status, failure, duration);
+      next.onOperation(operation, uri, status, failure, duration);
+    };
+  }
+}
@@ -0,0 +1,263 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes cached entries in the background before they expire, so that requests do not have to
+ * wait for remote fetches in the steady state.
+ *
+ * <p>Each entry is refreshed after a configured fraction of its remaining lifetime has passed,
+ * minus some random jitter to spread out the load. Failed refreshes are retried with exponential
+ * backoff. Entries which were not accessed since their last refresh are no longer refreshed until
+ * they are requested again.
+ *
+ * <p>Refreshes never wait for a load on the scheduler, entries loaded with {@link
+ * #computeIfAbsentAsync(String, Function)} are refreshed without blocking it at all.
+ */
+public class RefreshAheadCache<T extends TemporalValid> implements Cache<T> {
+
+  private static final Logger logger = LoggerFactory.getLogger(RefreshAheadCache.class);
+
+  private final Cache<T> delegate;
+  private final ScheduledExecutorService scheduler;
+  private final Clock clock;
+  private final RefreshPolicy policy;
+
+  private final Map<String, Refresh> refreshes = new ConcurrentHashMap<>();
+
+  public RefreshAheadCache(
+      Cache<T> delegate, ScheduledExecutorService scheduler, Clock clock, RefreshPolicy policy) {
+    this.delegate = delegate;
+    this.scheduler = scheduler;
+    this.clock = clock;
+    this.policy = policy;
+  }
+
+  @Override
+  public T computeIfAbsent(String key, Function<String, T> supplier) {
+    var value = delegate.computeIfAbsent(key, supplier);
+    track(key, blocking(supplier), value);
+    return value;
+  }
+
+  @Override
+  public CompletableFuture<T> computeIfAbsentAsync(
+      String key, Function<String, CompletableFuture<T>> loader) {
+    return delegate
+        .computeIfAbsentAsync(key, loader)
+        .thenApply(
+            value -> {
+              track(key, loader, value);
+              return value;
+            });
+  }
+
+  @Override
+  public T refresh(String key, Function<String, T> supplier) {
+    var value = delegate.refresh(key, supplier);
+    track(key, blocking(supplier), value);
+    return value;
+  }
+
+  @Override
+  public void put(String key, T value) {
+    // tracked for refreshes once it is requested
+    delegate.put(key, value);
+  }
+
+  @Override
+  public Map<String, T> entries() {
+    return delegate.entries();
+  }
+
+  private void track(String key, Function<String, CompletableFuture<T>> loader, T value) {
+    if (value == null) {
+      return;
+    }
+
+    // retired refreshes are replaced by a fresh one
+    while (!refreshes.computeIfAbsent(key, Refresh::new).touch(loader, value)) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private static <T> Function<String, CompletableFuture<T>> blocking(Function<String, T> supplier) {
+    return k -> {
+      try {
+        return CompletableFuture.completedFuture(supplier.apply(k));
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    };
+  }
+
+  private Duration jitter(Duration delay) {
+    if (policy.jitter() <= 0) {
+      return delay;
+    }
+
+    // only ever refresh earlier, never later than planned
+    var factor = 1.0 - policy.jitter() * ThreadLocalRandom.current().nextDouble();
+    return Duration.ofMillis((long) (delay.toMillis() * factor));
+  }
+
+  /**
+   * @param refreshFraction the fraction of the remaining lifetime of an entry after which it is
+   *     refreshed, e.g. {@code 0.75}
+   * @param jitter the maximum fraction by which a refresh is randomly scheduled earlier
+   * @param minBackoff the delay before the first retry of a failed refresh, also the minimum delay
+   *     between two refreshes of the same entry
+   * @param maxBackoff the maximum delay between retries of a failed refresh
+   */
+  public record RefreshPolicy(
+      double refreshFraction, double jitter, Duration minBackoff, Duration maxBackoff) {
+
+    public RefreshPolicy {
+      if (refreshFraction <= 0 || refreshFraction >= 1) {
+        throw new IllegalArgumentException(
+            "refresh fraction must be between 0 and 1, was: " + refreshFraction);
+      }
+      if (jitter < 0 || jitter >= 1) {
+        throw new IllegalArgumentException("jitter must be between 0 and 1, was: " + jitter);
+      }
+    }
+  }
+
+  private class Refresh implements Runnable {
+
+    private final String key;
+
+    private Function<String, CompletableFuture<T>> loader;
+    private boolean scheduled;
+    private boolean accessed;
+    private boolean retired;
+    private int failures;
+
+    Refresh(String key) {
+      this.key = key;
+    }
+
+    synchronized boolean touch(Function<String, CompletableFuture<T>> loader, T value) {
+      if (retired) {
+        return false;
+      }
+
+      this.loader = loader;
+      this.accessed = true;
+
+      if (!scheduled) {
+        scheduleFor(value);
+      }
+      return true;
+    }
+
+    @Override
+    public void run() {
+
+      Function<String, CompletableFuture<T>> currentLoader;
+      synchronized (this) {
+        if (!accessed && failures == 0) {
+          // nobody needed this entry since the last refresh, stop until it is requested again
+          retire();
+          return;
+        }
+        accessed = false;
+        currentLoader = loader;
+      }
+
+      CompletableFuture<T> load;
+      try {
+        load = currentLoader.apply(key);
+      } catch (RuntimeException e) {
+        load = CompletableFuture.failedFuture(e);
+      }
+
+      // the load might need the scheduler itself to complete, e.g. for timeouts, never wait for it
+      load.whenComplete(this::refreshed);
+    }
+
+    private void refreshed(T value, Throwable e) {
+      if (e != null) {
+        var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        synchronized (this) {
+          failures++;
+          var backoff = backoff();
+          logger
+              .atWarn()
+              .setCause(cause)
+              .log("failed to refresh '{}', attempt {}, retrying in {}", key, failures, backoff);
+          schedule(backoff);
+        }
+        return;
+      }
+
+      if (value != null) {
+        // the current entry is served until the fresh one replaces it
+        delegate.put(key, value);
+      }
+
+      synchronized (this) {
+        failures = 0;
+        scheduleFor(value);
+      }
+    }
+
+    private void scheduleFor(T value) {
+      var exp = value == null ? null : value.expiresAt();
+      if (exp == null) {
+        // does not expire, nothing to refresh
+        retire();
+        return;
+      }
+
+      var remaining = Duration.between(clock.instant(), exp);
+      if (remaining.isNegative() || remaining.isZero()) {
+        retire();
+        return;
+      }
+
+      var delay = Duration.ofMillis((long) (remaining.toMillis() * policy.refreshFraction()));
+      delay = jitter(delay);
+      if (delay.compareTo(policy.minBackoff()) < 0) {
+        delay = policy.minBackoff();
+      }
+
+      schedule(delay);
+    }
+
+    private Duration backoff() {
+      var backoff = policy.minBackoff().multipliedBy(1L << Math.min(failures - 1, 16));
+      if (backoff.compareTo(policy.maxBackoff()) > 0) {
+        backoff = policy.maxBackoff();
+      }
+      return jitter(backoff);
+    }
+
+    private void schedule(Duration delay) {
+      try {
+        scheduler.schedule(this, delay.toMillis(), TimeUnit.MILLISECONDS);
+        scheduled = true;
+      } catch (RejectedExecutionException e) {
+        // scheduler is shut down, fall back to lazy loading
+        retire();
+      }
+    }
+
+    private void retire() {
+      retired = true;
+      refreshes.remove(key, this);
+    }
+  }
+}
@@ -1,8 +1,21 @@
 package com.oviva.ehealthid.fedclient.api;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
 import java.time.Instant;
 
 public interface TemporalValid {
 
   boolean isValidAt(Instant pointInTime);
+
+  /**
+   * The default implementation does not know when this expires and returns {@code null}, entries
+   * are then neither refreshed ahead nor evicted by their expiry.
+   *
+   * @return the point in time from which on this is no longer valid, {@code null} if it does not
+   *     expire
+   */
+  @Nullable
+  default Instant expiresAt() {
+    return null;
+  }
 }
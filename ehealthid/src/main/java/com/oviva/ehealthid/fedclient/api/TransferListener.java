@@ -0,0 +1,21 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import java.net.URI;
+
+/**
+ * Observes the response bodies received by {@link JavaHttpClient}, e.g. to record how much
+ * compression saves.
+ */
+@FunctionalInterface
+public interface TransferListener {
+
+  TransferListener NOOP = (uri, encoding, wireBytes, decodedBytes) -> {};
+
+  /**
+   * @param uri the requested URI
+   * @param encoding the content coding of the body, {@code identity} if it was not encoded
+   * @param wireBytes the size of the body as received
+   * @param decodedBytes the size of the body after decoding
+   */
+  void onBody(URI uri, String encoding, long wireBytes, long decodedBytes);
+}
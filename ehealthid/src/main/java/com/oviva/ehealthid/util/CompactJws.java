@@ -0,0 +1,49 @@
+package com.oviva.ehealthid.util;
+
+import com.nimbusds.jose.JWSObject;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Base64;
+
+/**
+ * Parses compact serialized JWS straight from raw bytes, e.g. a response body.
+ *
+ * <p>The compact serialization is plain ASCII, so the bytes are mapped to a string as is rather
+ * than decoding them as UTF-8. The payload is deserialized from a stream decoding its base64
+ * segment on the fly, without materializing the decoded JSON first.
+ */
+public class CompactJws {
+
+  private CompactJws() {}
+
+  @NonNull
+  public static JWSObject parse(@NonNull byte[] wire) throws ParseException {
+    return JWSObject.parse(new String(wire, StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * @param wire the compact serialized JWS, already successfully parsed with {@link #parse(byte[])}
+   */
+  public static <T> T readPayload(@NonNull byte[] wire, Class<T> clazz) throws ParseException {
+
+    var start = indexOf(wire, 0) + 1;
+    var end = indexOf(wire, start);
+    if (start == 0 || end < 0) {
+      throw new ParseException("missing payload in compact serialized JWS", 0);
+    }
+
+    var payload = new ByteArrayInputStream(wire, start, end - start);
+    return JsonCodec.readValue(Base64.getUrlDecoder().wrap(payload), clazz);
+  }
+
+  private static int indexOf(byte[] wire, int from) {
+    for (var i = from; i < wire.length; i++) {
+      if (wire[i] == '.') {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
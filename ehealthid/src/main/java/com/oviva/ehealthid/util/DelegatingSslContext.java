@@ -0,0 +1,104 @@
+package com.oviva.ehealthid.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.util.function.UnaryOperator;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * An initialized {@link SSLContext} which passes every {@link SSLEngine} it creates through a hook,
+ * e.g. to observe or count them. This is what {@link java.net.http.HttpClient} uses for each new
+ * connection.
+ *
+ * <p>Hooking a context which is hooked already composes both hooks rather than wrapping it twice.
+ */
+public final class DelegatingSslContext extends SSLContext {
+
+  private final SSLContext delegate;
+  private final UnaryOperator<SSLEngine> engineHook;
+
+  private DelegatingSslContext(SSLContext delegate, UnaryOperator<SSLEngine> engineHook) {
+    super(new Spi(delegate, engineHook), delegate.getProvider(), delegate.getProtocol());
+    this.delegate = delegate;
+    this.engineHook = engineHook;
+  }
+
+  /**
+   * @param engineHook applied to every engine created, returns the engine to use instead
+   */
+  @NonNull
+  public static SSLContext withEngineHook(
+      @NonNull SSLContext context, @NonNull UnaryOperator<SSLEngine> engineHook) {
+    if (context instanceof DelegatingSslContext hooked) {
+      UnaryOperator<SSLEngine> both = e -> engineHook.apply(hooked.engineHook.apply(e));
+      return new DelegatingSslContext(hooked.delegate, both);
+    }
+    return new DelegatingSslContext(context, engineHook);
+  }
+
+  private static class Spi extends SSLContextSpi {
+
+    private final SSLContext delegate;
+    private final UnaryOperator<SSLEngine> engineHook;
+
+    Spi(SSLContext delegate, UnaryOperator<SSLEngine> engineHook) {
+      this.delegate = delegate;
+      this.engineHook = engineHook;
+    }
+
+    @Override
+    protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr)
+        throws KeyManagementException {
+      throw new KeyManagementException("already initialized");
+    }
+
+    @Override
+    protected SSLSocketFactory engineGetSocketFactory() {
+      return delegate.getSocketFactory();
+    }
+
+    @Override
+    protected SSLServerSocketFactory engineGetServerSocketFactory() {
+      return delegate.getServerSocketFactory();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine() {
+      return engineHook.apply(delegate.createSSLEngine());
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine(String host, int port) {
+      return engineHook.apply(delegate.createSSLEngine(host, port));
+    }
+
+    @Override
+    protected SSLSessionContext engineGetServerSessionContext() {
+      return delegate.getServerSessionContext();
+    }
+
+    @Override
+    protected SSLSessionContext engineGetClientSessionContext() {
+      return delegate.getClientSessionContext();
+    }
+
+    @Override
+    protected SSLParameters engineGetDefaultSSLParameters() {
+      return delegate.getDefaultSSLParameters();
+    }
+
+    @Override
+    protected SSLParameters engineGetSupportedSSLParameters() {
+      return delegate.getSupportedSSLParameters();
+    }
+  }
+}
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +53,17 @@ public class JsonCodec {
     }
   }
 
+  public static <T> T readValue(InputStream in, Class<T> clazz) {
+    try {
+      if (debugOm != null) {
+        return debugOm.readValue(in, clazz);
+      }
+      return om.readValue(in, clazz);
+    } catch (IOException e) {
+      throw new DeserializeException("failed to deserialize JSON", e);
+    }
+  }
+
   public static class JsonException extends RuntimeException {
 
     public JsonException(String message) {
@@ -6,38 +6,20 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.IOException;
 import java.security.*;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import javax.net.ssl.*;
 
 public class TlsContext {
 
   private TlsContext() {}
 
+  public static Builder create() {
+    return new Builder();
+  }
+
   @NonNull
   public static SSLContext fromClientCertificate(@NonNull ECKey ecKey) {
-    // see also:
-    // https://connect2id.com/products/nimbus-oauth-openid-connect-sdk/examples/utils/custom-key-store
-
-    if (ecKey.getParsedX509CertChain() == null || ecKey.getParsedX509CertChain().isEmpty()) {
-      throw new IllegalArgumentException(
-          "client key is missing certificate, kid: " + ecKey.getKeyID());
-    }
-
-    try {
-      var ctx = SSLContext.getInstance("TLSv1.2");
-
-      var tmf = TrustManagerFactory.getInstance("PKIX");
-
-      // Using null here initialises with the default trust store.
-      tmf.init((KeyStore) null);
-
-      ctx.init(
-          keyManagerOf(ecKey.getParsedX509CertChain().get(0), ecKey.toPrivateKey()),
-          tmf.getTrustManagers(),
-          null);
-      return ctx;
-    } catch (JOSEException | GeneralSecurityException e) {
-      throw new IllegalStateException("failed to initialize SSL context", e);
-    }
+    return create().clientCertificate(ecKey).build();
   }
 
   public static KeyManager[] keyManagerOf(X509Certificate cert, PrivateKey privateKey) {
@@ -55,4 +37,107 @@ public class TlsContext {
       throw new IllegalArgumentException("failed to initialize client certificate store", e);
     }
   }
+
+  /** Observes the completed TLS handshakes of a {@link SSLContext}. */
+  @FunctionalInterface
+  public interface HandshakeListener {
+
+    /**
+     * @param peerHost the host connected to, {@code null} if unknown
+     * @param protocol the negotiated protocol, e.g. {@code TLSv1.3}
+     * @param resumed whether a previous session was resumed rather than negotiating a new one
+     * @param duration the time from starting the handshake until it finished
+     */
+    void onHandshake(String peerHost, String protocol, boolean resumed, Duration duration);
+  }
+
+  public static final class Builder {
+
+    private ECKey clientCertificate;
+    private String protocol = "TLSv1.3";
+    private int sessionCacheSize = -1;
+    private Duration sessionTimeout;
+    private HandshakeListener handshakeListener;
+
+    private Builder() {}
+
+    /** authenticates with the certificate of the given key, i.e. for mTLS */
+    public Builder clientCertificate(ECKey clientCertificate) {
+      this.clientCertificate = clientCertificate;
+      return this;
+    }
+
+    /** the highest protocol version to enable, lower ones remain enabled as a fallback */
+    public Builder protocol(String protocol) {
+      this.protocol = protocol;
+      return this;
+    }
+
+    /** the maximum number of sessions cached for resumption, {@code 0} for no limit */
+    public Builder sessionCacheSize(int sessionCacheSize) {
+      this.sessionCacheSize = sessionCacheSize;
+      return this;
+    }
+
+    /** how long cached sessions can be resumed, {@link Duration#ZERO} for no limit */
+    public Builder sessionTimeout(Duration sessionTimeout) {
+      this.sessionTimeout = sessionTimeout;
+      return this;
+    }
+
+    public Builder handshakeListener(HandshakeListener handshakeListener) {
+      this.handshakeListener = handshakeListener;
+      return this;
+    }
+
+    @NonNull
+    public SSLContext build() {
+      // see also:
+      // https://connect2id.com/products/nimbus-oauth-openid-connect-sdk/examples/utils/custom-key-store
+
+      if (clientCertificate != null
+          && (clientCertificate.getParsedX509CertChain() == null
+              || clientCertificate.getParsedX509CertChain().isEmpty())) {
+        throw new IllegalArgumentException(
+            "client key is missing certificate, kid: " + clientCertificate.getKeyID());
+      }
+
+      try {
+        var ctx = SSLContext.getInstance(protocol);
+
+        var tmf = TrustManagerFactory.getInstance("PKIX");
+
+        // Using null here initialises with the default trust store.
+        tmf.init((KeyStore) null);
+
+        ctx.init(keyManagers(), tmf.getTrustManagers(), null);
+
+        // all connections share the session cache of the context, repeated connections to the
+        // same host resume a session rather than doing a full handshake
+        var sessions = ctx.getClientSessionContext();
+        if (sessionCacheSize >= 0) {
+          sessions.setSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout != null) {
+          sessions.setSessionTimeout(Math.toIntExact(sessionTimeout.toSeconds()));
+        }
+
+        if (handshakeListener != null) {
+          return DelegatingSslContext.withEngineHook(
+              ctx, engine -> new HandshakeObservingEngine(engine, handshakeListener));
+        }
+        return ctx;
+      } catch (JOSEException | GeneralSecurityException e) {
+        throw new IllegalStateException("failed to initialize SSL context", e);
+      }
+    }
+
+    private KeyManager[] keyManagers() throws JOSEException {
+      if (clientCertificate == null) {
+        return new KeyManager[0];
+      }
+      return keyManagerOf(
+          clientCertificate.getParsedX509CertChain().get(0), clientCertificate.toPrivateKey());
+    }
+  }
 }
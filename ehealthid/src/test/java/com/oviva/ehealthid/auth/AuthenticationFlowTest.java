@@ -2,10 +2,13 @@ package com.oviva.ehealthid.auth;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.oviva.ehealthid.auth.AuthenticationFlow.Session;
 import com.oviva.ehealthid.crypto.KeySupplier;
 import com.oviva.ehealthid.fedclient.FederationMasterClient;
+import com.oviva.ehealthid.fedclient.api.EntityStatementJWS;
 import com.oviva.ehealthid.fedclient.api.OpenIdClient;
 import java.net.URI;
 import java.util.List;
@@ -26,4 +29,24 @@ class AuthenticationFlowTest {
 
     assertNotNull(step);
   }
+
+  @Test
+  void resume() {
+    var self = URI.create("https://fachdienst.example.com");
+    var fedmasterClient = mock(FederationMasterClient.class);
+    var openIdClient = mock(OpenIdClient.class);
+    var keySupplier = mock(KeySupplier.class);
+
+    var idp = "https://idp.example.com";
+    var idpRedirect = URI.create("https://idp.example.com/auth?request_uri=urn:example:par");
+    when(fedmasterClient.establishIdpTrust(URI.create(idp)))
+        .thenReturn(new EntityStatementJWS(null, null));
+
+    var flow = new AuthenticationFlow(self, fedmasterClient, openIdClient, keySupplier);
+
+    var step = flow.resume(new Session(null, null, null, null, List.of()), idp, idpRedirect);
+
+    assertEquals(idpRedirect, step.idpRedirectUri());
+    verify(fedmasterClient).establishIdpTrust(URI.create(idp));
+  }
 }
@@ -0,0 +1,78 @@
+package com.oviva.ehealthid.crypto;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.oviva.ehealthid.util.JwsUtils;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares verifying with cached per-key verifiers against setting up a verifier for every call, as
+ * {@link JwsVerifier} did before.
+ *
+ * <p>Run with the GC profiler to see the bytes allocated per verification ({@code
+ * gc.alloc.rate.norm}), e.g. by running {@link #main(String[])} from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwsVerifierBenchmark {
+
+  private JWKSet jwks;
+  private JWSObject jws;
+
+  public static void main(String[] args) throws RunnerException {
+    var opts =
+        new OptionsBuilder()
+            .include(JwsVerifierBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+    new Runner(opts).run();
+  }
+
+  @Setup
+  public void setUp() throws JOSEException, ParseException {
+
+    // a typical entity statement JWKS with a couple of keys
+    var signingKey = new ECKeyGenerator(Curve.P_256).keyIDFromThumbprint(true).generate();
+    var otherKey = new ECKeyGenerator(Curve.P_256).keyIDFromThumbprint(true).generate();
+    jwks = new JWKSet(List.of(otherKey.toPublicJWK(), signingKey.toPublicJWK()));
+
+    jws = JWSObject.parse(JwsUtils.toJws(signingKey, "{\"iss\":\"benchmark\"}").serialize());
+  }
+
+  @Benchmark
+  public boolean cachedVerifier() {
+    return JwsVerifier.verify(jwks, jws);
+  }
+
+  @Benchmark
+  public boolean verifierPerCall() throws JOSEException {
+    var key = jwks.getKeyByKeyId(jws.getHeader().getKeyID());
+    var factory = new DefaultJWSVerifierFactory();
+    var verifier = factory.createJWSVerifier(jws.getHeader(), key.toECKey().toPublicKey());
+    return jws.verify(verifier);
+  }
+}
@@ -95,6 +95,26 @@ class JwsVerifierTest {
     assertFalse(JwsVerifier.verify(JWKS, in));
   }
 
+  @Test
+  void verifyRotatedKey() throws ParseException, JOSEException {
+
+    var kid = "rotating";
+    var oldKey = new ECKeyGenerator(Curve.P_256).keyID(kid).generate();
+    var newKey = new ECKeyGenerator(Curve.P_256).keyID(kid).generate();
+
+    var oldJws = JWSObject.parse(toJws(oldKey, "test").serialize());
+    var newJws = JWSObject.parse(toJws(newKey, "test").serialize());
+
+    assertTrue(JwsVerifier.verify(new JWKSet(oldKey.toPublicJWK()), oldJws));
+
+    // when
+    var rotated = new JWKSet(newKey.toPublicJWK());
+
+    // then
+    assertTrue(JwsVerifier.verify(rotated, newJws));
+    assertFalse(JwsVerifier.verify(rotated, oldJws));
+  }
+
   @Test
   void verify_badAlg() {
 
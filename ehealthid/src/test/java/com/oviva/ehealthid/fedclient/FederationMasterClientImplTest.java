@@ -1,7 +1,14 @@
 package com.oviva.ehealthid.fedclient;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.nimbusds.jose.JOSEException;
@@ -20,7 +27,10 @@ import java.net.URI;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -30,6 +40,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 class FederationMasterClientImplTest {
 
   private static final URI FEDERATION_MASTER = URI.create("https://fedmaster.example.com");
+  private static final URI IDP_LIST = FEDERATION_MASTER.resolve("/idplist");
   private final Instant NOW = Instant.parse("2024-01-01T00:12:33.000Z");
   private final Clock clock = Clock.fixed(NOW, ZoneId.of("UTC"));
   @Mock FederationApiClient federationApiClient;
@@ -163,6 +174,7 @@ class FederationMasterClientImplTest {
 
     when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
         .thenReturn(fedmasterEntityConfigurationJws);
+    stubIdpList(fedmasterKeypair, issuer);
 
     when(federationApiClient.fetchFederationStatement(
             federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
@@ -204,6 +216,7 @@ class FederationMasterClientImplTest {
 
     when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
         .thenReturn(fedmasterEntityConfigurationJws);
+    stubIdpList(fedmasterKeypair, issuer);
 
     when(federationApiClient.fetchFederationStatement(
             federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
@@ -241,6 +254,7 @@ class FederationMasterClientImplTest {
 
     when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
         .thenReturn(fedmasterEntityConfigurationJws);
+    stubIdpList(fedmasterKeypair, issuer);
 
     when(federationApiClient.fetchFederationStatement(
             federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
@@ -277,6 +291,7 @@ class FederationMasterClientImplTest {
 
     when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
         .thenReturn(fedmasterEntityConfigurationJws);
+    stubIdpList(fedmasterKeypair, issuer);
 
     when(federationApiClient.fetchFederationStatement(
             federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
@@ -312,6 +327,7 @@ class FederationMasterClientImplTest {
 
     when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
         .thenReturn(fedmasterEntityConfigurationJws);
+    stubIdpList(fedmasterKeypair, issuer);
 
     when(federationApiClient.fetchFederationStatement(
             federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
@@ -345,6 +361,7 @@ class FederationMasterClientImplTest {
 
     when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
         .thenReturn(fedmasterEntityConfigurationJws);
+    stubIdpList(fedmasterKeypair, issuer);
 
     when(federationApiClient.fetchFederationStatement(
             federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
@@ -360,6 +377,194 @@ class FederationMasterClientImplTest {
     assertEquals(entityStatementJWS.body().sub(), issuer.toString());
   }
 
+  @Test
+  void establishTrust_cached() {
+
+    var client = new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, clock);
+
+    var issuer = URI.create("https://idp-tk.example.com");
+    stubTrustedChain(issuer);
+
+    var first = client.establishIdpTrust(issuer);
+
+    // when
+    var second = client.establishIdpTrust(issuer);
+
+    // then
+    assertSame(first, second);
+    verify(federationApiClient, times(1)).fetchEntityConfiguration(FEDERATION_MASTER);
+    verify(federationApiClient, times(1)).fetchEntityConfiguration(issuer);
+  }
+
+  @Test
+  void establishTrust_cachedUntilChainExpires() {
+
+    var now = new AtomicReference<>(NOW);
+    var steppingClock = mock(Clock.class);
+    when(steppingClock.instant()).thenAnswer(i -> now.get());
+
+    var client =
+        new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, steppingClock);
+
+    var issuer = URI.create("https://idp-tk.example.com");
+    stubTrustedChain(issuer);
+
+    client.establishIdpTrust(issuer);
+    now.set(NOW.plusSeconds(61));
+
+    // when
+    var e = assertThrows(FederationException.class, () -> client.establishIdpTrust(issuer));
+
+    // then
+    assertEquals(
+        "entity statement of 'https://fedmaster.example.com' expired or not yet valid",
+        e.getMessage());
+  }
+
+  @Test
+  void establishTrustAsync_fetchesIdpAndFederationStatementConcurrently() {
+
+    var pending = new ArrayDeque<Runnable>();
+    var asyncClient = new ExecutorFederationApiClient(federationApiClient, pending::add);
+    var client =
+        new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, asyncClient, clock);
+
+    var issuer = URI.create("https://idp-tk.example.com");
+    stubTrustedChain(issuer);
+
+    // when
+    var future = client.establishIdpTrustAsync(issuer);
+
+    // then
+    // fedmaster entity configuration and idp list one after the other
+    for (var i = 0; i < 2; i++) {
+      assertEquals(1, pending.size());
+      pending.poll().run();
+    }
+
+    // federation statement and idp entity configuration both in flight at once
+    assertEquals(2, pending.size());
+    verify(federationApiClient, never()).fetchEntityConfiguration(issuer);
+    pending.forEach(Runnable::run);
+
+    assertEquals(issuer.toString(), future.join().body().sub());
+    var order = inOrder(federationApiClient);
+    order.verify(federationApiClient).fetchEntityConfiguration(FEDERATION_MASTER);
+    order.verify(federationApiClient).fetchIdpList(IDP_LIST);
+  }
+
+  @Test
+  void establishTrust_unlistedIdp_doesNotContactIdp() {
+
+    var client = new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, clock);
+
+    var issuer = URI.create("https://attacker.example.com");
+    var federationFetchUrl = FEDERATION_MASTER.resolve("/fetch");
+
+    var fedmasterKeypair = ECKeyGenerator.example();
+    when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
+        .thenReturn(federationFetchFedmasterConfiguration(federationFetchUrl, fedmasterKeypair));
+    stubIdpList(fedmasterKeypair, URI.create("https://idp-tk.example.com"));
+
+    // when
+    var e = assertThrows(FederationException.class, () -> client.establishIdpTrust(issuer));
+
+    // then
+    assertEquals(
+        "idp not listed by the federation master: sub=https://attacker.example.com",
+        e.getMessage());
+    verify(federationApiClient, never()).fetchEntityConfiguration(issuer);
+    verify(federationApiClient, never()).fetchFederationStatement(any(), any(), any());
+  }
+
+  @Test
+  void establishTrust_untrustedIdpList() {
+
+    var client = new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, clock);
+
+    var issuer = URI.create("https://idp-tk.example.com");
+    var federationFetchUrl = FEDERATION_MASTER.resolve("/fetch");
+
+    var fedmasterKeypair = ECKeyGenerator.example();
+    when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
+        .thenReturn(federationFetchFedmasterConfiguration(federationFetchUrl, fedmasterKeypair));
+
+    // signed by someone else
+    stubIdpList(ECKeyGenerator.generate(), issuer);
+
+    // when
+    var e = assertThrows(FederationException.class, () -> client.establishIdpTrust(issuer));
+
+    // then
+    assertEquals(
+        "list of idps from 'https://fedmaster.example.com' expired or has a bad signature",
+        e.getMessage());
+    verify(federationApiClient, never()).fetchEntityConfiguration(issuer);
+  }
+
+  @Test
+  void establishTrust_federationStatementOfOtherIdp() {
+
+    var client = new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, clock);
+
+    var issuer = URI.create("https://idp-tk.example.com");
+    var federationFetchUrl = FEDERATION_MASTER.resolve("/fetch");
+
+    var fedmasterKeypair = ECKeyGenerator.example();
+    when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
+        .thenReturn(federationFetchFedmasterConfiguration(federationFetchUrl, fedmasterKeypair));
+    stubIdpList(fedmasterKeypair, issuer);
+
+    // the master answers with the statement of another entity
+    var otherIdp = URI.create("https://idp-aok.example.com");
+    when(federationApiClient.fetchFederationStatement(
+            federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
+        .thenReturn(
+            trustedFederationStatement(otherIdp, ECKeyGenerator.generate(), fedmasterKeypair));
+
+    // when
+    var e = assertThrows(FederationException.class, () -> client.establishIdpTrust(issuer));
+
+    // then
+    assertEquals("federation statement untrusted: sub=https://idp-tk.example.com", e.getMessage());
+  }
+
+  private void stubIdpList(ECKey fedmasterKeyPair, URI... issuers) {
+
+    var entities =
+        Stream.of(issuers).map(i -> new IdpEntity(i.toString(), null, null, null, false)).toList();
+    var body =
+        new IdpList(
+            FEDERATION_MASTER.toString(),
+            NOW.plusSeconds(60).getEpochSecond(),
+            NOW.minusSeconds(60).getEpochSecond(),
+            NOW.minusSeconds(60).getEpochSecond(),
+            entities);
+
+    var signed = JwsUtils.toJws(fedmasterKeyPair, JsonCodec.writeValueAsString(body));
+
+    when(federationApiClient.fetchIdpList(IDP_LIST)).thenReturn(new IdpListJWS(signed, body));
+  }
+
+  private void stubTrustedChain(URI issuer) {
+
+    var federationFetchUrl = FEDERATION_MASTER.resolve("/fetch");
+
+    var fedmasterKeypair = ECKeyGenerator.example();
+    var sectoralIdpKeypair = ECKeyGenerator.generate();
+
+    when(federationApiClient.fetchEntityConfiguration(FEDERATION_MASTER))
+        .thenReturn(federationFetchFedmasterConfiguration(federationFetchUrl, fedmasterKeypair));
+    stubIdpList(fedmasterKeypair, issuer);
+
+    when(federationApiClient.fetchFederationStatement(
+            federationFetchUrl, FEDERATION_MASTER.toString(), issuer.toString()))
+        .thenReturn(trustedFederationStatement(issuer, sectoralIdpKeypair, fedmasterKeypair));
+
+    when(federationApiClient.fetchEntityConfiguration(issuer))
+        .thenReturn(sectoralIdpEntityConfiguration(issuer, sectoralIdpKeypair));
+  }
+
   @Test
   void fetchOpenIdProviderJwks_missingOpenIdProvider() {
 
@@ -442,6 +647,39 @@ class FederationMasterClientImplTest {
     assertEquals(openIdProviderJwks, got);
   }
 
+  @Test
+  void fetchOpenIdProviderJwks_cachedPerEntityStatement() {
+
+    var client = new FederationMasterClientImpl(FEDERATION_MASTER, federationApiClient, clock);
+
+    var sectoralIdpKeypair = ECKeyGenerator.generate();
+    var issuer = URI.create("https://idp-tk.example.com");
+    var signedJwksUri = URI.create("https://idp-tk.example.com/signed-jwks.jose");
+
+    var openIdProviderJwks = new JWKSet(ECKeyGenerator.generate()).toPublicJWKSet();
+    var signedJwks =
+        signedJwks(issuer, NOW.plusSeconds(40), openIdProviderJwks.getKeys(), sectoralIdpKeypair);
+
+    when(federationApiClient.fetchSignedJwks(signedJwksUri)).thenReturn(signedJwks);
+
+    var op =
+        EntityStatement.OpenidProvider.create().signedJwksUri(signedJwksUri.toString()).build();
+    var entityStatement = openIdProviderEntityConfiguration(issuer, sectoralIdpKeypair, op);
+
+    var first = client.resolveOpenIdProviderJwks(entityStatement);
+
+    // when
+    var second = client.resolveOpenIdProviderJwks(entityStatement);
+    var renewed =
+        client.resolveOpenIdProviderJwks(
+            openIdProviderEntityConfiguration(issuer, sectoralIdpKeypair, op));
+
+    // then
+    assertSame(first, second);
+    assertEquals(openIdProviderJwks, renewed);
+    verify(federationApiClient, times(2)).fetchSignedJwks(signedJwksUri);
+  }
+
   @Test
   void fetchOpenIdProviderJwks_signedJwksUri_noIssuer() {
 
@@ -692,6 +930,7 @@ class FederationMasterClientImplTest {
                     .federationEntity(
                         FederationEntity.create()
                             .federationFetchEndpoint(fetchUrl.toString())
+                            .idpListEndpoint(IDP_LIST.toString())
                             .build())
                     .build())
             .build();
@@ -0,0 +1,92 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow.Subscription;
+import org.junit.jupiter.api.Test;
+
+class BoundedBodySubscriberTest {
+
+  @Test
+  void collectsChunks() throws Exception {
+    var sut = new BoundedBodySubscriber(1024, -1);
+    var subscription = new RecordingSubscription();
+
+    sut.onSubscribe(subscription);
+    sut.onNext(List.of(buffer("hello "), buffer("big ")));
+    sut.onNext(List.of(buffer("world")));
+    sut.onComplete();
+
+    assertArrayEquals(bytes("hello big world"), sut.getBody().toCompletableFuture().get());
+  }
+
+  @Test
+  void growsBeyondContentLength() throws Exception {
+    var sut = new BoundedBodySubscriber(1024, 2);
+
+    sut.onSubscribe(new RecordingSubscription());
+    sut.onNext(List.of(buffer("more than announced")));
+    sut.onComplete();
+
+    assertArrayEquals(bytes("more than announced"), sut.getBody().toCompletableFuture().get());
+  }
+
+  @Test
+  void tooLargeContentLength() {
+    var sut = new BoundedBodySubscriber(8, 9);
+    var subscription = new RecordingSubscription();
+
+    sut.onSubscribe(subscription);
+
+    assertTrue(subscription.cancelled);
+    assertTooLarge(sut);
+  }
+
+  @Test
+  void tooLargeBody() {
+    var sut = new BoundedBodySubscriber(8, -1);
+    var subscription = new RecordingSubscription();
+
+    sut.onSubscribe(subscription);
+    sut.onNext(List.of(buffer("12345")));
+    sut.onNext(List.of(buffer("6789")));
+    sut.onComplete();
+
+    assertTrue(subscription.cancelled);
+    assertTooLarge(sut);
+  }
+
+  private void assertTooLarge(BoundedBodySubscriber sut) {
+    var e = assertThrows(ExecutionException.class, () -> sut.getBody().toCompletableFuture().get());
+    assertInstanceOf(IOException.class, e.getCause());
+  }
+
+  private static ByteBuffer buffer(String s) {
+    return ByteBuffer.wrap(bytes(s));
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static class RecordingSubscription implements Subscription {
+
+    boolean cancelled;
+
+    @Override
+    public void request(long n) {}
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+}
@@ -1,13 +1,27 @@
 package com.oviva.ehealthid.fedclient.api;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.oviva.ehealthid.fedclient.api.EntityStatement.FederationEntity;
+import com.oviva.ehealthid.fedclient.api.EntityStatement.Metadata;
+import com.oviva.ehealthid.test.ECKeyGenerator;
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
 import java.util.function.Function;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -24,6 +38,11 @@ class CachedFederationApiClientTest {
 
   @InjectMocks CachedFederationApiClient sut;
 
+  private static final Instant NOW = Instant.parse("2024-01-01T13:11:00.000Z");
+  private static final URI FEDERATION_MASTER = URI.create("https://fedmaster.example.com");
+  private static final URI FETCH_URL = FEDERATION_MASTER.resolve("/fetch");
+  private static final URI IDP = URI.create("https://idp.example.com");
+
   @Test
   void fetchFederationStatement() {
 
@@ -73,11 +92,178 @@ class CachedFederationApiClientTest {
     assertEquals(expected, got);
   }
 
+  @Test
+  void fetchEntityConfigurationAsync() {
+    var uri = URI.create("https://example.com");
+
+    var expected = new EntityStatementJWS(null, null);
+    when(delegate.fetchEntityConfiguration(uri)).thenReturn(expected);
+
+    // when
+    var got = sut.fetchEntityConfigurationAsync(uri).join();
+
+    // then
+    verify(delegate).fetchEntityConfiguration(uri);
+    assertEquals(expected, got);
+  }
+
+  @Test
+  void snapshot_restore(@TempDir Path dir) {
+
+    var fedmasterKey = ECKeyGenerator.example();
+    var idpKey = ECKeyGenerator.generate();
+
+    var source = newClient();
+    source.entityStatementCache().put(FEDERATION_MASTER.toString(), fedmasterConfiguration());
+    source.entityStatementCache().put(IDP.toString(), idpConfiguration(idpKey));
+    source
+        .federationStatementCache()
+        .put(federationStatementKey(), federationStatement(idpKey, fedmasterKey));
+
+    var path = dir.resolve("snapshot.json");
+    source.client().snapshot(NOW).write(path);
+
+    var target = newClient();
+
+    // when
+    var restored = target.client().restore(FederationSnapshot.read(path), NOW);
+
+    // then
+    assertEquals(3, restored);
+    assertNotNull(target.client().fetchEntityConfiguration(IDP));
+    assertNotNull(
+        target
+            .client()
+            .fetchFederationStatement(FETCH_URL, FEDERATION_MASTER.toString(), IDP.toString()));
+    verifyNoInteractions(delegate);
+  }
+
+  @Test
+  void restore_skipsUntrusted() {
+
+    var unrelatedKey = ECKeyGenerator.generate();
+    var idpKey = ECKeyGenerator.generate();
+
+    var source = newClient();
+    source.entityStatementCache().put(FEDERATION_MASTER.toString(), fedmasterConfiguration());
+    source
+        .federationStatementCache()
+        .put(federationStatementKey(), federationStatement(idpKey, unrelatedKey));
+
+    var target = newClient();
+
+    // when
+    var restored = target.client().restore(source.client().snapshot(NOW), NOW);
+
+    // then
+    assertEquals(1, restored);
+    assertEquals(Map.of(), target.federationStatementCache().entries());
+  }
+
+  @Test
+  void restore_skipsExpired() {
+
+    var source = newClient();
+    source.entityStatementCache().put(FEDERATION_MASTER.toString(), fedmasterConfiguration());
+    var snapshot = source.client().snapshot(NOW);
+
+    var target = newClient();
+
+    // when
+    var restored = target.client().restore(snapshot, NOW.plus(Duration.ofHours(2)));
+
+    // then
+    assertEquals(0, restored);
+    assertEquals(Map.of(), target.entityStatementCache().entries());
+  }
+
+  private Caches newClient() {
+    var clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    var ttl = Duration.ofSeconds(10);
+    var entityStatements = new InMemoryCacheImpl<EntityStatementJWS>(clock, ttl);
+    var federationStatements = new InMemoryCacheImpl<EntityStatementJWS>(clock, ttl);
+    var client =
+        new CachedFederationApiClient(
+            delegate,
+            entityStatements,
+            federationStatements,
+            new InMemoryCacheImpl<>(clock, ttl),
+            new InMemoryCacheImpl<>(clock, ttl));
+    return new Caches(client, entityStatements, federationStatements);
+  }
+
+  private String federationStatementKey() {
+    return "%s|%s|%s".formatted(FETCH_URL, FEDERATION_MASTER, IDP);
+  }
+
+  private EntityStatementJWS fedmasterConfiguration() {
+    var key = ECKeyGenerator.example();
+    var body =
+        EntityStatement.create()
+            .iss(FEDERATION_MASTER.toString())
+            .sub(FEDERATION_MASTER.toString())
+            .exp(NOW.plus(Duration.ofHours(1)))
+            .jwks(toPublicJwks(key))
+            .metadata(
+                Metadata.create()
+                    .federationEntity(
+                        FederationEntity.create()
+                            .federationFetchEndpoint(FETCH_URL.toString())
+                            .build())
+                    .build())
+            .build();
+    return new EntityStatementJWS(body.sign(key), body);
+  }
+
+  private EntityStatementJWS idpConfiguration(ECKey idpKey) {
+    var body =
+        EntityStatement.create()
+            .iss(IDP.toString())
+            .sub(IDP.toString())
+            .exp(NOW.plus(Duration.ofHours(1)))
+            .jwks(toPublicJwks(idpKey))
+            .build();
+    return new EntityStatementJWS(body.sign(idpKey), body);
+  }
+
+  private EntityStatementJWS federationStatement(ECKey idpKey, ECKey signingKey) {
+    var body =
+        EntityStatement.create()
+            .iss(FEDERATION_MASTER.toString())
+            .sub(IDP.toString())
+            .exp(NOW.plus(Duration.ofHours(1)))
+            .jwks(toPublicJwks(idpKey))
+            .build();
+    return new EntityStatementJWS(body.sign(signingKey), body);
+  }
+
+  private JWKSet toPublicJwks(ECKey key) {
+    return new JWKSet(key.toPublicJWK());
+  }
+
+  record Caches(
+      CachedFederationApiClient client,
+      Cache<EntityStatementJWS> entityStatementCache,
+      Cache<EntityStatementJWS> federationStatementCache) {}
+
   static class NopCache<T extends TemporalValid> implements Cache<T> {
 
     @Override
     public T computeIfAbsent(String key, Function<String, T> supplier) {
       return supplier.apply(key);
     }
+
+    @Override
+    public T refresh(String key, Function<String, T> supplier) {
+      return supplier.apply(key);
+    }
+
+    @Override
+    public void put(String key, T value) {}
+
+    @Override
+    public Map<String, T> entries() {
+      return Map.of();
+    }
   }
 }
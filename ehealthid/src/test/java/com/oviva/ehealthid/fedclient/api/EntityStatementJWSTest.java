@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.nimbusds.jose.jwk.JWKSet;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import org.junit.jupiter.api.Test;
@@ -39,12 +40,27 @@ class EntityStatementJWSTest {
     assertEquals("https://app-ref.federationmaster.de", iss);
   }
 
+  @Test
+  void parses_bytes() {
+    var jws = EntityStatementJWS.parse(EXAMPLE_ES.getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("https://app-ref.federationmaster.de", jws.body().iss());
+    assertEquals(EntityStatementJWS.parse(EXAMPLE_ES).body(), jws.body());
+  }
+
   @ParameterizedTest
   @MethodSource("testcases")
   void parse_bad(TC t) {
     assertThrows(t.expected(), () -> EntityStatementJWS.parse(t.in()), t.description());
   }
 
+  @ParameterizedTest
+  @MethodSource("testcases")
+  void parse_bad_bytes(TC t) {
+    var bytes = t.in().getBytes(StandardCharsets.UTF_8);
+    assertThrows(t.expected(), () -> EntityStatementJWS.parse(bytes), t.description());
+  }
+
   @Test
   void badType() {
 
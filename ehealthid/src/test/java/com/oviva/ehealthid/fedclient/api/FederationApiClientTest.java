@@ -2,8 +2,12 @@ package com.oviva.ehealthid.fedclient.api;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.badRequest;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
@@ -15,7 +19,17 @@ import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import com.oviva.ehealthid.test.Fixtures;
 import com.oviva.ehealthid.test.GematikHeaderDecoratorHttpClient;
 import jakarta.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
@@ -25,6 +39,9 @@ class FederationApiClientTest {
   private final HttpClient javaHttpClient =
       new JavaHttpClient(java.net.http.HttpClient.newHttpClient());
 
+  private static final String SIGNED_JWKS =
+      "eyJhbGciOiJFUzI1NiIsInR5cCI6Imp3ay1zZXQranNvbiIsImtpZCI6InB1a19pZHBfc2lnIn0.eyJpc3MiOiJodHRwczovL2dzaS1yZWYuZGV2LmdlbWF0aWsuc29sdXRpb25zIiwiaWF0IjoxNzI5MjQ0OTg2LCJrZXlzIjpbeyJ1c2UiOiJzaWciLCJraWQiOiJwdWtfaWRwX3NpZyIsImt0eSI6IkVDIiwiY3J2IjoiUC0yNTYiLCJ4IjoiQWJ0MlV5cms2S2hjemV4bEJPd0pPVHNfZUIwRHNGYmNOeGF4YTBaMHZkNCIsInkiOiJZWktCSnRPVVlFV1RNa256RndCZGwtNnRWS3lXblVEdHhmMnEwcFNUNVg0IiwiYWxnIjoiRVMyNTYifSx7InVzZSI6InNpZyIsImtpZCI6InB1a19mZWRfaWRwX3Rva2VuIiwia3R5IjoiRUMiLCJjcnYiOiJQLTI1NiIsIngiOiJZekVQRnZwaHU0VDNHZ1dtalBYeFBUMC1QZG1fUTA0T0xFTkFIOTh6bi1NIiwieSI6IkFIUEhnZ3NxNll3RmZXMmZTSUp0YXdNTEFoOVpvS1BGVFpxUEZnUVcwdDQiLCJhbGciOiJFUzI1NiJ9XX0.MNtQWVD0COFK_3fIADcaqP6AaDltI2qr73_j6N5qSjd6Os_WZpK4Qp7z3ZKmZo42UqPpE1Lxt7mEGry_Rmg8gQ";
+
   private static final String MEDIA_TYPE_ENTITY_STATEMENT =
       "application/entity-statement+jwt;charset=UTF-8";
 
@@ -153,6 +170,103 @@ class FederationApiClientTest {
     assertThat(jws.body().idpEntities(), hasSize(23));
   }
 
+  @Test
+  void fetchIdpList_reportsOperation(WireMockRuntimeInfo wm) {
+
+    var idpListPath = "/federation/listidps";
+
+    stubFor(
+        get(idpListPath)
+            .willReturn(aResponse().withBody(Fixtures.get("federation_api_client_idpList.txt"))));
+
+    var operations = new ArrayList<String>();
+    OperationListener listener =
+        (operation, uri, status, failure, duration) ->
+            operations.add("%s %s %d %s".formatted(operation, uri.getPath(), status, failure));
+
+    var client = new FederationApiClientImpl(javaHttpClient, Clock.systemUTC(), listener);
+
+    var idpListUrl = URI.create(wm.getHttpBaseUrl()).resolve(idpListPath);
+
+    // when
+    client.fetchIdpList(idpListUrl);
+    client.fetchIdpListAsync(idpListUrl).join();
+
+    // then
+    assertEquals(
+        List.of("idp_list /federation/listidps 200 null", "idp_list /federation/listidps 200 null"),
+        operations);
+  }
+
+  @Test
+  void fetchIdpList_gzip(WireMockRuntimeInfo wm) throws IOException {
+
+    var idpListPath = "/federation/listidps";
+
+    var body = Fixtures.get("federation_api_client_idpList.txt");
+    var compressed = new ByteArrayOutputStream();
+    try (var out = new GZIPOutputStream(compressed)) {
+      out.write(body);
+    }
+
+    stubFor(
+        get(idpListPath)
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Encoding", "gzip")
+                    .withBody(compressed.toByteArray())));
+
+    var transfers = new ArrayList<String>();
+    TransferListener listener =
+        (uri, encoding, wireBytes, decodedBytes) ->
+            transfers.add("%s %d %d".formatted(encoding, wireBytes, decodedBytes));
+
+    var client =
+        new FederationApiClientImpl(
+            new JavaHttpClient(java.net.http.HttpClient.newHttpClient(), 1024 * 1024, listener));
+
+    // when
+    var jws = client.fetchIdpList(URI.create(wm.getHttpBaseUrl()).resolve(idpListPath));
+
+    // then
+    assertThat(jws.body().idpEntities(), hasSize(23));
+    assertEquals(List.of("gzip %d %d".formatted(compressed.size(), body.length)), transfers);
+    verify(
+        getRequestedFor(urlPathEqualTo(idpListPath))
+            .withHeader("Accept-Encoding", equalTo("gzip, deflate")));
+  }
+
+  @Test
+  void fetchIdpList_decodedTooLarge(WireMockRuntimeInfo wm) throws IOException {
+
+    var idpListPath = "/federation/listidps";
+
+    var compressed = new ByteArrayOutputStream();
+    try (var out = new GZIPOutputStream(compressed)) {
+      out.write(new byte[64 * 1024]);
+    }
+
+    stubFor(
+        get(idpListPath)
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Encoding", "gzip")
+                    .withBody(compressed.toByteArray())));
+
+    var client =
+        new FederationApiClientImpl(
+            new JavaHttpClient(
+                java.net.http.HttpClient.newHttpClient(), 1024, TransferListener.NOOP));
+
+    var idpListUrl = URI.create(wm.getHttpBaseUrl()).resolve(idpListPath);
+
+    // when
+    var e = assertThrows(HttpException.class, () -> client.fetchIdpList(idpListUrl));
+
+    // then
+    assertInstanceOf(IOException.class, e.getCause());
+  }
+
   @Test
   void fetchEntityStatementError(WireMockRuntimeInfo wm) {
 
@@ -242,13 +356,7 @@ class FederationApiClientTest {
 
     var path = "/jwks.jose";
 
-    stubFor(
-        get(path)
-            .willReturn(
-                aResponse()
-                    .withBody(
-                        """
-                        eyJhbGciOiJFUzI1NiIsInR5cCI6Imp3ay1zZXQranNvbiIsImtpZCI6InB1a19pZHBfc2lnIn0.eyJpc3MiOiJodHRwczovL2dzaS1yZWYuZGV2LmdlbWF0aWsuc29sdXRpb25zIiwiaWF0IjoxNzI5MjQ0OTg2LCJrZXlzIjpbeyJ1c2UiOiJzaWciLCJraWQiOiJwdWtfaWRwX3NpZyIsImt0eSI6IkVDIiwiY3J2IjoiUC0yNTYiLCJ4IjoiQWJ0MlV5cms2S2hjemV4bEJPd0pPVHNfZUIwRHNGYmNOeGF4YTBaMHZkNCIsInkiOiJZWktCSnRPVVlFV1RNa256RndCZGwtNnRWS3lXblVEdHhmMnEwcFNUNVg0IiwiYWxnIjoiRVMyNTYifSx7InVzZSI6InNpZyIsImtpZCI6InB1a19mZWRfaWRwX3Rva2VuIiwia3R5IjoiRUMiLCJjcnYiOiJQLTI1NiIsIngiOiJZekVQRnZwaHU0VDNHZ1dtalBYeFBUMC1QZG1fUTA0T0xFTkFIOTh6bi1NIiwieSI6IkFIUEhnZ3NxNll3RmZXMmZTSUp0YXdNTEFoOVpvS1BGVFpxUEZnUVcwdDQiLCJhbGciOiJFUzI1NiJ9XX0.MNtQWVD0COFK_3fIADcaqP6AaDltI2qr73_j6N5qSjd6Os_WZpK4Qp7z3ZKmZo42UqPpE1Lxt7mEGry_Rmg8gQ""")));
+    stubFor(get(path).willReturn(aResponse().withBody(SIGNED_JWKS)));
 
     var signedJwksUri = URI.create(wm.getHttpBaseUrl() + path);
 
@@ -257,4 +365,135 @@ class FederationApiClientTest {
     assertEquals("https://gsi-ref.dev.gematik.solutions", signedJwks.body().iss());
     assertFalse(signedJwks.body().keys().isEmpty());
   }
+
+  @Test
+  void fetchSignedJwks_notModified(WireMockRuntimeInfo wm) {
+
+    var apiClient = new FederationApiClientImpl(javaHttpClient);
+
+    var path = "/jwks.jose";
+    var etag = "\"v1\"";
+
+    stubFor(get(path).willReturn(aResponse().withHeader("ETag", etag).withBody(SIGNED_JWKS)));
+    stubFor(
+        get(path)
+            .withHeader("If-None-Match", equalTo(etag))
+            .willReturn(aResponse().withStatus(304)));
+
+    var signedJwksUri = URI.create(wm.getHttpBaseUrl() + path);
+
+    var first = apiClient.fetchSignedJwks(signedJwksUri);
+
+    // when
+    var second = apiClient.fetchSignedJwks(signedJwksUri);
+
+    // then
+    assertSame(first, second);
+    verify(getRequestedFor(urlPathEqualTo(path)).withHeader("If-None-Match", equalTo(etag)));
+  }
+
+  @Test
+  void fetchEntityStatement_aboutToExpire_notRevalidated(WireMockRuntimeInfo wm) {
+
+    var path = "/.well-known/openid-federation";
+    var etag = "\"v1\"";
+
+    stubFor(
+        get(path)
+            .willReturn(
+                aResponse()
+                    .withHeader(ContentTypeHeader.KEY, MEDIA_TYPE_ENTITY_STATEMENT)
+                    .withHeader("ETag", etag)
+                    .withBody(Fixtures.get("federation_api_client_masterEntityStatement.txt"))));
+
+    // a minute before the fixture expires
+    var clock = Clock.fixed(Instant.ofEpochSecond(1705672932 - 60), ZoneOffset.UTC);
+    var client =
+        new FederationApiClientImpl(
+            javaHttpClient, clock, OperationListener.NOOP, Duration.ofMinutes(5));
+
+    var uri = URI.create(wm.getHttpBaseUrl());
+    client.fetchEntityConfiguration(uri);
+
+    // when
+    var jws = client.fetchEntityConfiguration(uri);
+
+    // then
+    assertEquals("https://app-ref.federationmaster.de", jws.body().sub());
+    verify(2, getRequestedFor(urlPathEqualTo(path)));
+    verify(0, getRequestedFor(urlPathEqualTo(path)).withHeader("If-None-Match", equalTo(etag)));
+  }
+
+  @Test
+  void fetchEntityStatementAsync(WireMockRuntimeInfo wm) {
+
+    var openidFederationPath = "/.well-known/openid-federation";
+
+    var body = Fixtures.get("federation_api_client_masterEntityStatement.txt");
+
+    stubFor(
+        get(openidFederationPath)
+            .willReturn(
+                aResponse()
+                    .withHeader(ContentTypeHeader.KEY, MEDIA_TYPE_ENTITY_STATEMENT)
+                    .withBody(body)));
+
+    var client = new FederationApiClientImpl(javaHttpClient);
+
+    var federationMaster = wm.getHttpBaseUrl();
+
+    // when
+    var jws = client.fetchEntityConfigurationAsync(URI.create(federationMaster)).join();
+
+    // then
+    assertEquals("https://app-ref.federationmaster.de", jws.body().sub());
+    assertTrue(jws.verifySelfSigned());
+  }
+
+  @Test
+  void fetchEntityStatementAsyncError(WireMockRuntimeInfo wm) {
+
+    var openidFederationPath = "/.well-known/openid-federation";
+
+    stubFor(
+        get(openidFederationPath)
+            .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+    var client = new FederationApiClientImpl(javaHttpClient);
+
+    var federationMaster = wm.getHttpBaseUrl();
+
+    // when
+    var future = client.fetchEntityConfigurationAsync(URI.create(federationMaster));
+
+    // then
+    var e = assertThrows(CompletionException.class, future::join);
+    var cause = assertInstanceOf(HttpException.class, e.getCause());
+    assertEquals(
+        "http request failed: http request failed 'GET %s'"
+            .formatted(federationMaster + openidFederationPath),
+        cause.getMessage());
+  }
+
+  @Test
+  void fetchEntityStatement_interrupted(WireMockRuntimeInfo wm) {
+
+    var client = new FederationApiClientImpl(javaHttpClient);
+
+    var federationMaster = URI.create(wm.getHttpBaseUrl());
+
+    Thread.currentThread().interrupt();
+    try {
+      // when
+      var e =
+          assertThrows(
+              HttpException.class, () -> client.fetchEntityConfiguration(federationMaster));
+
+      // then
+      assertInstanceOf(InterruptedException.class, e.getCause());
+      assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+  }
 }
@@ -0,0 +1,77 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import com.oviva.ehealthid.test.Fixtures;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares parsing federation responses straight from the body bytes against decoding the body into
+ * a string first, as {@link FederationApiClientImpl} did before.
+ *
+ * <p>Run with the GC profiler to see the bytes allocated per parse ({@code gc.alloc.rate.norm}),
+ * e.g. by running {@link #main(String[])} from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FederationParseBenchmark {
+
+  private byte[] entityStatement;
+  private byte[] idpList;
+
+  public static void main(String[] args) throws RunnerException {
+    var opts =
+        new OptionsBuilder()
+            .include(FederationParseBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+    new Runner(opts).run();
+  }
+
+  @Setup
+  public void setUp() {
+    entityStatement = fixture("federation_api_client_federationStatement.txt");
+    idpList = fixture("federation_api_client_idpList.txt");
+  }
+
+  private static byte[] fixture(String name) {
+    return Fixtures.getUtf8String(name).strip().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public EntityStatementJWS entityStatementFromBytes() {
+    return EntityStatementJWS.parse(entityStatement);
+  }
+
+  @Benchmark
+  public EntityStatementJWS entityStatementFromString() {
+    return EntityStatementJWS.parse(new String(entityStatement, StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public IdpListJWS idpListFromBytes() {
+    return IdpListJWS.parse(idpList);
+  }
+
+  @Benchmark
+  public IdpListJWS idpListFromString() {
+    return IdpListJWS.parse(new String(idpList, StandardCharsets.UTF_8));
+  }
+}
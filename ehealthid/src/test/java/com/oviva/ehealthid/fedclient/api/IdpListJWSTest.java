@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -28,6 +29,27 @@ class IdpListJWSTest {
     assertThat(jws.body().idpEntities(), hasSize(5));
   }
 
+  @Test
+  void parse_bytes() {
+    var now = Instant.parse("2024-01-22T17:07:13.705019Z");
+
+    var jws = IdpListJWS.parse(EXAMPLE_IDP_LIST.getBytes(StandardCharsets.UTF_8));
+
+    assertTrue(jws.isValidAt(now));
+    assertThat(jws.body().idpEntities(), hasSize(5));
+    assertEquals(IdpListJWS.parse(EXAMPLE_IDP_LIST).body(), jws.body());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"?", "a.a.a", "\n", ""})
+  void parseBad_bytes(String v) {
+
+    var bytes = v.getBytes(StandardCharsets.UTF_8);
+    var e = assertThrows(Exception.class, () -> IdpListJWS.parse(bytes));
+
+    assertEquals("failed to parse idp list", e.getMessage());
+  }
+
   @ParameterizedTest
   @ValueSource(strings = {"?", "a.a.a", "\n", ""})
   void parseBad(String v) {
@@ -1,6 +1,9 @@
 package com.oviva.ehealthid.fedclient.api;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -11,6 +14,12 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -19,6 +28,7 @@ import org.junit.jupiter.api.Test;
 class InMemoryCacheImplTest {
 
   private static final Instant NOW = Instant.parse("2024-01-01T13:11:00.000Z");
+  private static final Duration TTL = Duration.ofSeconds(10);
 
   @Test
   void fetchesRightOne() {
@@ -104,6 +114,180 @@ class InMemoryCacheImplTest {
     verify(source, times(N)).apply(key);
   }
 
+  @Test
+  void concurrentLoadsAreCoalesced() throws Exception {
+    var sut = new InMemoryCacheImpl<CacheEntry>(Clock.fixed(NOW, ZoneId.of("UTC")), TTL);
+
+    var key = "1";
+    var loads = new AtomicInteger();
+    var loading = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    Function<String, CacheEntry> slowSource =
+        k -> {
+          loads.incrementAndGet();
+          loading.countDown();
+          await(release);
+          return CacheEntry.of(k, NOW.plusSeconds(60));
+        };
+
+    var N = 8;
+    var executor = Executors.newFixedThreadPool(N);
+    try {
+      var first =
+          CompletableFuture.supplyAsync(() -> sut.computeIfAbsent(key, slowSource), executor);
+      await(loading);
+
+      var others =
+          IntStream.range(0, N - 1)
+              .mapToObj(
+                  i ->
+                      CompletableFuture.supplyAsync(
+                          () -> sut.computeIfAbsent(key, slowSource), executor))
+              .toList();
+
+      // when
+      release.countDown();
+
+      // then
+      var expected = first.get(5, TimeUnit.SECONDS);
+      for (var f : others) {
+        assertSame(expected, f.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void servesStaleWhileRefreshing() throws Exception {
+    var clock = new MockClock();
+    clock.set(NOW);
+
+    var sut = new InMemoryCacheImpl<CacheEntry>(clock, TTL);
+
+    var key = "1";
+    var stale = CacheEntry.of(key, NOW.plusSeconds(15));
+    sut.computeIfAbsent(key, k -> stale);
+
+    // the entry is still valid but no longer valid long enough, triggering a refresh
+    clock.advanceSeconds(10);
+
+    var loading = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var fresh = CacheEntry.of(key, NOW.plusSeconds(120));
+
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      var refresh =
+          CompletableFuture.supplyAsync(
+              () ->
+                  sut.computeIfAbsent(
+                      key,
+                      k -> {
+                        loading.countDown();
+                        await(release);
+                        return fresh;
+                      }),
+              executor);
+      await(loading);
+
+      // when
+      var got = sut.computeIfAbsent(key, k -> fail());
+
+      // then
+      assertSame(stale, got);
+
+      release.countDown();
+      assertSame(fresh, refresh.get(5, TimeUnit.SECONDS));
+      assertSame(fresh, sut.computeIfAbsent(key, k -> fail()));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void failedLoadPropagatesToWaiters() throws Exception {
+    var sut = new InMemoryCacheImpl<CacheEntry>(Clock.fixed(NOW, ZoneId.of("UTC")), TTL);
+
+    var key = "1";
+    var loading = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var failure = new IllegalStateException("remote down");
+
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      var failing =
+          CompletableFuture.supplyAsync(
+              () ->
+                  sut.computeIfAbsent(
+                      key,
+                      k -> {
+                        loading.countDown();
+                        await(release);
+                        throw failure;
+                      }),
+              executor);
+      await(loading);
+
+      // either joins the in-flight load or, if that already failed, tries on its own
+      Function<String, CacheEntry> alsoFailing =
+          k -> {
+            throw failure;
+          };
+      var waiter =
+          CompletableFuture.supplyAsync(() -> sut.computeIfAbsent(key, alsoFailing), executor);
+
+      // when
+      release.countDown();
+
+      // then
+      var e = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+      assertSame(failure, e.getCause());
+
+      e = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+      assertSame(failure, e.getCause());
+
+      // a subsequent call loads again
+      var entry = CacheEntry.of(key, NOW.plusSeconds(60));
+      assertSame(entry, sut.computeIfAbsent(key, k -> entry));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void refreshReplacesValidEntry() {
+    var sut = new InMemoryCacheImpl<CacheEntry>(Clock.fixed(NOW, ZoneId.of("UTC")), TTL);
+
+    var key = "1";
+    var first = CacheEntry.of(key, NOW.plusSeconds(60));
+    var second = CacheEntry.of(key, NOW.plusSeconds(120));
+
+    sut.computeIfAbsent(key, k -> first);
+
+    // when
+    var got = sut.refresh(key, k -> second);
+
+    // then
+    assertSame(second, got);
+    assertSame(second, sut.computeIfAbsent(key, k -> fail()));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static CacheEntry fail() {
+    throw new AssertionError("unexpected load");
+  }
+
   record CacheEntry(String value, Instant exp) implements TemporalValid {
 
     public static CacheEntry of(String value, Instant exp) {
@@ -114,6 +298,11 @@ class InMemoryCacheImplTest {
     public boolean isValidAt(Instant pointInTime) {
       return pointInTime.isBefore(exp);
     }
+
+    @Override
+    public Instant expiresAt() {
+      return exp;
+    }
   }
 
   static class MockClock extends Clock {
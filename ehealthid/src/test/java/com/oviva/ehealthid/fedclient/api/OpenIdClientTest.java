@@ -21,6 +21,7 @@ import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
@@ -81,6 +82,33 @@ class OpenIdClientTest {
         e.getMessage());
   }
 
+  @Test
+  void exchangePkceCode_reportsFailure(WireMockRuntimeInfo wm) {
+    var path = "/auth/token";
+    stubFor(post(path).willReturn(badRequest()));
+
+    var tokenEndpoint = URI.create(wm.getHttpBaseUrl()).resolve(path);
+
+    var failures = new ArrayList<Throwable>();
+    OperationListener listener =
+        (operation, uri, status, failure, duration) -> {
+          assertEquals("token", operation);
+          assertEquals(tokenEndpoint, uri);
+          assertEquals(400, status);
+          failures.add(failure);
+        };
+
+    var sut = new OpenIdClient(new JavaHttpClient(HttpClient.newHttpClient()), listener);
+
+    // when
+    var e =
+        assertThrows(
+            HttpException.class, () -> sut.exchangePkceCode(tokenEndpoint, null, null, null, null));
+
+    // then
+    assertEquals(List.of(e), failures);
+  }
+
   @Test
   void requestPushedUri(WireMockRuntimeInfo wm) {
 
@@ -0,0 +1,214 @@
+package com.oviva.ehealthid.fedclient.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.oviva.ehealthid.fedclient.api.InMemoryCacheImplTest.CacheEntry;
+import com.oviva.ehealthid.fedclient.api.InMemoryCacheImplTest.MockClock;
+import com.oviva.ehealthid.fedclient.api.RefreshAheadCache.RefreshPolicy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshAheadCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-01-01T13:11:00.000Z");
+  private static final RefreshPolicy POLICY =
+      new RefreshPolicy(0.5, 0, Duration.ofSeconds(1), Duration.ofSeconds(8));
+
+  @Mock ScheduledExecutorService scheduler;
+
+  private final MockClock clock = new MockClock();
+
+  @BeforeEach
+  void setUp() {
+    clock.set(NOW);
+  }
+
+  @Test
+  void schedulesRefreshAtFractionOfLifetime() {
+    var sut = newCache();
+
+    // when
+    sut.computeIfAbsent("1", k -> CacheEntry.of(k, NOW.plusSeconds(100)));
+
+    // then
+    verify(scheduler).schedule(any(Runnable.class), eq(50_000L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void schedulesOncePerKey() {
+    var sut = newCache();
+    Function<String, CacheEntry> source = k -> CacheEntry.of(k, NOW.plusSeconds(100));
+
+    // when
+    for (int i = 0; i < 5; i++) {
+      sut.computeIfAbsent("1", source);
+    }
+    sut.computeIfAbsent("2", source);
+
+    // then
+    verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  void doesNotScheduleNonExpiring() {
+    var sut = newCache();
+
+    // when
+    sut.computeIfAbsent("1", k -> new CacheEntry(k, null));
+
+    // then
+    verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  void refreshesInBackground() {
+    var sut = newCache();
+
+    var loads = new AtomicInteger();
+    Function<String, CacheEntry> source =
+        k -> {
+          loads.incrementAndGet();
+          return CacheEntry.of(k, clock.instant().plusSeconds(100));
+        };
+
+    var first = sut.computeIfAbsent("1", source);
+    var refresh = captureScheduled();
+
+    // when
+    clock.advanceSeconds(50);
+    refresh.run();
+
+    // then
+    assertEquals(2, loads.get());
+
+    var got = sut.computeIfAbsent("1", source);
+    assertEquals(NOW.plusSeconds(150), got.exp());
+    assertEquals(first.value(), got.value());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void refreshDoesNotWaitForLoad() {
+    var sut = newCache();
+
+    var pending = new CompletableFuture<CacheEntry>();
+    var loads = new AtomicInteger();
+    Function<String, CompletableFuture<CacheEntry>> loader =
+        k ->
+            loads.incrementAndGet() == 1
+                ? CompletableFuture.completedFuture(CacheEntry.of(k, NOW.plusSeconds(100)))
+                : pending;
+
+    sut.computeIfAbsentAsync("1", loader).join();
+    var refresh = captureScheduled();
+
+    // when
+    clock.advanceSeconds(50);
+    refresh.run();
+
+    // then
+    assertEquals(2, loads.get());
+    assertEquals(NOW.plusSeconds(100), sut.computeIfAbsent("1", k -> null).exp());
+
+    pending.complete(CacheEntry.of("1", NOW.plusSeconds(150)));
+    assertEquals(NOW.plusSeconds(150), sut.computeIfAbsent("1", k -> null).exp());
+    verify(scheduler, times(2))
+        .schedule(any(Runnable.class), eq(50_000L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void backsOffOnFailure() {
+    var sut = newCache();
+
+    var fail = new AtomicInteger(0);
+    Function<String, CacheEntry> source =
+        k -> {
+          if (fail.get() > 0) {
+            fail.decrementAndGet();
+            throw new IllegalStateException("remote down");
+          }
+          return CacheEntry.of(k, clock.instant().plusSeconds(100));
+        };
+
+    sut.computeIfAbsent("1", source);
+    var refresh = captureScheduled();
+    fail.set(5);
+
+    // when
+    for (int i = 0; i < 5; i++) {
+      refresh.run();
+    }
+
+    // then
+    var delays = ArgumentCaptor.forClass(Long.class);
+    verify(scheduler, times(6)).schedule(any(Runnable.class), delays.capture(), any());
+    assertEquals(
+        java.util.List.of(50_000L, 1_000L, 2_000L, 4_000L, 8_000L, 8_000L), delays.getAllValues());
+  }
+
+  @Test
+  void stopsRefreshingIdleEntries() {
+    var sut = newCache();
+
+    var loads = new AtomicInteger();
+    Function<String, CacheEntry> source =
+        k -> {
+          loads.incrementAndGet();
+          return CacheEntry.of(k, clock.instant().plusSeconds(100));
+        };
+
+    sut.computeIfAbsent("1", source);
+    var refresh = captureScheduled();
+
+    // when
+    refresh.run(); // refreshes, the entry was accessed
+    refresh.run(); // idle since the last refresh
+
+    // then
+    assertEquals(2, loads.get());
+    verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  void refreshDelegates() {
+    var sut = newCache();
+    var entry = CacheEntry.of("1", NOW.plusSeconds(100));
+
+    // when
+    var got = sut.refresh("1", k -> entry);
+
+    // then
+    assertSame(entry, got);
+    verify(scheduler).schedule(any(Runnable.class), eq(50_000L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  private RefreshAheadCache<CacheEntry> newCache() {
+    return new RefreshAheadCache<>(
+        new InMemoryCacheImpl<>(clock, Duration.ofSeconds(10)), scheduler, clock, POLICY);
+  }
+
+  private Runnable captureScheduled() {
+    var captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).schedule(captor.capture(), anyLong(), any());
+    return captor.getValue();
+  }
+}
@@ -2,6 +2,7 @@ package com.oviva.ehealthid.test;
 
 import com.oviva.ehealthid.fedclient.api.HttpClient;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 public class GematikHeaderDecoratorHttpClient implements HttpClient {
 
@@ -14,6 +15,15 @@ public class GematikHeaderDecoratorHttpClient implements HttpClient {
 
   @Override
   public Response call(Request req) {
+    return delegate.call(decorate(req));
+  }
+
+  @Override
+  public CompletableFuture<Response> callAsync(Request req) {
+    return delegate.callAsync(decorate(req));
+  }
+
+  private Request decorate(Request req) {
 
     if (req.uri().getHost().equals(HOST_GEMATIK_IDP)) {
       if (Environment.gematikAuthHeader() == null || Environment.gematikAuthHeader().isBlank()) {
@@ -25,9 +35,9 @@ public class GematikHeaderDecoratorHttpClient implements HttpClient {
       var headers = new ArrayList<>(req.headers());
       headers.add(new Header("X-Authorization", Environment.gematikAuthHeader()));
 
-      req = new Request(req.uri(), req.method(), headers, req.body());
+      return new Request(req.uri(), req.method(), headers, req.body());
     }
 
-    return delegate.call(req);
+    return req;
   }
 }
@@ -0,0 +1,58 @@
+package com.oviva.ehealthid.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+
+class DelegatingSslContextTest {
+
+  @Test
+  void appliesHook() throws Exception {
+
+    var engines = new ArrayList<String>();
+    var sut =
+        DelegatingSslContext.withEngineHook(
+            SSLContext.getDefault(),
+            e -> {
+              engines.add(e.getPeerHost());
+              return e;
+            });
+
+    // when
+    var engine = sut.createSSLEngine("idp.example.com", 443);
+
+    // then
+    assertEquals("idp.example.com", engine.getPeerHost());
+    assertEquals(1, engines.size());
+  }
+
+  @Test
+  void composesHooks() throws Exception {
+
+    var calls = new ArrayList<String>();
+    var inner =
+        DelegatingSslContext.withEngineHook(
+            SSLContext.getDefault(),
+            e -> {
+              calls.add("inner");
+              return e;
+            });
+
+    // when
+    var sut =
+        DelegatingSslContext.withEngineHook(
+            inner,
+            e -> {
+              calls.add("outer");
+              return e;
+            });
+    sut.createSSLEngine();
+
+    // then
+    assertInstanceOf(DelegatingSslContext.class, sut);
+    assertEquals(List.of("inner", "outer"), calls);
+  }
+}
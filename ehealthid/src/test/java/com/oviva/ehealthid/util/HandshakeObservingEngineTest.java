@@ -0,0 +1,106 @@
+package com.oviva.ehealthid.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.oauth2.sdk.id.Issuer;
+import com.nimbusds.oauth2.sdk.util.X509CertificateUtils;
+import com.oviva.ehealthid.util.TlsContext.HandshakeListener;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManagerFactory;
+import org.junit.jupiter.api.Test;
+
+class HandshakeObservingEngineTest {
+
+  private static final String HOST = "idp.example.com";
+
+  @Test
+  void reportsFullAndResumedHandshakes() throws Exception {
+
+    var key = new ECKeyGenerator(Curve.P_256).generate();
+    var now = Instant.now();
+    var cert =
+        X509CertificateUtils.generateSelfSigned(
+            new Issuer("https://" + HOST),
+            Date.from(now.minus(Duration.ofHours(1))),
+            Date.from(now.plus(Duration.ofHours(1))),
+            key.toPublicKey(),
+            key.toPrivateKey());
+
+    var server = SSLContext.getInstance("TLSv1.3");
+    server.init(TlsContext.keyManagerOf(cert, key.toPrivateKey()), null, null);
+
+    var trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    trustStore.load(null);
+    trustStore.setCertificateEntry("server", cert);
+    var tmf = TrustManagerFactory.getInstance("PKIX");
+    tmf.init(trustStore);
+
+    var client = SSLContext.getInstance("TLSv1.3");
+    client.init(null, tmf.getTrustManagers(), null);
+
+    var handshakes = new ArrayList<String>();
+    HandshakeListener listener =
+        (peerHost, protocol, resumed, duration) ->
+            handshakes.add("%s %s %s".formatted(peerHost, protocol, resumed));
+    var sut =
+        DelegatingSslContext.withEngineHook(
+            client, engine -> new HandshakeObservingEngine(engine, listener));
+
+    // when
+    handshake(sut.createSSLEngine(HOST, 443), server.createSSLEngine());
+    handshake(sut.createSSLEngine(HOST, 443), server.createSSLEngine());
+
+    // then
+    assertEquals(List.of(HOST + " TLSv1.3 false", HOST + " TLSv1.3 true"), handshakes);
+  }
+
+  /** shovels TLS records back and forth until both sides are done, including session tickets */
+  private void handshake(SSLEngine client, SSLEngine server) throws Exception {
+    client.setUseClientMode(true);
+    server.setUseClientMode(false);
+
+    var size = client.getSession().getPacketBufferSize() * 4;
+    var toServer = ByteBuffer.allocate(size);
+    var toClient = ByteBuffer.allocate(size);
+    var app = ByteBuffer.allocate(size);
+    var empty = ByteBuffer.allocate(0);
+
+    client.beginHandshake();
+    server.beginHandshake();
+
+    for (var i = 0; i < 20; i++) {
+      client.wrap(empty, toServer);
+      runDelegatedTasks(client);
+
+      toServer.flip();
+      server.unwrap(toServer, app.clear());
+      toServer.compact();
+      runDelegatedTasks(server);
+
+      server.wrap(empty, toClient);
+      runDelegatedTasks(server);
+
+      toClient.flip();
+      client.unwrap(toClient, app.clear());
+      toClient.compact();
+      runDelegatedTasks(client);
+    }
+  }
+
+  private void runDelegatedTasks(SSLEngine engine) {
+    Runnable task;
+    while ((task = engine.getDelegatedTask()) != null) {
+      task.run();
+    }
+  }
+}
@@ -36,6 +36,39 @@ class TlsContextTest {
     assertNotNull(ctx);
   }
 
+  @Test
+  void create_sessionCache() throws Exception {
+    var key = generateSigningKey(URI.create(ISSUER));
+
+    // when
+    var ctx =
+        TlsContext.create()
+            .clientCertificate(key)
+            .sessionCacheSize(100)
+            .sessionTimeout(Duration.ofMinutes(10))
+            .build();
+
+    // then
+    assertEquals("TLSv1.3", ctx.getProtocol());
+    assertEquals(100, ctx.getClientSessionContext().getSessionCacheSize());
+    assertEquals(600, ctx.getClientSessionContext().getSessionTimeout());
+  }
+
+  @Test
+  void create_handshakeListener() {
+
+    // when
+    var ctx =
+        TlsContext.create()
+            .handshakeListener((peerHost, protocol, resumed, duration) -> {})
+            .build();
+
+    // then
+    var engine = ctx.createSSLEngine("idp.example.com", 443);
+    assertEquals("idp.example.com", engine.getPeerHost());
+    assertTrue(List.of(engine.getSupportedProtocols()).contains("TLSv1.3"));
+  }
+
   @Test
   void fromClientCertificate_noX509() throws Exception {
     var key =